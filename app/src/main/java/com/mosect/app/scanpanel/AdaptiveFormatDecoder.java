@@ -0,0 +1,110 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.mosect.lib.scanpanel.coder.DecodeBudget;
+import com.mosect.lib.scanpanel.coder.FormatHistory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 自适应码制解码：按码制历史中的出现次数依次尝试单一码制的解码器，再尝试其他码制；
+ * 历史可信后只尝试出现过的码制，每隔discoveryInterval帧再尝试其他码制；同一个对象不能同时在多个线程中使用
+ */
+final class AdaptiveFormatDecoder {
+
+    private volatile FormatHistory history; // 码制历史，null表示不使用自适应码制
+    private int discoveryInterval = 0; // 可信时，每隔多少帧尝试历史中未出现的码制
+    private final Map<BarcodeFormat, MultiFormatReader> formatReaders = new EnumMap<>(BarcodeFormat.class); // 单一码制的解码器
+    private MultiFormatReader restReader; // 历史中未出现的码制的解码器
+    private final EnumSet<BarcodeFormat> restFormats = EnumSet.noneOf(BarcodeFormat.class); // restReader当前的码制
+    private final EnumSet<BarcodeFormat> restBuffer = EnumSet.noneOf(BarcodeFormat.class); // 计算未出现的码制，复用
+    private final List<String> rankedFormats = new ArrayList<>(); // 按历史排序的码制，复用
+
+    void setHistory(FormatHistory history, int discoveryInterval) {
+        this.history = history;
+        this.discoveryInterval = Math.max(0, discoveryInterval);
+    }
+
+    FormatHistory getHistory() {
+        return history;
+    }
+
+    boolean isEnabled() {
+        return null != history;
+    }
+
+    /**
+     * 记录解码结果的码制
+     *
+     * @param result 解码结果
+     */
+    void record(Result result) {
+        FormatHistory history = this.history;
+        if (null != history) {
+            history.record(result.getBarcodeFormat().name());
+        }
+    }
+
+    /**
+     * 解码，先按历史中的出现次数尝试单一码制，再尝试其他码制
+     *
+     * @param bitmap     图像
+     * @param allowed    允许的码制，null表示所有码制
+     * @param frameCount 解码的帧数量，用于计算是否尝试其他码制
+     * @return 解码结果，未解析到内容时返回null
+     */
+    Result decode(BinaryBitmap bitmap, Collection<BarcodeFormat> allowed, long frameCount) throws Exception {
+        FormatHistory history = this.history;
+        List<String> ranked = history.getRankedFormats(rankedFormats);
+        EnumSet<BarcodeFormat> rest = restBuffer;
+        rest.clear();
+        rest.addAll(null != allowed ? allowed : ZxingFormats.ALL_FORMATS);
+        for (String name : ranked) {
+            if (DecodeBudget.isCurrentExhausted()) return null;
+            BarcodeFormat format = BarcodeFormat.valueOf(name);
+            if (!rest.remove(format)) continue; // 不允许的码制
+            MultiFormatReader reader = getFormatReader(format);
+            try {
+                return reader.decodeWithState(bitmap);
+            } catch (NotFoundException ignored) {
+                // 尝试下一个码制
+            } finally {
+                reader.reset();
+            }
+        }
+        boolean discovery = !history.isConfident()
+                || (discoveryInterval > 0 && frameCount % discoveryInterval == 0);
+        if (!discovery || rest.isEmpty() || DecodeBudget.isCurrentExhausted()) return null;
+        if (null == restReader || !rest.equals(restFormats)) {
+            // 未出现的码制发生变化，重新创建解码器
+            restFormats.clear();
+            restFormats.addAll(rest);
+            restReader = ZxingFormats.createReader(restFormats);
+        }
+        try {
+            return restReader.decodeWithState(bitmap);
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            restReader.reset();
+        }
+    }
+
+    private MultiFormatReader getFormatReader(BarcodeFormat format) {
+        MultiFormatReader reader = formatReaders.get(format);
+        if (null == reader) {
+            reader = ZxingFormats.createReader(EnumSet.of(format));
+            formatReaders.put(format, reader);
+        }
+        return reader;
+    }
+}
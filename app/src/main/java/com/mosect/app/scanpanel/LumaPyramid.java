@@ -0,0 +1,97 @@
+package com.mosect.app.scanpanel;
+
+import com.mosect.lib.scanpanel.coder.LumaView;
+
+/**
+ * 亮度金字塔，每一层使用2x2均值缩小一半；每一层的数据和位图都会复用，同一个对象不能同时在多个线程中使用
+ */
+final class LumaPyramid {
+
+    static final int MAX_LEVELS = 4; // 最多层数
+    private static final int MIN_SIZE = 64; // 层的最小边长，像素
+
+    private final byte[][] levelData = new byte[MAX_LEVELS][]; // 每一层的亮度数据，复用
+    private final int[] levelWidths = new int[MAX_LEVELS]; // 每一层的宽度
+    private final ReusableBitmap[] levelBitmaps = new ReusableBitmap[MAX_LEVELS]; // 每一层的位图，第0层不使用
+    private byte[] rowBuffer; // 读取行数据的数组，复用
+
+    /**
+     * 构建金字塔
+     *
+     * @param source 原始分辨率的图像，即第0层
+     * @param levels 层数，包括第0层
+     * @return 最高的层，0表示图像太小，不需要缩小
+     */
+    int build(LumaView source, int levels) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int top = 0;
+        for (int level = 1; level < Math.min(levels, MAX_LEVELS); level++) {
+            int levelWidth = width >> level;
+            int levelHeight = height >> level;
+            if (levelWidth < MIN_SIZE || levelHeight < MIN_SIZE) break;
+            byte[] data = levelData[level];
+            if (null == data || data.length < levelWidth * levelHeight) {
+                data = new byte[levelWidth * levelHeight];
+                levelData[level] = data;
+            }
+            if (level == 1) {
+                downsample(source, levelWidth, levelHeight, data);
+            } else {
+                downsample(levelData[level - 1], levelWidths[level - 1], levelWidth, levelHeight, data);
+            }
+            levelWidths[level] = levelWidth;
+            ReusableBitmap bitmap = levelBitmaps[level];
+            if (null == bitmap) {
+                bitmap = new ReusableBitmap();
+                levelBitmaps[level] = bitmap;
+            }
+            bitmap.getView().set(data, levelWidth, 0, 0, levelWidth, levelHeight);
+            bitmap.update();
+            top = level;
+        }
+        return top;
+    }
+
+    /**
+     * 获取某一层的位图，需要先构建
+     *
+     * @param level 层，1~{@link #build(LumaView, int)}的返回值
+     * @return 位图
+     */
+    ReusableBitmap getLevel(int level) {
+        return levelBitmaps[level];
+    }
+
+    private void downsample(LumaView source, int outWidth, int outHeight, byte[] out) {
+        int width = source.getWidth();
+        if (null == rowBuffer || rowBuffer.length < width * 2) {
+            rowBuffer = new byte[width * 2];
+        }
+        for (int y = 0; y < outHeight; y++) {
+            // 第一行复制到数组后半部分，第二行读取到前半部分
+            byte[] row = source.getRow(y * 2, rowBuffer);
+            System.arraycopy(row, 0, rowBuffer, width, width);
+            row = source.getRow(y * 2 + 1, rowBuffer);
+            int offset = y * outWidth;
+            for (int x = 0; x < outWidth; x++) {
+                int sum = (row[x * 2] & 0xFF) + (row[x * 2 + 1] & 0xFF)
+                        + (rowBuffer[width + x * 2] & 0xFF) + (rowBuffer[width + x * 2 + 1] & 0xFF);
+                out[offset + x] = (byte) (sum >> 2);
+            }
+        }
+    }
+
+    private static void downsample(byte[] src, int srcWidth, int outWidth, int outHeight, byte[] out) {
+        for (int y = 0; y < outHeight; y++) {
+            int row0 = y * 2 * srcWidth;
+            int row1 = row0 + srcWidth;
+            int offset = y * outWidth;
+            for (int x = 0; x < outWidth; x++) {
+                int sum = (src[row0 + x * 2] & 0xFF) + (src[row0 + x * 2 + 1] & 0xFF)
+                        + (src[row1 + x * 2] & 0xFF) + (src[row1 + x * 2 + 1] & 0xFF);
+                out[offset + x] = (byte) (sum >> 2);
+            }
+        }
+    }
+}
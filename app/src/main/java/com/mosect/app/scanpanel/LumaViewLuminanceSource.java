@@ -0,0 +1,70 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.LuminanceSource;
+import com.mosect.lib.scanpanel.coder.LumaView;
+
+/**
+ * 读取{@link LumaView}的LuminanceSource，旋转和反色不需要复制数据
+ */
+public class LumaViewLuminanceSource extends LuminanceSource {
+
+    private final LumaView view;
+
+    /**
+     * 创建LuminanceSource
+     *
+     * @param view 亮度视图，使用期间不能修改
+     */
+    public LumaViewLuminanceSource(LumaView view) {
+        super(view.getWidth(), view.getHeight());
+        this.view = view;
+    }
+
+    public LumaView getView() {
+        return view;
+    }
+
+    @Override
+    public byte[] getRow(int y, byte[] row) {
+        if (y < 0 || y >= getHeight()) {
+            throw new IllegalArgumentException("Requested row is outside the image: " + y);
+        }
+        return view.getRow(y, row);
+    }
+
+    @Override
+    public byte[] getMatrix() {
+        int width = getWidth();
+        int height = getHeight();
+        byte[] matrix = new byte[width * height];
+        byte[] row = new byte[width];
+        for (int y = 0; y < height; y++) {
+            view.getRow(y, row);
+            System.arraycopy(row, 0, matrix, y * width, width);
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean isRotateSupported() {
+        // 镜像之后再旋转，无法用一次变换表示
+        return !view.isMirror();
+    }
+
+    @Override
+    public LuminanceSource rotateCounterClockwise() {
+        if (!isRotateSupported()) {
+            return super.rotateCounterClockwise();
+        }
+        LumaView rotated = new LumaView().copyFrom(view);
+        rotated.setTransform(view.getRotation() + 270, false, view.isInvert());
+        return new LumaViewLuminanceSource(rotated);
+    }
+
+    @Override
+    public LuminanceSource invert() {
+        LumaView inverted = new LumaView().copyFrom(view);
+        inverted.setTransform(view.getRotation(), view.isMirror(), !view.isInvert());
+        return new LumaViewLuminanceSource(inverted);
+    }
+}
@@ -0,0 +1,87 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.GlobalHistogramBinarizer;
+import com.mosect.lib.scanpanel.coder.LumaView;
+
+/**
+ * 复用的位图：亮度视图、LuminanceSource、二值化以及位图由此对象持有，大小不变时复用，稳定状态下二值化不分配内存；
+ * 视图改变后需要调用{@link #update()}；同一个对象不能同时在多个线程中使用
+ */
+final class ReusableBitmap {
+
+    private final LumaView view = new LumaView(); // 图像的视图
+    private LumaViewLuminanceSource source; // 复用的LuminanceSource，大小改变时重新创建
+    private ReusableHybridBinarizer binarizer; // 复用的二值化
+    private GlobalHistogramBinarizer rowBinarizer; // 只计算行阈值的二值化，扫描行使用
+    private BinaryBitmap bitmap; // 复用的位图，缓存的位矩阵即二值化持有的位矩阵
+    private boolean binarized = false; // 当前数据是否已二值化
+    private boolean blank = false; // 当前数据没有明显的明暗区分
+
+    /**
+     * 获取视图，设置数据或者变换后需要调用{@link #update()}
+     *
+     * @return 视图
+     */
+    LumaView getView() {
+        return view;
+    }
+
+    /**
+     * 视图改变后调用，大小改变时重新创建LuminanceSource和二值化，并且需要重新二值化
+     *
+     * @return 读取视图的LuminanceSource
+     */
+    LuminanceSource update() {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (null == source || source.getWidth() != width || source.getHeight() != height) {
+            source = new LumaViewLuminanceSource(view);
+            binarizer = new ReusableHybridBinarizer(source);
+            rowBinarizer = null;
+            bitmap = new BinaryBitmap(binarizer);
+        }
+        binarized = false;
+        return source;
+    }
+
+    LuminanceSource getSource() {
+        return source;
+    }
+
+    /**
+     * 获取二值化的位图，当前数据只二值化一次，快速解码和完整解码共用
+     *
+     * @return 位图，图像没有明显的明暗区分时返回null
+     */
+    BinaryBitmap getBitmap() {
+        if (!binarized) {
+            binarized = true;
+            try {
+                binarizer.binarize();
+                blank = false;
+            } catch (NotFoundException e) {
+                blank = true;
+            }
+        }
+        return blank ? null : bitmap;
+    }
+
+    /**
+     * 只计算一行的阈值并二值化，不二值化整个图像
+     *
+     * @param y   行
+     * @param row 复用的结果，可以为null
+     * @return 二值化结果
+     * @throws NotFoundException 此行没有明显的明暗区分
+     */
+    BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        if (null == rowBinarizer) {
+            rowBinarizer = new GlobalHistogramBinarizer(source);
+        }
+        return rowBinarizer.getBlackRow(y, row);
+    }
+}
@@ -0,0 +1,290 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.Binarizer;
+import com.google.zxing.LuminanceSource;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.common.HybridBinarizer;
+
+/**
+ * 可复用的二值化，算法与zxing的HybridBinarizer一致（图像太小时使用全局直方图），
+ * 但亮度数据、块阈值以及位矩阵都由此对象持有，相同大小的帧之间复用，稳定状态下每帧不分配内存；
+ * LuminanceSource的数据改变后，需要调用{@link #binarize()}重新计算位矩阵
+ */
+public class ReusableHybridBinarizer extends Binarizer {
+
+    private static final int BLOCK_SIZE_POWER = 3;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SIZE_POWER; // 块大小，8x8
+    private static final int BLOCK_SIZE_MASK = BLOCK_SIZE - 1;
+    private static final int MINIMUM_DIMENSION = BLOCK_SIZE * 5; // 使用块阈值的最小边长
+    private static final int MIN_DYNAMIC_RANGE = 24; // 块内亮度范围小于此值时视为平坦区域
+
+    private static final int LUMINANCE_BITS = 5;
+    private static final int LUMINANCE_SHIFT = 8 - LUMINANCE_BITS;
+    private static final int LUMINANCE_BUCKETS = 1 << LUMINANCE_BITS; // 直方图桶数量
+
+    private final int subWidth; // 每行的块数量
+    private final int subHeight; // 每列的块数量
+    private final byte[] luminances; // 亮度数据，复用
+    private final byte[] rowBuffer; // 读取行数据的数组，复用
+    private final int[] blackPoints; // 每个块的阈值，复用
+    private final int[] buckets = new int[LUMINANCE_BUCKETS]; // 直方图，复用
+    private final BitMatrix matrix; // 位矩阵，复用
+
+    public ReusableHybridBinarizer(LuminanceSource source) {
+        super(source);
+        int width = source.getWidth();
+        int height = source.getHeight();
+        int sw = width >> BLOCK_SIZE_POWER;
+        if ((width & BLOCK_SIZE_MASK) != 0) sw++;
+        int sh = height >> BLOCK_SIZE_POWER;
+        if ((height & BLOCK_SIZE_MASK) != 0) sh++;
+        subWidth = sw;
+        subHeight = sh;
+        luminances = new byte[width * height];
+        rowBuffer = new byte[width];
+        blackPoints = new int[subWidth * subHeight];
+        matrix = new BitMatrix(width, height);
+    }
+
+    /**
+     * 读取LuminanceSource的当前数据，重新计算位矩阵
+     *
+     * @throws NotFoundException 图像太小并且没有明显的明暗区分
+     */
+    public void binarize() throws NotFoundException {
+        LuminanceSource source = getLuminanceSource();
+        int width = getWidth();
+        int height = getHeight();
+        for (int y = 0; y < height; y++) {
+            // 逐行读取到亮度数组中，不使用getMatrix，避免分配
+            byte[] row = source.getRow(y, rowBuffer);
+            System.arraycopy(row, 0, luminances, y * width, width);
+        }
+        matrix.clear();
+        if (width >= MINIMUM_DIMENSION && height >= MINIMUM_DIMENSION) {
+            calculateBlackPoints(width, height);
+            calculateThresholdForBlock(width, height);
+        } else {
+            calculateGlobalThreshold(width, height);
+        }
+    }
+
+    /**
+     * 获取位矩阵，需要先调用{@link #binarize()}；返回的对象会在下一次二值化时被覆盖
+     *
+     * @return 位矩阵
+     */
+    @Override
+    public BitMatrix getBlackMatrix() {
+        return matrix;
+    }
+
+    @Override
+    public BitArray getBlackRow(int y, BitArray row) throws NotFoundException {
+        int width = getWidth();
+        if (null == row || row.getSize() < width) {
+            row = new BitArray(width);
+        } else {
+            row.clear();
+        }
+        int offset = y * width;
+        int[] localBuckets = buckets;
+        clearBuckets();
+        for (int x = 0; x < width; x++) {
+            localBuckets[(luminances[offset + x] & 0xFF) >> LUMINANCE_SHIFT]++;
+        }
+        int blackPoint = estimateBlackPoint(localBuckets);
+        if (width < 3) {
+            for (int x = 0; x < width; x++) {
+                if ((luminances[offset + x] & 0xFF) < blackPoint) {
+                    row.set(x);
+                }
+            }
+        } else {
+            int left = luminances[offset] & 0xFF;
+            int center = luminances[offset + 1] & 0xFF;
+            for (int x = 1; x < width - 1; x++) {
+                int right = luminances[offset + x + 1] & 0xFF;
+                // 简单的锐化
+                if (((center * 4) - left - right) / 2 < blackPoint) {
+                    row.set(x);
+                }
+                left = center;
+                center = right;
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 为派生的图像（比如TRY_HARDER时旋转的图像）创建二值化；派生图像只偶尔使用，不需要复用，
+     * 使用zxing的HybridBinarizer，在首次获取位矩阵时计算，不需要调用{@link #binarize()}
+     *
+     * @param source 派生的图像
+     * @return 二值化
+     */
+    @Override
+    public Binarizer createBinarizer(LuminanceSource source) {
+        return new HybridBinarizer(source);
+    }
+
+    /**
+     * 计算每个块的阈值，平坦区域使用相邻块的阈值
+     */
+    private void calculateBlackPoints(int width, int height) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int sum = 0;
+                int min = 0xFF;
+                int max = 0;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        int pixel = luminances[offset + xx] & 0xFF;
+                        sum += pixel;
+                        if (pixel < min) min = pixel;
+                        if (pixel > max) max = pixel;
+                    }
+                    if (max - min > MIN_DYNAMIC_RANGE) {
+                        // 已经满足亮度范围，剩余的行只需要求和
+                        for (yy++, offset += width; yy < BLOCK_SIZE; yy++, offset += width) {
+                            for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                                sum += luminances[offset + xx] & 0xFF;
+                            }
+                        }
+                    }
+                }
+                int average = sum >> (BLOCK_SIZE_POWER * 2);
+                if (max - min <= MIN_DYNAMIC_RANGE) {
+                    // 平坦区域，假设是背景
+                    average = min / 2;
+                    if (y > 0 && x > 0) {
+                        int neighbor = (blackPoints[(y - 1) * subWidth + x]
+                                + 2 * blackPoints[y * subWidth + x - 1]
+                                + blackPoints[(y - 1) * subWidth + x - 1]) / 4;
+                        if (min < neighbor) {
+                            average = neighbor;
+                        }
+                    }
+                }
+                blackPoints[y * subWidth + x] = average;
+            }
+        }
+    }
+
+    /**
+     * 使用周围5x5个块的平均阈值二值化每个块
+     */
+    private void calculateThresholdForBlock(int width, int height) {
+        int maxYOffset = height - BLOCK_SIZE;
+        int maxXOffset = width - BLOCK_SIZE;
+        for (int y = 0; y < subHeight; y++) {
+            int yoffset = Math.min(y << BLOCK_SIZE_POWER, maxYOffset);
+            int top = cap(y, subHeight - 3);
+            for (int x = 0; x < subWidth; x++) {
+                int xoffset = Math.min(x << BLOCK_SIZE_POWER, maxXOffset);
+                int left = cap(x, subWidth - 3);
+                int sum = 0;
+                for (int z = -2; z <= 2; z++) {
+                    int rowOffset = (top + z) * subWidth + left;
+                    sum += blackPoints[rowOffset - 2] + blackPoints[rowOffset - 1] + blackPoints[rowOffset]
+                            + blackPoints[rowOffset + 1] + blackPoints[rowOffset + 2];
+                }
+                int average = sum / 25;
+                for (int yy = 0, offset = yoffset * width + xoffset; yy < BLOCK_SIZE; yy++, offset += width) {
+                    for (int xx = 0; xx < BLOCK_SIZE; xx++) {
+                        if ((luminances[offset + xx] & 0xFF) <= average) {
+                            matrix.set(xoffset + xx, yoffset + yy);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 图像太小时，使用全局直方图计算阈值
+     */
+    private void calculateGlobalThreshold(int width, int height) throws NotFoundException {
+        clearBuckets();
+        for (int y = 1; y < 5; y++) {
+            int offset = height * y / 5 * width;
+            int right = (width * 4) / 5;
+            for (int x = width / 5; x < right; x++) {
+                buckets[(luminances[offset + x] & 0xFF) >> LUMINANCE_SHIFT]++;
+            }
+        }
+        int blackPoint = estimateBlackPoint(buckets);
+        for (int y = 0; y < height; y++) {
+            int offset = y * width;
+            for (int x = 0; x < width; x++) {
+                if ((luminances[offset + x] & 0xFF) < blackPoint) {
+                    matrix.set(x, y);
+                }
+            }
+        }
+    }
+
+    private void clearBuckets() {
+        for (int i = 0; i < LUMINANCE_BUCKETS; i++) {
+            buckets[i] = 0;
+        }
+    }
+
+    private static int cap(int value, int max) {
+        return value < 2 ? 2 : Math.min(value, max);
+    }
+
+    /**
+     * 从直方图中找到两个峰值，取两个峰值之间的谷底作为阈值
+     */
+    private static int estimateBlackPoint(int[] buckets) throws NotFoundException {
+        int numBuckets = buckets.length;
+        int maxBucketCount = 0;
+        int firstPeak = 0;
+        int firstPeakSize = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            if (buckets[x] > firstPeakSize) {
+                firstPeak = x;
+                firstPeakSize = buckets[x];
+            }
+            if (buckets[x] > maxBucketCount) {
+                maxBucketCount = buckets[x];
+            }
+        }
+        int secondPeak = 0;
+        int secondPeakScore = 0;
+        for (int x = 0; x < numBuckets; x++) {
+            int distanceToBiggest = x - firstPeak;
+            int score = buckets[x] * distanceToBiggest * distanceToBiggest;
+            if (score > secondPeakScore) {
+                secondPeak = x;
+                secondPeakScore = score;
+            }
+        }
+        if (firstPeak > secondPeak) {
+            int temp = firstPeak;
+            firstPeak = secondPeak;
+            secondPeak = temp;
+        }
+        if (secondPeak - firstPeak <= numBuckets / 16) {
+            throw NotFoundException.getNotFoundInstance();
+        }
+        int bestValley = secondPeak - 1;
+        int bestValleyScore = -1;
+        for (int x = secondPeak - 1; x > firstPeak; x--) {
+            int fromFirst = x - firstPeak;
+            int score = fromFirst * fromFirst * (secondPeak - x) * (maxBucketCount - buckets[x]);
+            if (score > bestValleyScore) {
+                bestValley = x;
+                bestValleyScore = score;
+            }
+        }
+        return bestValley << LUMINANCE_SHIFT;
+    }
+}
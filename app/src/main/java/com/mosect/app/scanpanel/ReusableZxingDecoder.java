@@ -0,0 +1,184 @@
+package com.mosect.app.scanpanel;
+
+import android.graphics.Rect;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+import com.mosect.lib.scanpanel.coder.DecodeBudget;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.FormatConfigurable;
+import com.mosect.lib.scanpanel.coder.Frame;
+import com.mosect.lib.scanpanel.coder.FrameDecoder;
+import com.mosect.lib.scanpanel.coder.LumaView;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 复用对象的zxing解码器：LuminanceSource、二值化以及位矩阵由解码器持有，相同大小的帧之间复用，稳定状态下二值化不分配内存；
+ * 同一个解码器不能同时在多个线程中使用，并行解码时每个解码线程使用自己的解码器
+ */
+public class ReusableZxingDecoder implements FrameDecoder, FormatConfigurable {
+
+    private final MultiFormatReader multiFormatReader = new MultiFormatReader(); // 快速解码器，只解码允许的码制
+    private final MultiFormatReader fullReader = new MultiFormatReader(); // 完整解码器，所有码制并且尽力解码
+    private int fullPassInterval = 0; // 每隔多少帧进行一次完整解码，0表示不进行
+    private long frameCount = 0; // 解码的帧数量，同一帧的多次解码只计数一次
+    private long lastTimestamp = 0; // 最后一次解码的帧时间戳
+    private final LumaView view = new LumaView(); // 当前帧的视图
+    private LumaViewLuminanceSource source; // 复用的LuminanceSource，大小改变时重新创建
+    private ReusableHybridBinarizer binarizer; // 复用的二值化
+    private BinaryBitmap bitmap; // 复用的位图，缓存的位矩阵即二值化持有的位矩阵
+
+    public ReusableZxingDecoder() {
+        // 提前创建解码器，decodeWithState不会每次重新创建
+        multiFormatReader.setHints(null);
+        Map<DecodeHintType, Object> fullHints = new EnumMap<>(DecodeHintType.class);
+        fullHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        fullReader.setHints(fullHints);
+    }
+
+    /**
+     * 设置码制，使用分级解码：每一帧只快速解码允许的码制，每隔fullPassInterval帧，
+     * 在快速解码失败后使用所有码制并且尽力解码；需要在解码之前设置
+     *
+     * @param formats          允许的码制，null表示所有码制
+     * @param fullPassInterval 每隔多少帧进行一次完整解码，0表示不进行完整解码
+     */
+    public void setBarcodeFormats(Collection<BarcodeFormat> formats, int fullPassInterval) {
+        Map<DecodeHintType, Object> hints = null;
+        if (null != formats && !formats.isEmpty()) {
+            hints = new EnumMap<>(DecodeHintType.class);
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, new ArrayList<>(formats));
+        }
+        multiFormatReader.setHints(hints);
+        this.fullPassInterval = Math.max(0, fullPassInterval);
+    }
+
+    @Override
+    public void setCodeFormats(Collection<CodeFormat> formats, int fullPassInterval) {
+        setBarcodeFormats(ZxingFormats.toBarcodeFormats(formats), fullPassInterval);
+    }
+
+    @Override
+    public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) throws Exception {
+        if (null == clip) {
+            view.set(data, width, 0, 0, width, height);
+        } else {
+            view.set(data, width, clip.left, clip.top, clip.width(), clip.height());
+        }
+        // 没有时间戳，每次解码都计为新的一帧
+        Result result = decode(0);
+        return null == result ? null : result.getText();
+    }
+
+    @Override
+    public String decodeFrame(int format, ByteBuffer luma, int width, int height,
+                              int rowStride, int pixelStride, long timestamp, Rect clip) throws Exception {
+        if (null == clip) {
+            view.set(luma, rowStride, pixelStride, 0, 0, width, height);
+        } else {
+            view.set(luma, rowStride, pixelStride, clip.left, clip.top, clip.width(), clip.height());
+        }
+        Result result = decode(timestamp);
+        return null == result ? null : result.getText();
+    }
+
+    @Override
+    public boolean decodeFrame(Frame frame, Rect clip, DecodeResult out) throws Exception {
+        view.set(frame, clip);
+        Result result = decode(frame.getTimestamp());
+        if (null == result) return false;
+        out.set(result.getText(), result.getBarcodeFormat().name(), result.getRawBytes());
+        ResultPoint[] points = result.getResultPoints();
+        if (null != points) {
+            float[] point = new float[2];
+            for (ResultPoint p : points) {
+                if (null != p) {
+                    // 视图坐标转换成帧坐标
+                    view.mapPoint(p.getX(), p.getY(), point);
+                    out.addPoint(point[0], point[1]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 准备解码：设置帧并二值化，稳定状态下不分配内存
+     *
+     * @param frame 帧
+     * @param clip  裁剪区域，null表示整帧
+     * @return true，准备成功；false，图像没有明显的明暗区分，不需要解码
+     */
+    public boolean prepare(Frame frame, Rect clip) {
+        view.set(frame, clip);
+        return prepare();
+    }
+
+    private boolean prepare() {
+        int width = view.getWidth();
+        int height = view.getHeight();
+        if (null == source || source.getWidth() != width || source.getHeight() != height) {
+            // 大小改变，重新创建
+            source = new LumaViewLuminanceSource(view);
+            binarizer = new ReusableHybridBinarizer(source);
+            bitmap = new BinaryBitmap(binarizer);
+        }
+        try {
+            binarizer.binarize();
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取二值化，用于检查二值化结果
+     *
+     * @return 二值化，未准备时返回null
+     */
+    public ReusableHybridBinarizer getBinarizer() {
+        return binarizer;
+    }
+
+    /**
+     * 解码当前视图；候选区域、分块等对同一帧的多次解码只计数一次，完整解码的间隔按帧计算
+     *
+     * @param timestamp 帧时间戳，0表示未知，每次解码都计为新的一帧
+     * @return 解码结果，未解析到内容时返回null
+     */
+    private Result decode(long timestamp) throws Exception {
+        if (0 == timestamp || timestamp != lastTimestamp) {
+            frameCount++;
+            lastTimestamp = timestamp;
+        }
+        if (!prepare()) return null;
+        Result result = decodeWith(multiFormatReader);
+        if (null == result && fullPassInterval > 0 && frameCount % fullPassInterval == 0
+                && !DecodeBudget.isCurrentExhausted()) {
+            // 快速解码失败，定期使用所有码制并且尽力解码，复用同一个位矩阵
+            result = decodeWith(fullReader);
+        }
+        return result;
+    }
+
+    private Result decodeWith(MultiFormatReader reader) throws Exception {
+        try {
+            return reader.decodeWithState(bitmap);
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+}
@@ -13,6 +13,7 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.mosect.lib.scanpanel.MaskBackground;
 import com.mosect.lib.scanpanel.ScanPanel;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
 
 public abstract class ScanActivity extends AppCompatActivity {
 
@@ -71,6 +72,13 @@ public abstract class ScanActivity extends AppCompatActivity {
                 panel.next();
             }
 
+            @Override
+            public void onScanDecodeResult(ScanPanel panel, DecodeResult result) {
+                Log.d(TAG, "onScanDecodeResult: " + result);
+                // 结果的处理与onScanResult一致，由onScanResult继续扫码
+                onScanResult(panel, result.getText());
+            }
+
             @Override
             public boolean onComputeClip(ScanPanel panel, int width, int height, Rect out) {
                 int cw = width / 2;
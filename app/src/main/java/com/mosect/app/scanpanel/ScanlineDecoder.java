@@ -0,0 +1,131 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.NotFoundException;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitArray;
+import com.google.zxing.oned.MultiFormatOneDReader;
+import com.mosect.lib.scanpanel.coder.DecodeBudget;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+
+/**
+ * 一维码扫描行解码：在图像中均匀选取若干行，逐行计算阈值并解码一维码，不需要对整个图像二值化；
+ * 同一个对象不能同时在多个线程中使用，统计数据可以在其他线程中读取
+ */
+final class ScanlineDecoder {
+
+    private int count = 0; // 扫描行数量，0表示不使用
+    private MultiFormatOneDReader reader; // 一维码解码器，允许的码制中没有一维码时为null
+    private BitArray row; // 扫描行的二值化结果，复用
+    private long attempts = 0; // 扫描行解码次数
+    private long hits = 0; // 扫描行解码成功次数
+
+    /**
+     * 设置允许的码制，只解码其中的一维码
+     *
+     * @param formats 码制，null表示所有码制
+     */
+    void setFormats(Collection<BarcodeFormat> formats) {
+        EnumSet<BarcodeFormat> oneDFormats = EnumSet.copyOf(ZxingFormats.ONE_D_FORMATS);
+        if (null != formats) {
+            oneDFormats.retainAll(formats);
+        }
+        if (oneDFormats.isEmpty()) {
+            reader = null;
+        } else {
+            Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, new ArrayList<>(oneDFormats));
+            reader = new MultiFormatOneDReader(hints);
+        }
+    }
+
+    void setCount(int count) {
+        this.count = Math.max(0, count);
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * 是否需要使用扫描行解码
+     *
+     * @return true，设置了扫描行并且允许的码制中有一维码
+     */
+    boolean isEnabled() {
+        return count > 0 && null != reader;
+    }
+
+    synchronized float getHitRate() {
+        return attempts > 0 ? (float) hits / attempts : 0;
+    }
+
+    /**
+     * 扫描行解码一维码，从中间行开始向两边交替选取扫描行，每行正向和反向各解码一次
+     *
+     * @param image 图像
+     * @return 解码结果，未解析到内容时返回null
+     */
+    Result decode(ReusableBitmap image) {
+        int width = image.getView().getWidth();
+        int height = image.getView().getHeight();
+        int lines = Math.min(count, height);
+        int step = Math.max(1, height / (lines + 1));
+        int middle = height / 2;
+        Result result = null;
+        for (int i = 0; i < lines && null == result && !DecodeBudget.isCurrentExhausted(); i++) {
+            // 中间、上、下、上、下……
+            int offset = (i + 1) / 2 * step;
+            int y = (i & 1) == 0 ? middle + offset : middle - offset;
+            if (y < 0 || y >= height) break;
+            try {
+                row = image.getBlackRow(y, row);
+            } catch (NotFoundException e) {
+                // 此行没有明显的明暗区分
+                continue;
+            }
+            result = decodeRow(y, width, false);
+            if (null == result) {
+                // 倒置的码
+                row.reverse();
+                result = decodeRow(y, width, true);
+            }
+        }
+        synchronized (this) {
+            attempts++;
+            if (null != result) {
+                hits++;
+            }
+        }
+        return result;
+    }
+
+    private Result decodeRow(int y, int width, boolean reversed) {
+        try {
+            Result result = reader.decodeRow(y, row, null);
+            if (reversed) {
+                // 结果点转换成正向坐标
+                ResultPoint[] points = result.getResultPoints();
+                if (null != points) {
+                    for (int i = 0; i < points.length; i++) {
+                        if (null != points[i]) {
+                            points[i] = new ResultPoint(width - points[i].getX() - 1, points[i].getY());
+                        }
+                    }
+                }
+            }
+            return result;
+        } catch (Exception e) {
+            return null;
+        } finally {
+            reader.reset();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.BinaryBitmap;
+import com.google.zxing.MultiFormatReader;
+import com.google.zxing.Result;
+import com.google.zxing.ResultPoint;
+import com.mosect.lib.scanpanel.coder.DecodeBudget;
+import com.mosect.lib.scanpanel.coder.LumaView;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 推测解码的变体：在线程池中解码反色（白底黑码）和顺时针旋转90度的变体，结果点转换成原始图像坐标；
+ * 每个变体使用自己的位图，变体之间以及帧之间复用；同一时间只有一组变体，新的一组需要等待上一组结束
+ */
+final class SpeculativeDecoder {
+
+    private static final long BUDGET_POLL_MILLIS = 10; // 等待变体时检查预算的间隔，毫秒
+
+    private final byte[] lock = new byte[0];
+    private final List<MultiFormatReader> invertedReaders = new ArrayList<>(); // 反色变体的解码器，每个解码器负责一组码制
+    private final List<MultiFormatReader> rotatedReaders = new ArrayList<>(); // 旋转变体的解码器，每个解码器负责一组码制
+    private final ReusableBitmap inverted = new ReusableBitmap(); // 反色变体
+    private final ReusableBitmap rotated = new ReusableBitmap(); // 顺时针旋转90度的变体
+    private byte[] data; // 变体使用的亮度数据，从帧中复制，帧归还后变体仍然可以读取
+    private byte[] rowBuffer; // 读取行数据的数组，复用
+    private volatile ExecutorService executor; // 解码变体的线程池
+    private int running = 0; // 运行中的变体数量
+    private boolean cancelled = false; // 变体是否已取消，即已经有结果
+    private Result result; // 变体的解码结果
+    private long invertedHits = 0; // 反色变体解码成功次数
+    private long rotatedHits = 0; // 旋转变体解码成功次数
+
+    /**
+     * 设置允许的码制，变体按码制分组解码，每组之间检查是否已取消；需要在解码之前设置
+     *
+     * @param formats 码制，null表示所有码制
+     */
+    void setFormats(Collection<BarcodeFormat> formats) {
+        Collection<BarcodeFormat> groups = null != formats ? formats : ZxingFormats.ALL_FORMATS;
+        ZxingFormats.createGroupReaders(groups, invertedReaders);
+        ZxingFormats.createGroupReaders(groups, rotatedReaders);
+    }
+
+    void setExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 是否可以解码变体
+     *
+     * @return true，已设置线程池并且未关闭
+     */
+    boolean isAvailable() {
+        ExecutorService executor = this.executor;
+        return null != executor && !executor.isShutdown();
+    }
+
+    long getInvertedHits() {
+        synchronized (lock) {
+            return invertedHits;
+        }
+    }
+
+    long getRotatedHits() {
+        synchronized (lock) {
+            return rotatedHits;
+        }
+    }
+
+    /**
+     * 复制图像并开始解码变体，变体使用调用线程的预算，预算用完或者被取消时变体也会停止
+     *
+     * @param source 原始图像
+     * @param budget 调用线程的预算，可以为null
+     * @return true，已开始；false，没有线程池，或者等待上一组变体时预算已用完
+     */
+    boolean start(LumaView source, DecodeBudget budget) throws InterruptedException {
+        ExecutorService executor = this.executor;
+        if (null == executor) return false;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        synchronized (lock) {
+            // 等待上一组变体结束，才能复用数组和位图；上一组变体已取消，会在当前码制组结束后停止
+            waitVariants(budget, false);
+            if (running > 0) {
+                // 预算已用完
+                return false;
+            }
+            // 变体在其他线程中读取，需要复制，帧归还之后仍然可以访问
+            int size = width * height;
+            if (null == data || data.length < size) {
+                data = new byte[size];
+            }
+            if (null == rowBuffer || rowBuffer.length < width) {
+                rowBuffer = new byte[width];
+            }
+            for (int y = 0; y < height; y++) {
+                byte[] row = source.getRow(y, rowBuffer);
+                System.arraycopy(row, 0, data, y * width, width);
+            }
+            running = 2;
+            cancelled = false;
+            result = null;
+        }
+        // 变体使用同一份数据的不同视图，不需要再复制
+        inverted.getView().set(data, width, 0, 0, width, height).setTransform(0, false, true);
+        inverted.update();
+        rotated.getView().set(data, width, 0, 0, width, height).setTransform(90, false, false);
+        rotated.update();
+        submit(executor, () -> runVariant(invertedReaders, inverted, budget));
+        submit(executor, () -> runVariant(rotatedReaders, rotated, budget));
+        return true;
+    }
+
+    /**
+     * 原始图像未解析到内容时，等待变体的结果；变体读取的是复制的数据，预算用完时可以不等待
+     *
+     * @param budget 调用线程的预算，可以为null
+     * @return 变体的结果，结果点相对于原始图像；没有结果时返回null
+     */
+    Result await(DecodeBudget budget) throws InterruptedException {
+        synchronized (lock) {
+            waitVariants(budget, true);
+            return result;
+        }
+    }
+
+    /**
+     * 取消变体，已经有结果或者解码出错时调用；未开始的变体直接结束，运行中的变体在当前码制组结束后停止，结果会被忽略
+     */
+    void cancel() {
+        synchronized (lock) {
+            cancelled = true;
+        }
+    }
+
+    private void submit(ExecutorService executor, Runnable variant) {
+        try {
+            executor.execute(variant);
+        } catch (RejectedExecutionException e) {
+            // 线程池已关闭，此变体直接结束
+            synchronized (lock) {
+                running--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * 等待变体结束，需要在lock中调用
+     *
+     * @param budget      调用线程的预算，null表示不限制，预算用完时不再等待
+     * @param untilResult 是否在变体解码成功时就结束等待
+     */
+    private void waitVariants(DecodeBudget budget, boolean untilResult) throws InterruptedException {
+        while (running > 0 && !(untilResult && null != result)) {
+            if (null == budget) {
+                lock.wait();
+            } else if (budget.isExhausted()) {
+                break;
+            } else {
+                // 取消不会通知此锁，需要定期检查
+                long remaining = budget.getRemainingNanos() / 1000000L;
+                lock.wait(Math.max(1, Math.min(BUDGET_POLL_MILLIS, remaining)));
+            }
+        }
+    }
+
+    /**
+     * 在线程池中解码变体，依次使用每组码制的解码器，每组之间检查是否已取消以及预算是否用完
+     *
+     * @param readers 变体的解码器
+     * @param variant 变体
+     * @param budget  调用线程的预算，可以为null
+     */
+    private void runVariant(List<MultiFormatReader> readers, ReusableBitmap variant, DecodeBudget budget) {
+        Result variantResult = null;
+        LumaView view = variant.getView();
+        DecodeBudget old = DecodeBudget.current();
+        DecodeBudget.setCurrent(budget);
+        try {
+            // 二值化结果缓存在位图中，各组解码器共用
+            BinaryBitmap bitmap = isCancelled() ? null : variant.getBitmap();
+            for (int i = 0; null != bitmap && i < readers.size() && null == variantResult && !isCancelled()
+                    && !DecodeBudget.isCurrentExhausted(); i++) {
+                MultiFormatReader reader = readers.get(i);
+                try {
+                    variantResult = reader.decodeWithState(bitmap);
+                } catch (Exception ignored) {
+                    // 未解析到内容，尝试下一组
+                } finally {
+                    reader.reset();
+                }
+            }
+            if (null != variantResult && view.getRotation() != 0) {
+                variantResult = mapPoints(variantResult, view);
+            }
+        } finally {
+            DecodeBudget.setCurrent(old);
+            synchronized (lock) {
+                running--;
+                if (null != variantResult && !cancelled && null == result) {
+                    result = variantResult;
+                    if (view.getRotation() != 0) {
+                        rotatedHits++;
+                    } else {
+                        invertedHits++;
+                    }
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private boolean isCancelled() {
+        synchronized (lock) {
+            return cancelled;
+        }
+    }
+
+    /**
+     * 将视图中的结果点转换成原始图像坐标
+     *
+     * @param result 结果
+     * @param view   视图
+     * @return 结果点转换后的结果
+     */
+    private static Result mapPoints(Result result, LumaView view) {
+        ResultPoint[] points = result.getResultPoints();
+        ResultPoint[] mapped = null;
+        if (null != points) {
+            mapped = new ResultPoint[points.length];
+            float[] point = new float[2];
+            for (int i = 0; i < points.length; i++) {
+                if (null != points[i]) {
+                    view.mapPoint(points[i].getX(), points[i].getY(), point);
+                    mapped[i] = new ResultPoint(point[0], point[1]);
+                }
+            }
+        }
+        return new Result(result.getText(), result.getRawBytes(), mapped, result.getBarcodeFormat());
+    }
+}
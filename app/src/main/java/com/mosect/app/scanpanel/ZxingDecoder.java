@@ -2,37 +2,403 @@ package com.mosect.app.scanpanel;
 
 import android.graphics.Rect;
 
+import com.google.zxing.BarcodeFormat;
 import com.google.zxing.BinaryBitmap;
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.MultiFormatReader;
-import com.google.zxing.PlanarYUVLuminanceSource;
+import com.google.zxing.NotFoundException;
 import com.google.zxing.Result;
-import com.google.zxing.common.HybridBinarizer;
+import com.google.zxing.ResultPoint;
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+import com.mosect.lib.scanpanel.coder.DecodeBudget;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.ExecutorConfigurable;
+import com.mosect.lib.scanpanel.coder.FormatConfigurable;
+import com.mosect.lib.scanpanel.coder.FormatHistory;
+import com.mosect.lib.scanpanel.coder.Frame;
 import com.mosect.lib.scanpanel.coder.FrameDecoder;
+import com.mosect.lib.scanpanel.coder.LumaView;
 
-public class ZxingDecoder implements FrameDecoder {
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
-    private final MultiFormatReader multiFormatReader;
+/**
+ * zxing解码器，分级解码：先使用扫描行快速解码一维码，再按金字塔从小到大快速解码允许的码制（可以同时推测解码变体），
+ * 定期在快速解码失败后使用所有码制完整解码；每一层的位图由解码器持有并复用，同一帧的快速解码和完整解码共用二值化结果；
+ * 同一个解码器不能同时在多个线程中使用，并行解码时每个解码线程使用自己的解码器
+ */
+public class ZxingDecoder implements FrameDecoder, FormatConfigurable, ExecutorConfigurable {
+
+    private final MultiFormatReader multiFormatReader = new MultiFormatReader(); // 快速解码器，只解码允许的码制
+    private final MultiFormatReader fullReader = new MultiFormatReader(); // 完整解码器，所有码制并且尽力解码
+    private int fullPassInterval = 0; // 每隔多少帧进行一次完整解码，0表示不进行
+    private long frameCount = 0; // 解码的帧数量，同一帧的多次解码只计数一次
+    private long lastTimestamp = 0; // 最后一次解码的帧时间戳
+    private long fullPassHits = 0; // 完整解码成功次数
+    private List<BarcodeFormat> allowedFormats; // 允许的码制，null表示所有码制
+
+    private final ReusableBitmap image = new ReusableBitmap(); // 当前帧的裁剪区域，即金字塔第0层
+    private final LumaPyramid pyramid = new LumaPyramid(); // 金字塔
+    private int pyramidLevels = 1; // 金字塔层数，1表示只解码原始分辨率
+    private final long[] levelAttempts = new long[LumaPyramid.MAX_LEVELS]; // 每一层的解码次数
+    private final long[] levelHits = new long[LumaPyramid.MAX_LEVELS]; // 每一层的解码成功次数
+    private int lastScale = 1; // 最后一次解码成功的层相对于原始分辨率的缩小倍数
+
+    private final ScanlineDecoder scanlines = new ScanlineDecoder(); // 一维码扫描行解码
+    private final AdaptiveFormatDecoder adaptive = new AdaptiveFormatDecoder(); // 自适应码制解码
+    private final SpeculativeDecoder variants = new SpeculativeDecoder(); // 推测解码的变体
+    private boolean speculative = false; // 是否同时解码反色和旋转的变体
 
     public ZxingDecoder() {
-        multiFormatReader = new MultiFormatReader();
+        setHints(null);
+        Map<DecodeHintType, Object> fullHints = new EnumMap<>(DecodeHintType.class);
+        fullHints.put(DecodeHintType.TRY_HARDER, Boolean.TRUE);
+        fullReader.setHints(fullHints);
+    }
+
+    /**
+     * 设置码制，使用分级解码：每一帧只快速解码允许的码制，每隔fullPassInterval帧，
+     * 在快速解码失败后使用所有码制并且尽力解码（TRY_HARDER），既保证常见情况的速度，又能找到少见的码；需要在解码之前设置
+     *
+     * @param formats          允许的码制，null表示所有码制
+     * @param fullPassInterval 每隔多少帧进行一次完整解码，0表示不进行完整解码
+     */
+    public void setBarcodeFormats(Collection<BarcodeFormat> formats, int fullPassInterval) {
+        setHints(formats);
+        this.fullPassInterval = Math.max(0, fullPassInterval);
+    }
+
+    @Override
+    public void setCodeFormats(Collection<CodeFormat> formats, int fullPassInterval) {
+        setBarcodeFormats(ZxingFormats.toBarcodeFormats(formats), fullPassInterval);
+    }
+
+    private void setHints(Collection<BarcodeFormat> formats) {
+        Map<DecodeHintType, Object> hints = null;
+        allowedFormats = null;
+        if (null != formats && !formats.isEmpty()) {
+            allowedFormats = new ArrayList<>(formats);
+            hints = new EnumMap<>(DecodeHintType.class);
+            hints.put(DecodeHintType.POSSIBLE_FORMATS, new ArrayList<>(formats));
+        }
+        // 提前创建解码器，decodeWithState不会每次重新创建
+        multiFormatReader.setHints(hints);
+        variants.setFormats(allowedFormats);
+        scanlines.setFormats(allowedFormats);
+    }
+
+    /**
+     * 设置推测解码变体使用的线程池，{@link com.mosect.lib.scanpanel.ScanHandler}会自动设置，并且在扫码结束时关闭
+     *
+     * @param executor 线程池，null表示不使用推测解码
+     */
+    @Override
+    public void setExecutor(ExecutorService executor) {
+        variants.setExecutor(executor);
+    }
+
+    /**
+     * 设置一维码扫描行快速解码：在裁剪区域中均匀选取若干行，逐行计算阈值并解码一维码（EAN、UPC、Code128等），
+     * 不需要对整个区域二值化；未解析到内容时再进行二维解码；适合超市收银等只扫描一维码的场景
+     *
+     * @param count 扫描行数量，0表示不使用
+     */
+    public void setScanlines(int count) {
+        scanlines.setCount(count);
+    }
+
+    public int getScanlines() {
+        return scanlines.getCount();
+    }
+
+    /**
+     * 获取扫描行快速解码成功率
+     *
+     * @return 成功率，0~1
+     */
+    public float getScanlineHitRate() {
+        return scanlines.getHitRate();
+    }
+
+    /**
+     * 设置自适应码制：按码制历史中的出现次数依次尝试单一码制的解码器，再尝试其他码制；
+     * 历史可信后只尝试出现过的码制，每隔discoveryInterval帧再尝试其他码制，以便发现新的码制；
+     * 码制历史可以在多个解码器之间共享，需要在解码之前设置
+     *
+     * @param history           码制历史，null表示不使用自适应码制
+     * @param discoveryInterval 历史可信时，每隔多少帧尝试其他码制；0表示可信后不再尝试其他码制，只依靠完整解码发现
+     */
+    @Override
+    public void setFormatHistory(FormatHistory history, int discoveryInterval) {
+        adaptive.setHistory(history, discoveryInterval);
+    }
+
+    public FormatHistory getFormatHistory() {
+        return adaptive.getHistory();
+    }
+
+    /**
+     * 获取完整解码成功次数，即快速解码失败，完整解码成功的次数
+     *
+     * @return 次数
+     */
+    public synchronized long getFullPassHits() {
+        return fullPassHits;
+    }
+
+    /**
+     * 设置金字塔层数，大于1时，先解码缩小的图像（每一层缩小一半），未解析到内容时再解码更大的图像，最后解码原始分辨率；
+     * 大部分码在缩小后仍然可以解码，并且耗时更少
+     *
+     * @param levels 层数，1表示只解码原始分辨率，最多为4
+     */
+    public void setPyramidLevels(int levels) {
+        pyramidLevels = Math.max(1, Math.min(LumaPyramid.MAX_LEVELS, levels));
+    }
+
+    public int getPyramidLevels() {
+        return pyramidLevels;
+    }
+
+    /**
+     * 设置推测解码，同时在线程池中解码反色（白底黑码）和旋转90度的变体，使用最先解码成功的结果并取消其他变体；
+     * 原始图像在当前线程中解码，不会增加单次解码的耗时；变体按码制分组解码，取消后在当前组结束时停止；
+     * 需要设置线程池，见{@link #setExecutor(ExecutorService)}，没有线程池时只解码原始图像
+     *
+     * @param speculative true，使用推测解码
+     */
+    public void setSpeculative(boolean speculative) {
+        this.speculative = speculative;
+    }
+
+    public boolean isSpeculative() {
+        return speculative;
+    }
+
+    /**
+     * 获取反色变体解码成功次数
+     *
+     * @return 次数
+     */
+    public long getInvertedHits() {
+        return variants.getInvertedHits();
+    }
+
+    /**
+     * 获取旋转变体解码成功次数
+     *
+     * @return 次数
+     */
+    public long getRotatedHits() {
+        return variants.getRotatedHits();
+    }
+
+    /**
+     * 获取某一层的解码次数
+     *
+     * @param level 层，0表示原始分辨率
+     * @return 解码次数
+     */
+    public synchronized long getLevelAttempts(int level) {
+        return levelAttempts[level];
+    }
+
+    /**
+     * 获取某一层的解码成功次数
+     *
+     * @param level 层，0表示原始分辨率
+     * @return 解码成功次数
+     */
+    public synchronized long getLevelHits(int level) {
+        return levelHits[level];
+    }
+
+    /**
+     * 获取某一层的解码成功率，用于调整层数
+     *
+     * @param level 层，0表示原始分辨率
+     * @return 成功率，0~1
+     */
+    public synchronized float getLevelHitRate(int level) {
+        long attempts = levelAttempts[level];
+        return attempts > 0 ? (float) levelHits[level] / attempts : 0;
     }
 
     @Override
     public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) throws Exception {
-        int cl = 0, ct = 0, cw = width, ch = height;
-        if (null != clip) {
-            cl = clip.left;
-            ct = clip.top;
-            cw = clip.width();
-            ch = clip.height();
-        }
-        PlanarYUVLuminanceSource source = new PlanarYUVLuminanceSource(data, width, height, cl, ct, cw, ch, false);
-        BinaryBitmap bitmap = new BinaryBitmap(new HybridBinarizer(source));
+        // 没有时间戳，每次解码都计为新的一帧
+        startFrame(0);
+        if (null == clip) {
+            image.getView().set(data, width, 0, 0, width, height);
+        } else {
+            image.getView().set(data, width, clip.left, clip.top, clip.width(), clip.height());
+        }
+        Result result = decode();
+        return null == result ? null : result.getText();
+    }
+
+    @Override
+    public String decodeFrame(int format, ByteBuffer luma, int width, int height,
+                              int rowStride, int pixelStride, long timestamp, Rect clip) throws Exception {
+        startFrame(timestamp);
+        // 直接读取缓冲区中的裁剪区域，不复制整帧
+        if (null == clip) {
+            image.getView().set(luma, rowStride, pixelStride, 0, 0, width, height);
+        } else {
+            image.getView().set(luma, rowStride, pixelStride, clip.left, clip.top, clip.width(), clip.height());
+        }
+        Result result = decode();
+        return null == result ? null : result.getText();
+    }
+
+    @Override
+    public boolean decodeFrame(Frame frame, Rect clip, DecodeResult out) throws Exception {
+        startFrame(frame.getTimestamp());
+        LumaView view = image.getView().set(frame, clip);
+        Result result = decode();
+        if (null == result) return false;
+        out.set(result.getText(), result.getBarcodeFormat().name(), result.getRawBytes());
+        ResultPoint[] points = result.getResultPoints();
+        if (null != points) {
+            // 结果点相对于裁剪区域（可能是缩小的图像），需要转换成帧坐标
+            float[] point = new float[2];
+            int scale = lastScale;
+            for (ResultPoint p : points) {
+                if (null != p) {
+                    view.mapPoint(p.getX() * scale, p.getY() * scale, point);
+                    out.addPoint(point[0], point[1]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 开始解码一帧；候选区域、分块等对同一帧的多次解码只计数一次，完整解码和尝试其他码制的间隔按帧计算
+     *
+     * @param timestamp 帧时间戳，0表示未知，每次解码都计为新的一帧
+     */
+    private void startFrame(long timestamp) {
+        if (0 == timestamp || timestamp != lastTimestamp) {
+            frameCount++;
+            lastTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * 分级解码当前图像
+     *
+     * @return 解码结果，未解析到内容时返回null
+     */
+    private Result decode() throws Exception {
+        image.update();
+        lastScale = 1;
+        Result result = null;
+        if (scanlines.isEnabled()) {
+            // 先使用扫描行快速解码一维码
+            result = scanlines.decode(image);
+        }
+        if (null == result && !DecodeBudget.isCurrentExhausted()) {
+            result = speculative && variants.isAvailable() ? decodeSpeculative() : decodeLevels();
+        }
+        if (null == result && fullPassInterval > 0 && frameCount % fullPassInterval == 0
+                && !DecodeBudget.isCurrentExhausted()) {
+            // 快速解码失败，定期使用所有码制并且尽力解码
+            result = decodeFull();
+        }
+        if (null != result) {
+            adaptive.record(result);
+        }
+        return result;
+    }
+
+    private Result decodeFull() throws Exception {
+        lastScale = 1;
+        // 与快速解码共用原始分辨率的二值化结果
+        BinaryBitmap bitmap = image.getBitmap();
+        if (null == bitmap) return null;
+        try {
+            Result result = fullReader.decodeWithState(bitmap);
+            synchronized (this) {
+                fullPassHits++;
+            }
+            return result;
+        } catch (NotFoundException e) {
+            return null;
+        } finally {
+            fullReader.reset();
+        }
+    }
+
+    /**
+     * 推测解码，原始图像在当前线程中解码，反色和旋转的变体在线程池中解码，使用最先成功的结果
+     *
+     * @return 解码结果，结果点相对于原始图像
+     */
+    private Result decodeSpeculative() throws Exception {
+        // 变体使用调用线程的预算，预算用完或者被取消时变体也会停止
+        DecodeBudget budget = DecodeBudget.current();
+        if (!variants.start(image.getView(), budget)) return null;
+        Result result = null;
+        try {
+            result = decodeLevels();
+            if (null == result) {
+                // 原始图像未解析到内容，等待变体
+                result = variants.await(budget);
+                if (null != result) {
+                    lastScale = 1;
+                }
+            }
+        } finally {
+            // 解码出错时也需要取消变体
+            variants.cancel();
+        }
+        return result;
+    }
+
+    private Result decodeLevels() throws Exception {
+        lastScale = 1;
+        if (pyramidLevels > 1) {
+            // 从最小的层开始解码
+            int top = pyramid.build(image.getView(), pyramidLevels);
+            for (int level = top; level >= 1; level--) {
+                Result result = decode(pyramid.getLevel(level), level);
+                if (null != result) {
+                    lastScale = 1 << level;
+                    return result;
+                }
+                // 预算用完时放弃剩余的层
+                if (DecodeBudget.isCurrentExhausted()) return null;
+            }
+        }
+        return decode(image, 0);
+    }
+
+    private Result decode(ReusableBitmap levelImage, int level) throws Exception {
+        Result result = null;
         try {
-            Result rawResult = multiFormatReader.decode(bitmap);
-            return rawResult.getText();
+            // 没有明显的明暗区分时不需要解码
+            BinaryBitmap bitmap = levelImage.getBitmap();
+            if (null != bitmap) {
+                result = adaptive.isEnabled() ? adaptive.decode(bitmap, allowedFormats, frameCount)
+                        : multiFormatReader.decodeWithState(bitmap);
+            }
+            return result;
+        } catch (NotFoundException e) {
+            return null;
         } finally {
             multiFormatReader.reset();
+            synchronized (this) {
+                levelAttempts[level]++;
+                if (null != result) {
+                    levelHits[level]++;
+                }
+            }
         }
     }
 }
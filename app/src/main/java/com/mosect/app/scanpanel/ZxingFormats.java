@@ -0,0 +1,85 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.DecodeHintType;
+import com.google.zxing.MultiFormatReader;
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * zxing码制相关的工具
+ */
+final class ZxingFormats {
+
+    static final EnumSet<BarcodeFormat> ALL_FORMATS = EnumSet.allOf(BarcodeFormat.class); // 所有码制
+    static final EnumSet<BarcodeFormat> ONE_D_FORMATS = EnumSet.of(
+            BarcodeFormat.EAN_13, BarcodeFormat.EAN_8, BarcodeFormat.UPC_A, BarcodeFormat.UPC_E,
+            BarcodeFormat.CODE_39, BarcodeFormat.CODE_93, BarcodeFormat.CODE_128, BarcodeFormat.ITF,
+            BarcodeFormat.CODABAR, BarcodeFormat.RSS_14, BarcodeFormat.RSS_EXPANDED); // 一维码制
+    static final EnumSet<BarcodeFormat> TWO_D_FORMATS = EnumSet.of(
+            BarcodeFormat.QR_CODE, BarcodeFormat.DATA_MATRIX, BarcodeFormat.AZTEC,
+            BarcodeFormat.PDF_417, BarcodeFormat.MAXICODE); // 二维码制，每种对应一个解码器
+
+    private ZxingFormats() {
+    }
+
+    /**
+     * 码制转换成zxing的码制，名称相同
+     *
+     * @param formats 码制，null表示所有码制
+     * @return zxing的码制，null表示所有码制
+     */
+    static List<BarcodeFormat> toBarcodeFormats(Collection<CodeFormat> formats) {
+        if (null == formats) return null;
+        List<BarcodeFormat> list = new ArrayList<>(formats.size());
+        for (CodeFormat format : formats) {
+            list.add(BarcodeFormat.valueOf(format.name()));
+        }
+        return list;
+    }
+
+    /**
+     * 创建只解码指定码制的解码器，提前创建内部的解码器，decodeWithState不会每次重新创建
+     *
+     * @param formats 码制
+     * @return 解码器
+     */
+    static MultiFormatReader createReader(Collection<BarcodeFormat> formats) {
+        MultiFormatReader reader = new MultiFormatReader();
+        Map<DecodeHintType, Object> hints = new EnumMap<>(DecodeHintType.class);
+        hints.put(DecodeHintType.POSSIBLE_FORMATS, new ArrayList<>(formats));
+        reader.setHints(hints);
+        return reader;
+    }
+
+    /**
+     * 创建分组的解码器，所有一维码为一组，每种二维码各为一组，与{@link MultiFormatReader}内部的解码器划分一致
+     *
+     * @param formats 码制
+     * @param out     输出的解码器，会先清空
+     */
+    static void createGroupReaders(Collection<BarcodeFormat> formats, List<MultiFormatReader> out) {
+        out.clear();
+        EnumSet<BarcodeFormat> oneD = EnumSet.noneOf(BarcodeFormat.class);
+        List<BarcodeFormat> others = new ArrayList<>();
+        for (BarcodeFormat format : formats) {
+            if (ONE_D_FORMATS.contains(format)) {
+                oneD.add(format);
+            } else if (TWO_D_FORMATS.contains(format) && !others.contains(format)) {
+                others.add(format);
+            }
+        }
+        if (!oneD.isEmpty()) {
+            out.add(createReader(oneD));
+        }
+        for (BarcodeFormat format : others) {
+            out.add(createReader(EnumSet.of(format)));
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.oned.Code128Writer;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.Frame;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ReusableZxingDecoder}单元测试，只使用null裁剪区域，不依赖android.graphics.Rect
+ */
+public class ReusableZxingDecoderTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int NV21 = 17;
+
+    @Test
+    public void decodeFrame_findsQrCode() throws Exception {
+        byte[] data = createFrameData("hello");
+        Frame frame = new Frame();
+        frame.set(NV21, data, WIDTH, HEIGHT, 0);
+        ReusableZxingDecoder decoder = new ReusableZxingDecoder();
+        DecodeResult result = new DecodeResult();
+        assertTrue(decoder.decodeFrame(frame, null, result));
+        assertEquals("hello", result.getText());
+        // 结果点在码所在的区域中
+        for (int i = 0; i < result.getPointCount(); i++) {
+            assertTrue(result.getPointX(i) >= 200 && result.getPointX(i) <= 500);
+            assertTrue(result.getPointY(i) >= 100 && result.getPointY(i) <= 400);
+        }
+        // 复用对象解码下一帧
+        byte[] next = createFrameData("world");
+        frame.set(NV21, next, WIDTH, HEIGHT, 0);
+        result.reset();
+        assertTrue(decoder.decodeFrame(frame, null, result));
+        assertEquals("world", result.getText());
+    }
+
+    @Test
+    public void decodeFrame_tryHarderDecodesRotatedBarcode() throws Exception {
+        // 竖直的一维码，只有完整解码（TRY_HARDER）旋转图像后才能解析，旋转的图像使用派生的二值化
+        Frame frame = new Frame();
+        frame.set(NV21, createVerticalBarcodeData("vertical"), WIDTH, HEIGHT, 0);
+        ReusableZxingDecoder decoder = new ReusableZxingDecoder();
+        DecodeResult result = new DecodeResult();
+        assertFalse(decoder.decodeFrame(frame, null, result));
+        decoder.setBarcodeFormats(null, 1);
+        assertTrue(decoder.decodeFrame(frame, null, result));
+        assertEquals("vertical", result.getText());
+    }
+
+    @Test
+    public void decodeFrame_fullPassIntervalCountsFrames() throws Exception {
+        byte[] data = createVerticalBarcodeData("vertical");
+        Frame frame = new Frame();
+        frame.set(NV21, data, WIDTH, HEIGHT, 1000);
+        ReusableZxingDecoder decoder = new ReusableZxingDecoder();
+        decoder.setCodeFormats(Collections.singletonList(CodeFormat.QR_CODE), 2);
+        DecodeResult result = new DecodeResult();
+        // 同一帧的多次解码（候选区域、分块等）只计为一帧，不会提前进行完整解码
+        for (int i = 0; i < 3; i++) {
+            assertFalse(decoder.decodeFrame(frame, null, result));
+        }
+        frame.set(NV21, data, WIDTH, HEIGHT, 1033);
+        assertTrue(decoder.decodeFrame(frame, null, result));
+        assertEquals("vertical", result.getText());
+    }
+
+    @Test
+    public void prepare_doesNotAllocateInSteadyState() {
+        com.sun.management.ThreadMXBean threadBean = getAllocationBean();
+        // 两块不同内容的缓冲区，模拟摄像头轮流输出的帧
+        byte[][] buffers = {createFrameData("hello"), createNoiseData()};
+        Frame frame = new Frame();
+        ReusableZxingDecoder decoder = new ReusableZxingDecoder();
+        for (int i = 0; i < 200; i++) {
+            frame.set(NV21, buffers[i % 2], WIDTH, HEIGHT, i);
+            decoder.prepare(frame, null);
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < 100; i++) {
+            frame.set(NV21, buffers[i % 2], WIDTH, HEIGHT, i);
+            decoder.prepare(frame, null);
+        }
+        long allocated = threadBean.getThreadAllocatedBytes(threadId) - start;
+        assertEquals("bytes allocated by 100 frames", 0, allocated);
+    }
+
+    @Test
+    public void decodeFrame_noCodeAllocatesLessThanBitMatrix() throws Exception {
+        com.sun.management.ThreadMXBean threadBean = getAllocationBean();
+        byte[] data = createNoiseData();
+        Frame frame = new Frame();
+        frame.set(NV21, data, WIDTH, HEIGHT, 0);
+        ReusableZxingDecoder decoder = new ReusableZxingDecoder();
+        // 只解码二维码；PDF417的探测器每帧会复制并旋转整个位矩阵，不在此检查范围内
+        decoder.setBarcodeFormats(Collections.singletonList(BarcodeFormat.QR_CODE), 0);
+        DecodeResult result = new DecodeResult();
+        for (int i = 0; i < 50; i++) {
+            assertFalse(decoder.decodeFrame(frame, null, result));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        int frames = 20;
+        for (int i = 0; i < frames; i++) {
+            decoder.decodeFrame(frame, null, result);
+        }
+        long perFrame = (threadBean.getThreadAllocatedBytes(threadId) - start) / frames;
+        // 二值化不分配内存，剩下的只有zxing解码器每帧创建的探测器、查找图形等小对象；
+        // HybridBinarizer每帧至少分配亮度数组和位矩阵（WIDTH * HEIGHT * 9 / 8字节）
+        assertTrue("bytes allocated per frame: " + perFrame, perFrame < WIDTH * HEIGHT / 8);
+    }
+
+    private static com.sun.management.ThreadMXBean getAllocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+        return threadBean;
+    }
+
+    private static byte[] createFrameData(String text) {
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 300, 300);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data[i] = (byte) 200;
+        }
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 300; x++) {
+                data[(y + 100) * WIDTH + x + 200] = (byte) (matrix.get(x, y) ? 20 : 200);
+            }
+        }
+        return data;
+    }
+
+    /**
+     * 创建竖直的一维码（CODE_128）帧数据
+     */
+    private static byte[] createVerticalBarcodeData(String text) {
+        BitMatrix matrix;
+        try {
+            matrix = new Code128Writer().encode(text, BarcodeFormat.CODE_128, 300, 100);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        Arrays.fill(data, 0, WIDTH * HEIGHT, (byte) 220);
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 100; x++) {
+                data[(y + 90) * WIDTH + x + 270] = (byte) (matrix.get(y, x) ? 10 : 220);
+            }
+        }
+        return data;
+    }
+
+    private static byte[] createNoiseData() {
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+}
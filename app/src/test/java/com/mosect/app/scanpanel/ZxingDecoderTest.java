@@ -0,0 +1,132 @@
+package com.mosect.app.scanpanel;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.Frame;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ZxingDecoder}单元测试，只使用null裁剪区域，不依赖android.graphics.Rect
+ */
+public class ZxingDecoderTest {
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int NV21 = 17;
+
+    @Test
+    public void decodeFrame_pyramidMapsPointsToFrame() throws Exception {
+        Frame frame = new Frame();
+        frame.set(NV21, createFrameData("pyramid", false), WIDTH, HEIGHT, 1000);
+        ZxingDecoder decoder = new ZxingDecoder();
+        decoder.setPyramidLevels(3);
+        DecodeResult result = new DecodeResult();
+        assertTrue(decoder.decodeFrame(frame, null, result));
+        assertEquals("pyramid", result.getText());
+        assertEquals(1, decoder.getLevelHits(2));
+        // 缩小的层中的结果点转换成帧坐标
+        for (int i = 0; i < result.getPointCount(); i++) {
+            assertTrue(result.getPointX(i) >= 200 && result.getPointX(i) <= 500);
+            assertTrue(result.getPointY(i) >= 100 && result.getPointY(i) <= 400);
+        }
+    }
+
+    @Test
+    public void speculative_decodesInvertedCodeWithExecutor() throws Exception {
+        Frame frame = new Frame();
+        frame.set(NV21, createFrameData("inverted", true), WIDTH, HEIGHT, 1000);
+        ZxingDecoder decoder = new ZxingDecoder();
+        decoder.setBarcodeFormats(Collections.singletonList(BarcodeFormat.QR_CODE), 0);
+        decoder.setSpeculative(true);
+        DecodeResult result = new DecodeResult();
+        // 没有线程池时只解码原始图像
+        assertFalse(decoder.decodeFrame(frame, null, result));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            decoder.setExecutor(executor);
+            assertTrue(decoder.decodeFrame(frame, null, result));
+            assertEquals("inverted", result.getText());
+            assertEquals(1, decoder.getInvertedHits());
+        } finally {
+            executor.shutdown();
+        }
+        // 线程池关闭后不再解码变体，也不会等待
+        result.reset();
+        assertFalse(decoder.decodeFrame(frame, null, result));
+        assertEquals(1, decoder.getInvertedHits());
+    }
+
+    @Test
+    public void decodeFrame_noCodeAllocatesLessThanBitMatrix() throws Exception {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        new Random(1).nextBytes(data);
+        Frame frame = new Frame();
+        ZxingDecoder decoder = new ZxingDecoder();
+        // 只解码二维码；完整解码（TRY_HARDER）会旋转图像，不在此检查范围内
+        decoder.setBarcodeFormats(Collections.singletonList(BarcodeFormat.QR_CODE), 0);
+        DecodeResult result = new DecodeResult();
+        for (int i = 0; i < 50; i++) {
+            frame.set(NV21, data, WIDTH, HEIGHT, i + 1);
+            assertFalse(decoder.decodeFrame(frame, null, result));
+        }
+
+        long threadId = Thread.currentThread().getId();
+        long start = threadBean.getThreadAllocatedBytes(threadId);
+        int frames = 20;
+        for (int i = 0; i < frames; i++) {
+            frame.set(NV21, data, WIDTH, HEIGHT, 100 + i);
+            decoder.decodeFrame(frame, null, result);
+        }
+        long perFrame = (threadBean.getThreadAllocatedBytes(threadId) - start) / frames;
+        // HybridBinarizer每帧至少分配亮度数组和位矩阵（WIDTH * HEIGHT * 9 / 8字节）
+        assertTrue("bytes allocated per frame: " + perFrame, perFrame < WIDTH * HEIGHT / 8);
+    }
+
+    /**
+     * 创建包含二维码的帧数据
+     *
+     * @param text     内容
+     * @param inverted 是否反色，即深色背景上的浅色码
+     * @return 帧数据
+     */
+    private static byte[] createFrameData(String text, boolean inverted) {
+        BitMatrix matrix;
+        try {
+            matrix = new QRCodeWriter().encode(text, BarcodeFormat.QR_CODE, 300, 300);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+        byte dark = (byte) (inverted ? 200 : 20);
+        byte light = (byte) (inverted ? 20 : 200);
+        byte[] data = new byte[WIDTH * HEIGHT * 3 / 2];
+        for (int i = 0; i < WIDTH * HEIGHT; i++) {
+            data[i] = light;
+        }
+        for (int y = 0; y < 300; y++) {
+            for (int x = 0; x < 300; x++) {
+                data[(y + 100) * WIDTH + x + 200] = matrix.get(x, y) ? dark : light;
+            }
+        }
+        return data;
+    }
+}
@@ -0,0 +1,291 @@
+package com.mosect.lib.scanpanel;
+
+import android.annotation.TargetApi;
+import android.content.Context;
+import android.graphics.SurfaceTexture;
+import android.hardware.Camera;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+import android.util.Size;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Camera2摄像头控制，负责打开摄像头以及创建预览和解码两路输出的会话；回调都在摄像头线程中执行
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+class Camera2Controller {
+
+    private static final String TAG = "Camera2Controller";
+
+    private final byte[] lock = new byte[0];
+    private final CameraManager cameraManager;
+    private final Listener listener;
+    private final HandlerThread thread; // 摄像头线程
+    private final Handler handler;
+    private CameraCharacteristics characteristics; // 摄像头参数
+    private CameraDevice device;
+    private CameraCaptureSession session;
+    private Surface previewSurface; // 预览输出
+    private int sessionId = 0; // 会话id，用于忽略过期的会话回调
+    private boolean closed = false;
+
+    Camera2Controller(Context context, Listener listener) {
+        this.cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        this.listener = listener;
+        thread = new HandlerThread("ScanHandler-Camera2");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * 打开摄像头，打开成功后触发{@link Listener#onCameraOpened(Camera2Controller)}
+     *
+     * @param id         摄像头id
+     * @param cameraInfo 输出摄像头信息，与Camera1保持一致，方便计算显示方向
+     * @return true，开始打开摄像头；false，打开失败
+     */
+    boolean open(String id, Camera.CameraInfo cameraInfo) {
+        try {
+            characteristics = cameraManager.getCameraCharacteristics(id);
+            Integer facing = characteristics.get(CameraCharacteristics.LENS_FACING);
+            cameraInfo.facing = null != facing && facing == CameraCharacteristics.LENS_FACING_FRONT ?
+                    Camera.CameraInfo.CAMERA_FACING_FRONT : Camera.CameraInfo.CAMERA_FACING_BACK;
+            Integer orientation = characteristics.get(CameraCharacteristics.SENSOR_ORIENTATION);
+            cameraInfo.orientation = null == orientation ? 0 : orientation;
+            Log.d(TAG, String.format("open: id=%s, facing=%s, orientation=%s",
+                    id, cameraInfo.facing, cameraInfo.orientation));
+            cameraManager.openCamera(id, new CameraDevice.StateCallback() {
+                @Override
+                public void onOpened(CameraDevice camera) {
+                    synchronized (lock) {
+                        if (closed) {
+                            camera.close();
+                            return;
+                        }
+                        device = camera;
+                    }
+                    listener.onCameraOpened(Camera2Controller.this);
+                }
+
+                @Override
+                public void onDisconnected(CameraDevice camera) {
+                    camera.close();
+                    if (releaseDevice(camera)) {
+                        listener.onCameraError(Camera2Controller.this, new IllegalStateException("Camera disconnected"));
+                    }
+                }
+
+                @Override
+                public void onError(CameraDevice camera, int error) {
+                    camera.close();
+                    if (releaseDevice(camera)) {
+                        listener.onCameraError(Camera2Controller.this, new IllegalStateException("Camera error: " + error));
+                    }
+                }
+            }, handler);
+            return true;
+        } catch (CameraAccessException | SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "open: ", e);
+            return false;
+        }
+    }
+
+    private boolean releaseDevice(CameraDevice camera) {
+        synchronized (lock) {
+            if (device == camera) {
+                device = null;
+                session = null;
+                return !closed;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 获取预览支持的大小
+     *
+     * @param degrees 角度
+     * @return 预览大小列表
+     */
+    List<ScanHandler.PreviewSize> getPreviewSizes(int degrees) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        return toPreviewSizes(map.getOutputSizes(SurfaceTexture.class), degrees);
+    }
+
+    /**
+     * 获取解码输出支持的大小
+     *
+     * @param format  格式
+     * @param degrees 角度
+     * @return 大小列表
+     */
+    List<ScanHandler.PreviewSize> getOutputSizes(int format, int degrees) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        return toPreviewSizes(map.getOutputSizes(format), degrees);
+    }
+
+    private static List<ScanHandler.PreviewSize> toPreviewSizes(Size[] sizes, int degrees) {
+        List<ScanHandler.PreviewSize> list = new ArrayList<>();
+        if (null != sizes) {
+            for (Size size : sizes) {
+                list.add(new ScanHandler.PreviewSize(size.getWidth(), size.getHeight(), degrees));
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 图像时间戳是否使用SystemClock.elapsedRealtimeNanos()时钟
+     *
+     * @return true，使用elapsedRealtimeNanos时钟
+     */
+    boolean isRealtimeTimestamp() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            Integer source = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            return null != source && source == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+        }
+        return false;
+    }
+
+    /**
+     * 开始会话，同时输出到预览纹理和解码surface
+     *
+     * @param previewTexture 预览纹理
+     * @param width          预览宽度
+     * @param height         预览高度
+     * @param decodeSurface  解码surface
+     */
+    void startSession(SurfaceTexture previewTexture, int width, int height, Surface decodeSurface) {
+        CameraDevice device;
+        Surface previewSurface;
+        int id;
+        synchronized (lock) {
+            if (closed || null == this.device) return;
+            closeSessionLocked();
+            previewTexture.setDefaultBufferSize(width, height);
+            this.previewSurface = new Surface(previewTexture);
+            previewSurface = this.previewSurface;
+            device = this.device;
+            id = ++sessionId;
+        }
+        try {
+            device.createCaptureSession(Arrays.asList(previewSurface, decodeSurface), new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(CameraCaptureSession session) {
+                    synchronized (lock) {
+                        if (closed || id != sessionId) {
+                            session.close();
+                            return;
+                        }
+                        Camera2Controller.this.session = session;
+                    }
+                    try {
+                        CaptureRequest.Builder builder = device.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                        builder.addTarget(previewSurface);
+                        builder.addTarget(decodeSurface);
+                        int[] afModes = characteristics.get(CameraCharacteristics.CONTROL_AF_AVAILABLE_MODES);
+                        if (null != afModes) {
+                            for (int mode : afModes) {
+                                if (mode == CaptureRequest.CONTROL_AF_MODE_CONTINUOUS_PICTURE) {
+                                    // 使用连续对焦，不需要定时对焦
+                                    builder.set(CaptureRequest.CONTROL_AF_MODE, mode);
+                                    break;
+                                }
+                            }
+                        }
+                        session.setRepeatingRequest(builder.build(), null, handler);
+                    } catch (CameraAccessException | IllegalStateException e) {
+                        Log.e(TAG, "onConfigured: ", e);
+                        listener.onCameraError(Camera2Controller.this, e);
+                    }
+                }
+
+                @Override
+                public void onConfigureFailed(CameraCaptureSession session) {
+                    session.close();
+                    listener.onCameraError(Camera2Controller.this, new IllegalStateException("Configure session failed"));
+                }
+            }, handler);
+        } catch (CameraAccessException | IllegalStateException e) {
+            Log.e(TAG, "startSession: ", e);
+            listener.onCameraError(this, e);
+        }
+    }
+
+    /**
+     * 停止会话，在释放解码surface之前需要停止会话
+     */
+    void stopSession() {
+        synchronized (lock) {
+            closeSessionLocked();
+        }
+    }
+
+    private void closeSessionLocked() {
+        sessionId++;
+        if (null != session) {
+            session.close();
+            session = null;
+        }
+        if (null != previewSurface) {
+            previewSurface.release();
+            previewSurface = null;
+        }
+    }
+
+    /**
+     * 获取摄像头线程，用于接收解码帧
+     *
+     * @return 摄像头线程
+     */
+    Handler getHandler() {
+        return handler;
+    }
+
+    /**
+     * 关闭摄像头
+     */
+    void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            closeSessionLocked();
+            if (null != device) {
+                device.close();
+                device = null;
+            }
+        }
+        thread.quitSafely();
+    }
+
+    interface Listener {
+
+        /**
+         * 摄像头已打开
+         *
+         * @param controller 摄像头控制
+         */
+        void onCameraOpened(Camera2Controller controller);
+
+        /**
+         * 摄像头错误
+         *
+         * @param controller 摄像头控制
+         * @param exp        异常
+         */
+        void onCameraError(Camera2Controller controller, Exception exp);
+    }
+}
@@ -1,5 +1,6 @@
 package com.mosect.lib.scanpanel;
 
+import android.annotation.TargetApi;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
@@ -11,7 +12,7 @@ import android.graphics.Rect;
 import android.graphics.RectF;
 import android.hardware.Camera;
 import android.opengl.GLES20;
-import android.text.TextUtils;
+import android.os.Build;
 import android.util.Log;
 import android.view.Display;
 import android.view.Surface;
@@ -21,8 +22,22 @@ import com.mosect.lib.easygl2.GLContext;
 import com.mosect.lib.easygl2.GLException;
 import com.mosect.lib.easygl2.GLSurfaceWindow;
 import com.mosect.lib.easygl2.GLTextureWindow;
+import com.mosect.lib.scanpanel.coder.Camera2FrameSource;
+import com.mosect.lib.scanpanel.coder.ChangeFilter;
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+import com.mosect.lib.scanpanel.coder.CodeLocator;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.DuplicateFilter;
+import com.mosect.lib.scanpanel.coder.ExecutorConfigurable;
+import com.mosect.lib.scanpanel.coder.FormatConfigurable;
+import com.mosect.lib.scanpanel.coder.FormatHistory;
 import com.mosect.lib.scanpanel.coder.FrameDecoder;
 import com.mosect.lib.scanpanel.coder.FrameHandler;
+import com.mosect.lib.scanpanel.coder.FramePipeline;
+import com.mosect.lib.scanpanel.coder.FrameStats;
+import com.mosect.lib.scanpanel.coder.RoiTracker;
+import com.mosect.lib.scanpanel.coder.SharpnessFilter;
+import com.mosect.lib.scanpanel.coder.TileDecoder;
 import com.mosect.lib.scanpanel.graphics.BitmapTexture;
 import com.mosect.lib.scanpanel.graphics.ContentMatrix;
 import com.mosect.lib.scanpanel.graphics.DrawerOES;
@@ -32,9 +47,12 @@ import com.mosect.lib.scanpanel.shader.ShaderTEX;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * 扫码处理，不推荐使用此类进行扫码处理，推荐使用{@link ScanPanel}
@@ -42,6 +60,23 @@ import java.util.List;
 public class ScanHandler {
 
     private static final String TAG = "ScanHandler";
+    private static final int ROI_MIN_SIZE = 32; // 感兴趣区域的最小边长，像素
+    private static final int DUPLICATE_CACHE_SIZE = 64; // 重复结果过滤最多缓存的内容数量
+    private static final int SHARPNESS_STEP = 4; // 清晰度采样间隔，像素
+    private static final int CHANGE_GRID_SIZE = 16; // 画面变化检测的网格大小
+    private static final long CHANGE_MIN_DELAY = 50; // 画面不变时的最小等待时间，毫秒
+    private static final int LOCATOR_GRADIENT_THRESHOLD = 32; // 码定位的强梯度阈值
+    private static final int LOCATOR_MAX_CANDIDATES = 3; // 码定位最多候选区域数量
+    private static final int TILE_MIN_SIZE = 160; // 分块解码的块最小边长，像素
+
+    /**
+     * 使用{@link Camera}
+     */
+    public static final int CAMERA_API_1 = 1;
+    /**
+     * 使用{@link android.hardware.camera2}，需要Android 5.0及以上，否则使用{@link #CAMERA_API_1}
+     */
+    public static final int CAMERA_API_2 = 2;
 
     private final Context context;
     private Callback callback;
@@ -53,6 +88,11 @@ public class ScanHandler {
 
     private Camera camera = null; // 摄像头
     private final Camera.CameraInfo cameraInfo = new Camera.CameraInfo(); // 摄像头信息
+    private int cameraApi = CAMERA_API_1; // 摄像头API
+    private Camera2Controller camera2; // Camera2摄像头控制
+    private boolean camera2Opened = false; // Camera2摄像头是否已打开
+    private int decodeWidth; // 解码帧宽度，Camera2可以与预览大小不同
+    private int decodeHeight; // 解码帧高度
 
     private GLContext glContext; // GL上下文
     private GLTextureWindow glTextureWindow; // 纹理窗口，用来接收摄像头预览图像
@@ -65,6 +105,36 @@ public class ScanHandler {
     private Rect clipRect; // 裁剪部分，即扫码部分
     private FrameDecoder frameDecoder; // 帧解码器
     private FrameHandler frameHandler; // 帧解码处理
+    private ExecutorService decodeExecutor; // 辅助解码的线程池，设置给解码器使用，扫码结束时关闭
+    private boolean decodeExecutorClosed = false; // 辅助解码的线程池是否已关闭，关闭后不再创建
+    private int previewBufferCount = 0; // 预览缓冲区数量，0表示不使用缓冲区
+    private FrameDecoder.Factory frameDecoderFactory; // 帧解码器工厂，并行解码时使用
+    private int decodeWorkerCount = 1; // 解码线程数量
+    private int maxInFlightFrames = 0; // 最多同时处理的帧数量
+    private int roiMaxMisses = 0; // 感兴趣区域跟踪最多连续失败次数，0表示不跟踪
+    private float roiPadding = 0.5f; // 感兴趣区域扩展比例
+    private boolean continuousScan = false; // 连续扫码
+    private DuplicateFilter duplicateFilter; // 重复结果过滤，连续扫码时使用
+    private final SharpnessFilter sharpnessFilter = new SharpnessFilter(0, SHARPNESS_STEP); // 清晰度过滤
+    private boolean sharpnessEnabled = false; // 是否使用清晰度过滤
+    private volatile ChangeFilter changeFilter; // 画面变化过滤，null表示不过滤
+    private boolean compactClip = false; // 是否在回调线程中复制裁剪区域，并且马上归还摄像头缓冲区
+    private boolean compactRotate = false; // 复制裁剪区域时是否旋转到显示方向
+    private volatile CodeLocator codeLocator; // 码定位，null表示不定位
+    private volatile FormatHistory formatHistory; // 自适应码制的码制历史，null表示不使用
+    private int discoveryInterval = 0; // 码制历史可信时，每隔多少帧尝试其他码制
+    private volatile List<CodeFormat> codeFormats; // 解码的码制，空表示所有码制，null表示使用解码器自己的配置
+    private volatile int fullPassInterval = 0; // 每隔多少帧使用所有码制完整解码
+    private volatile FramePipeline framePipeline; // 帧处理流水线，null表示只使用内置的解码
+    private int tileColumns = 1; // 分块解码的列数
+    private int tileRows = 1; // 分块解码的行数
+    private float tileOverlap = 0.25f; // 分块解码的重叠比例
+    private long decodeBudgetMillis = 0; // 每帧的解码时间，毫秒，0表示不限制
+    private boolean cancelOnNewFrame = false; // 所有帧都在解码中时，新帧是否取消最旧的解码
+    private long maxFrameAgeMillis = 0; // 帧的最大等待时间，毫秒，0表示不限制
+    private int burstSize = 1; // 连拍选优的帧数量，1表示不选优
+    private long burstWindowMillis = 0; // 凑齐连拍帧的最长等待时间，毫秒
+    private boolean frameStatsEnabled = false; // 是否计算帧统计数据
 
     private DrawerTEX maskDrawer; // 遮罩层绘制器
     private Bitmap maskBitmap; // 遮罩层位图
@@ -124,12 +194,17 @@ public class ScanHandler {
                 ContentMatrix maskMatrix = new ContentMatrix(contentRect, viewportRect);
                 maskMatrix.update(ContentMatrix.ScaleType.CENTER_CROP, 0, false);
                 maskDrawer = new DrawerTEX(maskMatrix, 0.9f);
-                if (null == camera) {
-                    // 打开相机
-                    camera = openCamera(cameraInfo);
-                    if (null != camera) {
-                        // 初始化相机
-                        initCamera();
+                if (null == camera && null == camera2) {
+                    if (cameraApi == CAMERA_API_2 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                        // 打开相机，打开成功后初始化
+                        camera2 = openCamera2(cameraInfo);
+                    } else {
+                        // 打开相机
+                        camera = openCamera(cameraInfo);
+                        if (null != camera) {
+                            // 初始化相机
+                            initCamera();
+                        }
                     }
                 }
             } else {
@@ -148,7 +223,7 @@ public class ScanHandler {
     public void setDisplayRotation(int displayRotation) {
         runAction(() -> {
             this.displayRotation = displayRotation;
-            if (null != camera && null != glSurfaceWindow) {
+            if ((null != camera || camera2Opened) && null != glSurfaceWindow) {
                 initCamera();
             }
         });
@@ -182,6 +257,7 @@ public class ScanHandler {
     public void setFrameDecoder(FrameDecoder frameDecoder) {
         runAction(() -> {
             this.frameDecoder = frameDecoder;
+            applyDecoderConfig(frameDecoder);
             // 同步到FrameHandler
             if (null != frameHandler) {
                 frameHandler.setDecoder(frameDecoder);
@@ -190,7 +266,361 @@ public class ScanHandler {
     }
 
     /**
-     * 继续解码下一帧；注意：在{@link Callback#onScanResult(ScanHandler, String)}触发后，将停止解码，需要再次调用此方法才能继续解码
+     * 设置预览缓冲区数量，大于0时复用预览缓冲区，避免每帧分配内存；摄像头重新初始化后生效
+     *
+     * @param count 缓冲区数量，0表示不使用缓冲区
+     */
+    public void setPreviewBufferCount(int count) {
+        runAction(() -> this.previewBufferCount = Math.max(0, count));
+    }
+
+    /**
+     * 设置帧解码器工厂，解码线程数量大于1时，每个解码线程使用工厂创建自己的解码器；摄像头重新初始化后生效
+     *
+     * @param factory 帧解码器工厂
+     */
+    public void setFrameDecoderFactory(FrameDecoder.Factory factory) {
+        runAction(() -> this.frameDecoderFactory = factory);
+    }
+
+    /**
+     * 设置并行解码，多个线程同时解码连续的帧，需要设置{@link #setFrameDecoderFactory(FrameDecoder.Factory)}；摄像头重新初始化后生效
+     *
+     * @param workerCount 解码线程数量
+     * @param maxInFlight 最多同时处理的帧数量（包括等待中和解码中），超出时丢弃最旧的等待帧；0表示与解码线程数量一致
+     */
+    public void setParallelDecode(int workerCount, int maxInFlight) {
+        runAction(() -> {
+            this.decodeWorkerCount = Math.max(1, workerCount);
+            this.maxInFlightFrames = Math.max(0, maxInFlight);
+        });
+    }
+
+    /**
+     * 设置分块解码，将较大的裁剪区域划分成相互重叠的块，在共享线程池中同时解码，详见{@link TileDecoder}；
+     * 需要设置{@link #setFrameDecoderFactory(FrameDecoder.Factory)}；摄像头重新初始化后生效
+     *
+     * @param columns 列数，列数与行数都为1时不分块
+     * @param rows    行数
+     * @param overlap 重叠比例，相对于块大小，比如0.25
+     */
+    public void setTiledDecode(int columns, int rows, float overlap) {
+        runAction(() -> {
+            this.tileColumns = Math.max(1, columns);
+            this.tileRows = Math.max(1, rows);
+            this.tileOverlap = overlap;
+        });
+    }
+
+    /**
+     * 设置解码预算，限制一帧的解码时间；解码器通过{@link com.mosect.lib.scanpanel.coder.DecodeBudget}协作式检查，
+     * 超时或者被取消后提前结束；裁剪区域改变时总是会取消解码中的帧
+     *
+     * @param budgetMillis     每帧的解码时间，毫秒，0表示不限制
+     * @param cancelOnNewFrame 所有帧都在解码中时，新帧是否取消最旧的解码，而不是丢弃新帧
+     */
+    public void setDecodeBudget(long budgetMillis, boolean cancelOnNewFrame) {
+        runAction(() -> {
+            this.decodeBudgetMillis = Math.max(0, budgetMillis);
+            this.cancelOnNewFrame = cancelOnNewFrame;
+            if (null != frameHandler) {
+                frameHandler.setDecodeBudget(decodeBudgetMillis);
+                frameHandler.setCancelOnNewFrame(cancelOnNewFrame);
+            }
+        });
+    }
+
+    /**
+     * 设置帧的最大等待时间，从采集时间开始计算，超过此值的帧在解码之前丢弃；解码线程总是优先解码最新的帧
+     *
+     * @param maxAgeMillis 最大等待时间，毫秒，0表示不限制
+     */
+    public void setMaxFrameAge(long maxAgeMillis) {
+        runAction(() -> {
+            this.maxFrameAgeMillis = Math.max(0, maxAgeMillis);
+            if (null != frameHandler) {
+                frameHandler.setMaxFrameAge(maxFrameAgeMillis);
+            }
+        });
+    }
+
+    /**
+     * 设置连拍选优，保留最近的若干帧，按清晰度评分，优先解码最清晰的帧，详见{@link FrameHandler#setBurstSelection(int, long, int)}；
+     * 摄像头重新初始化后生效
+     *
+     * @param size         连拍帧数量，1表示不选优，比如3
+     * @param windowMillis 凑齐连拍帧的最长等待时间，毫秒，比如100
+     */
+    public void setBurstSelection(int size, long windowMillis) {
+        runAction(() -> {
+            this.burstSize = Math.max(1, size);
+            this.burstWindowMillis = Math.max(0, windowMillis);
+        });
+    }
+
+    /**
+     * 获取等待太久而丢弃的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getStaleFrameCount() {
+        FrameHandler handler = frameHandler;
+        return null != handler ? handler.getStaleFrameCount() : 0;
+    }
+
+    /**
+     * 获取被取消或者超时的解码数量
+     *
+     * @return 数量
+     */
+    public long getAbortedDecodeCount() {
+        FrameHandler handler = frameHandler;
+        return null != handler ? handler.getCancelledCount() + handler.getExpiredCount() : 0;
+    }
+
+    /**
+     * 设置感兴趣区域跟踪，解码成功后下一帧只解码结果附近的区域，连续失败maxMisses次后恢复解码完整裁剪区域；
+     * 在连续解码时可以减少每帧需要处理的像素
+     *
+     * @param maxMisses 最多连续失败次数，0表示不跟踪
+     * @param padding   扩展比例，相对于结果范围的最大边，比如0.5
+     */
+    public void setRoiTracking(int maxMisses, float padding) {
+        runAction(() -> {
+            this.roiMaxMisses = Math.max(0, maxMisses);
+            this.roiPadding = Math.max(0, padding);
+            if (null != frameHandler) {
+                frameHandler.setRoiTracker(createRoiTracker());
+            }
+        });
+    }
+
+    /**
+     * 设置连续扫码，解码成功后不暂停，不需要调用{@link #next()}；有效期内相同内容的结果只回调一次
+     *
+     * @param continuous         true，连续扫码
+     * @param duplicateTtlMillis 重复结果有效期，毫秒，相同内容持续出现时从最后一次出现开始计算；0表示不过滤
+     */
+    public void setContinuousScan(boolean continuous, long duplicateTtlMillis) {
+        runAction(() -> {
+            this.continuousScan = continuous;
+            this.duplicateFilter = duplicateTtlMillis > 0 ?
+                    new DuplicateFilter(duplicateTtlMillis, DUPLICATE_CACHE_SIZE) : null;
+            if (null != frameHandler) {
+                frameHandler.setContinuous(continuousScan);
+                frameHandler.setDuplicateFilter(duplicateFilter);
+            }
+        });
+    }
+
+    /**
+     * 设置清晰度阈值，清晰度低于阈值的帧（比如移动中或者对焦中采集的帧）不会解码；
+     * 清晰度为解码区域间隔采样的拉普拉斯响应方差，详见{@link SharpnessFilter}
+     *
+     * @param threshold 清晰度阈值，比如100；小于等于0表示不过滤
+     */
+    public void setSharpnessThreshold(double threshold) {
+        runAction(() -> {
+            sharpnessFilter.setThreshold(threshold);
+            sharpnessEnabled = threshold > 0;
+            if (null != frameHandler) {
+                frameHandler.removeFrameFilter(sharpnessFilter);
+                if (sharpnessEnabled) {
+                    frameHandler.addFrameFilter(sharpnessFilter);
+                }
+            }
+        });
+    }
+
+    /**
+     * 设置是否计算帧统计数据（亮度平均值、直方图、对比度和清晰度），详见{@link FrameStats}；
+     * 统计数据保存在帧中，清晰度过滤、连拍选优使用相同的采样间隔，不会重复遍历像素
+     *
+     * @param enabled 是否计算
+     */
+    public void setFrameStats(boolean enabled) {
+        runAction(() -> {
+            this.frameStatsEnabled = enabled;
+            if (null != frameHandler) {
+                frameHandler.setFrameStats(enabled ? SHARPNESS_STEP : 0);
+            }
+        });
+    }
+
+    /**
+     * 获取最后一帧的统计数据，比如亮度平均值较低时打开闪光灯
+     *
+     * @param out 输出的统计数据
+     * @return true，成功；false，未开启或者还没有帧
+     */
+    public boolean getFrameStats(FrameStats out) {
+        FrameHandler handler = frameHandler;
+        return null != handler && handler.getLastStats(out);
+    }
+
+    /**
+     * 获取因为模糊而跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getSkippedBlurryFrameCount() {
+        return sharpnessFilter.getSkippedCount();
+    }
+
+    /**
+     * 设置画面变化检测，跳过与上一次解码失败的帧几乎相同的帧，画面持续不变时逐渐降低解码帧率，详见{@link ChangeFilter}
+     *
+     * @param enabled        是否检测
+     * @param tolerance      容差，画面平均亮度差值不超过此值时视为不变，比如4
+     * @param maxDelayMillis 画面不变时，两次接收帧之间的最大等待时间，毫秒
+     */
+    public void setChangeDetection(boolean enabled, int tolerance, long maxDelayMillis) {
+        runAction(() -> {
+            ChangeFilter old = changeFilter;
+            changeFilter = enabled ?
+                    new ChangeFilter(CHANGE_GRID_SIZE, tolerance, CHANGE_MIN_DELAY, maxDelayMillis) : null;
+            if (null != frameHandler) {
+                if (null != old) {
+                    frameHandler.removeFrameFilter(old);
+                }
+                if (null != changeFilter) {
+                    frameHandler.addFrameFilter(changeFilter);
+                }
+            }
+        });
+    }
+
+    /**
+     * 获取因为画面没有变化而跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getSkippedStaticFrameCount() {
+        ChangeFilter filter = changeFilter;
+        return null != filter ? filter.getSkippedCount() : 0;
+    }
+
+    /**
+     * 设置码定位，解码之前在降采样的图像中找出边缘密集的候选区域，只解码候选区域，
+     * 高分辨率预览下码只占裁剪区域一小部分时可以明显减少解码的数据量，详见{@link CodeLocator}
+     *
+     * @param enabled  是否定位
+     * @param cellSize 格子大小，像素，比如32；码越小，格子需要越小
+     * @param fallback 候选区域都解码失败时，是否解码整个裁剪区域
+     */
+    public void setCodeLocation(boolean enabled, int cellSize, boolean fallback) {
+        runAction(() -> {
+            codeLocator = enabled ?
+                    new CodeLocator(cellSize, LOCATOR_GRADIENT_THRESHOLD, LOCATOR_MAX_CANDIDATES, fallback) : null;
+            if (null != frameHandler) {
+                frameHandler.setCodeLocator(codeLocator);
+            }
+        });
+    }
+
+    /**
+     * 设置自适应码制：所有解码器共享一个码制历史，按历史中的出现次数调整尝试码制的顺序，
+     * 历史可信后只尝试出现过的码制；解码器需要实现{@link FormatConfigurable#setFormatHistory(FormatHistory, int)}，
+     * 解码线程的解码器在摄像头重新初始化后生效
+     *
+     * @param windowSize        统计最近多少次结果，0表示不使用自适应码制
+     * @param minHits           结果数量达到此值时视为可信
+     * @param discoveryInterval 历史可信时，每隔多少帧尝试其他码制，0表示不尝试
+     */
+    public void setAdaptiveFormats(int windowSize, int minHits, int discoveryInterval) {
+        runAction(() -> {
+            formatHistory = windowSize > 0 ? new FormatHistory(windowSize, minHits) : null;
+            this.discoveryInterval = Math.max(0, discoveryInterval);
+            applyDecoderConfig(frameDecoder);
+        });
+    }
+
+    /**
+     * 设置解码的码制：每一帧只快速解码这些码制，每隔fullPassInterval帧在快速解码失败后使用所有码制完整解码；
+     * 应用到实现{@link FormatConfigurable}的解码器，包括工厂创建的解码器，解码线程的解码器在摄像头重新初始化后生效
+     *
+     * @param formats          码制，null或者空表示所有码制
+     * @param fullPassInterval 每隔多少帧进行一次完整解码，0表示不进行完整解码
+     */
+    public void setCodeFormats(Collection<CodeFormat> formats, int fullPassInterval) {
+        List<CodeFormat> list = null == formats ? Collections.emptyList() :
+                Collections.unmodifiableList(new ArrayList<>(formats));
+        runAction(() -> {
+            codeFormats = list;
+            this.fullPassInterval = Math.max(0, fullPassInterval);
+            applyDecoderConfig(frameDecoder);
+        });
+    }
+
+    /**
+     * 获取自适应码制的码制历史，比如切换扫码场景时清空
+     *
+     * @return 码制历史，未使用自适应码制时返回null
+     */
+    public FormatHistory getFormatHistory() {
+        return formatHistory;
+    }
+
+    /**
+     * 获取码定位没有找到候选区域的帧数量，不使用fallback时这些帧不会解码
+     *
+     * @return 帧数量
+     */
+    public long getUnlocatedFrameCount() {
+        CodeLocator locator = codeLocator;
+        return null != locator ? locator.getEmptyCount() : 0;
+    }
+
+    /**
+     * 设置帧处理流水线，在帧过滤之后按顺序执行过滤、变换、解码和结果后处理阶段，并统计每个阶段的耗时，详见{@link FramePipeline}；
+     * 流水线中的解码阶段都没有结果时，使用帧解码器（以及码定位等）解码
+     *
+     * @param pipeline 流水线，null表示只使用帧解码器解码
+     */
+    public void setFramePipeline(FramePipeline pipeline) {
+        runAction(() -> {
+            framePipeline = pipeline;
+            if (null != frameHandler) {
+                frameHandler.setFramePipeline(pipeline);
+            }
+        });
+    }
+
+    /**
+     * 获取帧处理流水线，可以用于获取各个阶段的耗时
+     *
+     * @return 流水线
+     */
+    public FramePipeline getFramePipeline() {
+        return framePipeline;
+    }
+
+    /**
+     * 设置紧凑帧模式，在摄像头回调线程中只复制裁剪区域的亮度数据到复用的数组中，然后马上归还摄像头缓冲区；
+     * 解码线程处理的数据更少，摄像头也可以使用更少的缓冲区；摄像头重新初始化后生效
+     *
+     * @param compact 是否使用紧凑帧
+     * @param rotate  是否旋转到显示方向，竖屏时横向的一维码在帧中是竖向的，旋转后更容易解码
+     */
+    public void setCompactClip(boolean compact, boolean rotate) {
+        runAction(() -> {
+            this.compactClip = compact;
+            this.compactRotate = rotate;
+        });
+    }
+
+    /**
+     * 设置摄像头API，下次打开摄像头时生效
+     *
+     * @param cameraApi {@link #CAMERA_API_1}或者{@link #CAMERA_API_2}
+     */
+    public void setCameraApi(int cameraApi) {
+        runAction(() -> this.cameraApi = cameraApi);
+    }
+
+    /**
+     * 继续解码下一帧；注意：在{@link Callback#onScanDecodeResult(ScanHandler, DecodeResult)}触发后，将停止解码，需要再次调用此方法才能继续解码；
+     * 连续扫码时不需要调用
      */
     public void next() {
         runAction(() -> {
@@ -329,6 +759,8 @@ public class ScanHandler {
                 glContext.close();
                 glContext = null;
             }
+            // 解码线程已经结束，关闭辅助解码的线程池；已提交的任务会执行完
+            closeDecodeExecutor();
         }
         Log.d(TAG, "loop: end");
         onEnd();
@@ -360,10 +792,57 @@ public class ScanHandler {
         return null;
     }
 
+    /**
+     * 打开Camera2摄像头，摄像头打开后会初始化摄像头
+     *
+     * @param cameraInfo 输出摄像头信息
+     * @return 摄像头控制，返回null，表示打开摄像头失败
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private Camera2Controller openCamera2(Camera.CameraInfo cameraInfo) {
+        Callback callback = this.callback;
+        int id = -1;
+        if (null != callback) {
+            // 从callback中获取需要打开的摄像头，Camera2的摄像头id与Camera1一致
+            id = callback.onSwitchCamera(this);
+        }
+        if (id >= 0) {
+            Camera2Controller controller = new Camera2Controller(context, new Camera2Controller.Listener() {
+                @Override
+                public void onCameraOpened(Camera2Controller controller) {
+                    runAction(() -> {
+                        if (camera2 == controller && null != glSurfaceWindow) {
+                            camera2Opened = true;
+                            initCamera();
+                        }
+                    });
+                }
+
+                @Override
+                public void onCameraError(Camera2Controller controller, Exception exp) {
+                    runAction(() -> {
+                        if (camera2 == controller) {
+                            onError(exp);
+                        }
+                    });
+                }
+            });
+            if (controller.open(String.valueOf(id), cameraInfo)) {
+                return controller;
+            }
+            controller.close();
+        }
+        return null;
+    }
+
     /**
      * 初始化摄像头
      */
     protected void initCamera() {
+        if (null != camera2) {
+            initCamera2();
+            return;
+        }
         camera.stopPreview();
         if (null != glTextureWindow) {
             glTextureWindow.close();
@@ -384,6 +863,67 @@ public class ScanHandler {
         parameters.setPreviewSize(previewSize.getWidth(), previewSize.getHeight());
         camera.setParameters(parameters);
 
+        initPreview(previewSize, degrees);
+        decodeWidth = previewSize.getWidth();
+        decodeHeight = previewSize.getHeight();
+        FrameHandler frameHandler = createFrameHandler(degrees);
+
+        try {
+            // 设置预览纹理
+            camera.setPreviewTexture(glTextureWindow.getSurfaceTexture());
+            // 开始预览
+            camera.startPreview();
+            // 开始解码
+            frameHandler.start(camera);
+            frameHandler.requestNextFrame();
+            // 需要马上对焦
+            nextFocusTime = System.currentTimeMillis();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 初始化Camera2摄像头，预览输出到纹理窗口，解码帧通过{@link android.media.ImageReader}输出，大小可以与预览不同
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private void initCamera2() {
+        // 先停止会话，再释放旧的解码帧源
+        camera2.stopSession();
+        if (null != this.frameHandler) {
+            this.frameHandler.destroy();
+            this.frameHandler = null;
+        }
+        if (null != glTextureWindow) {
+            glTextureWindow.close();
+        }
+        int degrees = getCameraDisplayOrientation();
+        PreviewSize previewSize = switchPreviewSize(camera2.getPreviewSizes(degrees));
+        PreviewSize decodeSize = switchDecodeSize(camera2.getOutputSizes(ImageFormat.YUV_420_888, degrees), previewSize);
+        initPreview(previewSize, degrees);
+        decodeWidth = decodeSize.getWidth();
+        decodeHeight = decodeSize.getHeight();
+        FrameHandler frameHandler = createFrameHandler(degrees);
+
+        int maxImages = compactClip ? previewBufferCount :
+                Math.max(previewBufferCount, Math.max(maxInFlightFrames, decodeWorkerCount + burstSize - 1) + 1);
+        Camera2FrameSource source = new Camera2FrameSource(decodeWidth, decodeHeight, maxImages,
+                camera2.isRealtimeTimestamp(), camera2.getHandler());
+        frameHandler.start(source);
+        frameHandler.requestNextFrame();
+        camera2.startSession(glTextureWindow.getSurfaceTexture(), previewSize.getWidth(), previewSize.getHeight(),
+                source.getSurface());
+        // Camera2使用连续对焦
+        nextFocusTime = -1;
+    }
+
+    /**
+     * 创建纹理窗口和摄像头绘制器
+     *
+     * @param previewSize 预览大小
+     * @param degrees     角度
+     */
+    private void initPreview(PreviewSize previewSize, int degrees) {
         // 创建纹理窗口，用于接收摄像头预览图像
         glTextureWindow = new GLTextureWindow(previewSize.getWidth(), previewSize.getHeight(), false);
         glTextureWindow.init(glContext);
@@ -393,42 +933,141 @@ public class ScanHandler {
         cameraMatrix = new ContentMatrix(contentRect, viewportRect);
         cameraMatrix.update(ContentMatrix.ScaleType.CENTER_CROP, degrees, false);
         cameraDrawer = new DrawerOES(cameraMatrix, 0.5f);
+    }
 
-        // 创建帧处理
+    /**
+     * 获取辅助解码的线程池，第一次使用时创建
+     *
+     * @return 线程池，扫码结束后返回null
+     */
+    private ExecutorService getDecodeExecutor() {
+        synchronized (lock) {
+            if (null == decodeExecutor && !decodeExecutorClosed) {
+                int count = Math.max(2, Runtime.getRuntime().availableProcessors());
+                decodeExecutor = Executors.newFixedThreadPool(count, runnable -> {
+                    Thread thread = new Thread(runnable, "ScanHandler-Decode");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            return decodeExecutor;
+        }
+    }
+
+    private void closeDecodeExecutor() {
+        synchronized (lock) {
+            decodeExecutorClosed = true;
+            if (null != decodeExecutor) {
+                decodeExecutor.shutdown();
+                decodeExecutor = null;
+            }
+        }
+    }
+
+    /**
+     * 设置解码器的码制历史、码制以及辅助解码的线程池
+     *
+     * @param decoder 解码器，可以为null
+     */
+    private void applyDecoderConfig(FrameDecoder decoder) {
+        if (decoder instanceof ExecutorConfigurable) {
+            ((ExecutorConfigurable) decoder).setExecutor(getDecodeExecutor());
+        }
+        if (decoder instanceof FormatConfigurable) {
+            FormatConfigurable configurable = (FormatConfigurable) decoder;
+            configurable.setFormatHistory(formatHistory, discoveryInterval);
+            List<CodeFormat> formats = codeFormats;
+            if (null != formats) {
+                configurable.setCodeFormats(formats, fullPassInterval);
+            }
+        }
+    }
+
+    /**
+     * 创建帧处理，会销毁旧的帧处理
+     *
+     * @param degrees 画面旋转角度
+     * @return 帧处理
+     */
+    private FrameHandler createFrameHandler(int degrees) {
+        if (null != this.frameHandler) {
+            this.frameHandler.destroy();
+        }
         FrameHandler frameHandler = new FrameHandler();
         this.frameHandler = frameHandler;
+        frameHandler.setBufferCount(previewBufferCount);
+        FrameDecoder.Factory factory = null;
+        if (null != frameDecoderFactory) {
+            FrameDecoder.Factory source = frameDecoderFactory;
+            factory = () -> {
+                // 每个解码线程的解码器共享同一个码制历史和辅助解码的线程池，使用相同的码制
+                FrameDecoder decoder = source.createDecoder();
+                applyDecoderConfig(decoder);
+                return decoder;
+            };
+        }
+        if (tileColumns * tileRows > 1 && null != factory) {
+            // 分块解码器可以同时在多个解码线程中使用
+            TileDecoder tileDecoder = new TileDecoder(factory, tileColumns, tileRows, tileOverlap, TILE_MIN_SIZE);
+            frameHandler.setDecoderFactory(() -> tileDecoder);
+            frameHandler.setWorkerCount(decodeWorkerCount);
+        } else if (decodeWorkerCount > 1 && null != factory) {
+            frameHandler.setDecoderFactory(factory);
+            frameHandler.setWorkerCount(decodeWorkerCount);
+        }
+        frameHandler.setMaxInFlight(maxInFlightFrames);
+        frameHandler.setDecodeBudget(decodeBudgetMillis);
+        frameHandler.setCancelOnNewFrame(cancelOnNewFrame);
+        frameHandler.setMaxFrameAge(maxFrameAgeMillis);
+        frameHandler.setBurstSelection(burstSize, burstWindowMillis, SHARPNESS_STEP);
+        frameHandler.setFrameStats(frameStatsEnabled ? SHARPNESS_STEP : 0);
+        frameHandler.setCompactClip(compactClip, compactRotate ? degrees : 0);
+        frameHandler.setRoiTracker(createRoiTracker());
+        frameHandler.setCodeLocator(codeLocator);
+        frameHandler.setFramePipeline(framePipeline);
+        frameHandler.setContinuous(continuousScan);
+        frameHandler.setDuplicateFilter(duplicateFilter);
+        if (null != changeFilter) {
+            // 先检测画面变化，跳过的帧不需要计算清晰度
+            frameHandler.addFrameFilter(changeFilter);
+        }
+        if (sharpnessEnabled) {
+            frameHandler.addFrameFilter(sharpnessFilter);
+        }
         // 同步裁剪和解码器
         frameHandler.setClip(convertClipRect());
         frameHandler.setDecoder(frameDecoder);
         // 监听扫码回调
-        frameHandler.setCallback(text -> {
+        frameHandler.setCallback(result -> {
             // 扫码结果
             runAction(() -> {
-                if (!TextUtils.isEmpty(text)) {
-                    Callback callback = this.callback;
-                    if (null != callback) {
-                        callback.onScanResult(this, text);
-                    }
-                } else {
-                    // 没有解析到文本，继续解析下一帧
-                    frameHandler.requestNextFrame();
+                if (this.frameHandler != frameHandler) return;
+                if (result.getPointCount() > 0 && null != cameraMatrix) {
+                    // 结果点转换成视图坐标
+                    float[] points = new float[result.getPointCount() * 2];
+                    result.getPoints(points);
+                    convertFramePoints(points);
+                    result.setViewPoints(points);
+                }
+                Callback callback = this.callback;
+                if (null != callback) {
+                    callback.onScanDecodeResult(this, result);
                 }
             });
         });
+        return frameHandler;
+    }
 
-        try {
-            // 设置预览纹理
-            camera.setPreviewTexture(glTextureWindow.getSurfaceTexture());
-            // 开始预览
-            camera.startPreview();
-            // 开始解码
-            frameHandler.start(camera);
-            frameHandler.requestNextFrame();
-            // 需要马上对焦
-            nextFocusTime = System.currentTimeMillis();
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 创建感兴趣区域跟踪
+     *
+     * @return 感兴趣区域跟踪，不跟踪时返回null
+     */
+    private RoiTracker createRoiTracker() {
+        if (roiMaxMisses > 0) {
+            return new RoiTracker(roiPadding, ROI_MIN_SIZE, roiMaxMisses);
         }
+        return null;
     }
 
     /**
@@ -472,6 +1111,16 @@ public class ScanHandler {
         for (Camera.Size size : parameters.getSupportedPreviewSizes()) {
             previewSizes.add(new PreviewSize(size.width, size.height, degrees));
         }
+        return switchPreviewSize(previewSizes);
+    }
+
+    /**
+     * 从支持的大小中选择预览大小，默认返回最接近surface大小的预览大小
+     *
+     * @param previewSizes 支持的预览大小
+     * @return 预览大小
+     */
+    protected PreviewSize switchPreviewSize(List<PreviewSize> previewSizes) {
         Collections.sort(previewSizes, (o1, o2) -> {
             int h1 = Math.abs(o1.getRotateHeight() - glSurfaceWindow.getHeight());
             int h2 = Math.abs(o2.getRotateHeight() - glSurfaceWindow.getHeight());
@@ -486,6 +1135,28 @@ public class ScanHandler {
         return previewSizes.get(0);
     }
 
+    /**
+     * 选择Camera2解码帧大小，默认选择与预览宽高比一致、且不超过预览大小的最大尺寸；
+     * 复写此方法可以使用比预览更小的解码帧，降低解码开销
+     *
+     * @param sizes       支持的解码帧大小
+     * @param previewSize 预览大小
+     * @return 解码帧大小
+     */
+    protected PreviewSize switchDecodeSize(List<PreviewSize> sizes, PreviewSize previewSize) {
+        float ratio = (float) previewSize.getWidth() / previewSize.getHeight();
+        PreviewSize result = null;
+        for (PreviewSize size : sizes) {
+            float sizeRatio = (float) size.getWidth() / size.getHeight();
+            if (Math.abs(sizeRatio - ratio) > 0.01f) continue;
+            if (size.getWidth() > previewSize.getWidth() || size.getHeight() > previewSize.getHeight()) continue;
+            if (null == result || size.getWidth() > result.getWidth()) {
+                result = size;
+            }
+        }
+        return null == result ? previewSize : result;
+    }
+
     /**
      * 转换裁剪区域，因为可能会发生旋转，所以不能直接使用设定的裁剪，无特殊需求，不要复写此方法
      *
@@ -505,6 +1176,17 @@ public class ScanHandler {
                 temp.left = left;
                 temp.right = right;
             }
+            float contentWidth = cameraMatrix.getContentRect().width();
+            float contentHeight = cameraMatrix.getContentRect().height();
+            if (decodeWidth > 0 && decodeHeight > 0 && (decodeWidth != contentWidth || decodeHeight != contentHeight)) {
+                // 解码帧大小与预览不同，需要缩放到解码帧坐标
+                float sx = decodeWidth / contentWidth;
+                float sy = decodeHeight / contentHeight;
+                temp.left *= sx;
+                temp.right *= sx;
+                temp.top *= sy;
+                temp.bottom *= sy;
+            }
             Rect result = new Rect();
             result.left = (int) temp.left;
             result.top = (int) temp.top;
@@ -515,21 +1197,56 @@ public class ScanHandler {
         return null;
     }
 
+    /**
+     * 将解码帧上的点转换成视图上的点，{@link #convertClipRect()}的逆转换，无特殊需求，不要复写此方法
+     *
+     * @param points 点列表：x1,y1,x2,y2 ... xN,yN，转换后的点也会写入此数组
+     */
+    protected void convertFramePoints(float[] points) {
+        float contentWidth = cameraMatrix.getContentRect().width();
+        float contentHeight = cameraMatrix.getContentRect().height();
+        float sx = 1f, sy = 1f;
+        if (decodeWidth > 0 && decodeHeight > 0) {
+            // 解码帧大小与预览不同，需要缩放到预览坐标
+            sx = contentWidth / decodeWidth;
+            sy = contentHeight / decodeHeight;
+        }
+        for (int i = 0; i < points.length; i += 2) {
+            float x = points[i] * sx;
+            if (cameraInfo.facing == Camera.CameraInfo.CAMERA_FACING_FRONT) {
+                // 注意：前置摄像头需要翻转水平方向
+                x = contentWidth - x;
+            }
+            points[i] = x;
+            points[i + 1] = points[i + 1] * sy;
+        }
+        cameraMatrix.contentToViewport2D(points, points);
+    }
+
     /**
      * 关闭摄像头，只要是释放摄像头相关资源
      */
     protected void closeCamera() {
+        if (null != camera2) {
+            // 先停止会话，再释放预览纹理和解码帧源
+            camera2.stopSession();
+        }
         if (null != glTextureWindow) {
             glTextureWindow.close();
             glTextureWindow = null;
         }
+        if (null != frameHandler) {
+            frameHandler.destroy();
+            frameHandler = null;
+        }
         if (null != camera) {
             camera.release();
             camera = null;
         }
-        if (null != frameHandler) {
-            frameHandler.destroy();
-            frameHandler = null;
+        if (null != camera2) {
+            camera2.close();
+            camera2 = null;
+            camera2Opened = false;
         }
         cameraDrawer = null;
         cameraMatrix = null;
@@ -788,6 +1505,16 @@ public class ScanHandler {
          */
         void onScanResult(ScanHandler handler, String result);
 
+        /**
+         * 扫码结果，包含码制、结果点（帧坐标和视图坐标）以及耗时；默认调用{@link #onScanResult(ScanHandler, String)}
+         *
+         * @param handler 扫码处理对象
+         * @param result  结果，可以持有此对象
+         */
+        default void onScanDecodeResult(ScanHandler handler, DecodeResult result) {
+            onScanResult(handler, result.getText());
+        }
+
         /**
          * 扫码结束
          *
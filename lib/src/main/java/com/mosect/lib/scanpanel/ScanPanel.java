@@ -15,9 +15,17 @@ import android.view.TextureView;
 import android.view.View;
 import android.view.ViewGroup;
 
+import com.mosect.lib.scanpanel.coder.CodeFormat;
+import com.mosect.lib.scanpanel.coder.DecodeResult;
+import com.mosect.lib.scanpanel.coder.FormatHistory;
 import com.mosect.lib.scanpanel.coder.FrameDecoder;
+import com.mosect.lib.scanpanel.coder.FramePipeline;
+import com.mosect.lib.scanpanel.coder.FrameStats;
 
 import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 /**
  * 扫码面板
@@ -28,13 +36,16 @@ import java.lang.reflect.Constructor;
  * android:layout_height="match_parent"
  * app:scanAutostart="true"
  * app:scanDecoder="你的解码器类路径"
- * app:scanUseTextureView="false" /&rt;
+ * app:scanUseTextureView="false"
+ * app:scanCameraApi="camera1" /&rt;
  * <p>
  * scanAutostart：是否自动开始，默认false；true，试图依附到父视图中就开始处理扫码；false，需要手动调用{@link #start()}和{@link #destroy()}
  * <p>
  * scanDecoder：帧解码类路径，支持无参构造方法和带有一个{@link Context}参数的构造方法
  * <p>
  * scanUseTextureView：是否使用TextureView显示，默认false，使用SurfaceView；
+ * <p>
+ * scanCameraApi：摄像头API，camera1或者camera2，默认camera1；camera2需要Android 5.0及以上
  */
 public class ScanPanel extends ViewGroup {
 
@@ -43,6 +54,39 @@ public class ScanPanel extends ViewGroup {
     private boolean useTextureView = false; // 是否使用TextureView
     private int displayRotation = 0; // 显示方向
     private FrameDecoder frameDecoder = null; // 帧解码器
+    private int previewBufferCount = 0; // 预览缓冲区数量
+    private int cameraApi = ScanHandler.CAMERA_API_1; // 摄像头API
+    private FrameDecoder.Factory frameDecoderFactory = null; // 帧解码器工厂
+    private int decodeWorkerCount = 1; // 解码线程数量
+    private int maxInFlightFrames = 0; // 最多同时处理的帧数量
+    private int tileColumns = 1; // 分块解码的列数
+    private int tileRows = 1; // 分块解码的行数
+    private float tileOverlap = 0.25f; // 分块解码的重叠比例
+    private long decodeBudgetMillis = 0; // 每帧的解码时间，毫秒
+    private boolean cancelOnNewFrame = false; // 新帧是否取消最旧的解码
+    private long maxFrameAgeMillis = 0; // 帧的最大等待时间，毫秒
+    private int burstSize = 1; // 连拍选优的帧数量
+    private long burstWindowMillis = 0; // 凑齐连拍帧的最长等待时间，毫秒
+    private int roiMaxMisses = 0; // 感兴趣区域跟踪最多连续失败次数，0表示不跟踪
+    private float roiPadding = 0.5f; // 感兴趣区域扩展比例
+    private boolean continuousScan = false; // 连续扫码
+    private long duplicateTtlMillis = 0; // 重复结果有效期，毫秒
+    private double sharpnessThreshold = 0; // 清晰度阈值，0表示不过滤
+    private boolean frameStats = false; // 是否计算帧统计数据
+    private boolean changeDetection = false; // 画面变化检测
+    private int changeTolerance = 4; // 画面变化容差
+    private long changeMaxDelayMillis = 500; // 画面不变时的最大等待时间，毫秒
+    private boolean compactClip = false; // 紧凑帧模式
+    private boolean compactRotate = false; // 紧凑帧是否旋转到显示方向
+    private boolean codeLocation = false; // 码定位
+    private int locatorCellSize = 32; // 码定位格子大小，像素
+    private boolean locatorFallback = true; // 候选区域都解码失败时是否解码整个裁剪区域
+    private FramePipeline framePipeline; // 帧处理流水线
+    private int adaptiveWindowSize = 0; // 自适应码制统计的结果数量，0表示不使用
+    private int adaptiveMinHits = 1; // 自适应码制可信的结果数量
+    private int discoveryInterval = 0; // 自适应码制可信时尝试其他码制的间隔帧数
+    private List<CodeFormat> codeFormats; // 解码的码制，空表示所有码制，null表示使用解码器自己的配置
+    private int fullPassInterval = 0; // 完整解码的间隔帧数
 
     private ScanHandler scanHandler; // 扫码处理对象
     private final Rect clipRect = new Rect(); // 裁剪区域
@@ -73,18 +117,31 @@ public class ScanPanel extends ViewGroup {
         TypedArray ta = context.obtainStyledAttributes(attrs, R.styleable.ScanPanel);
         autostart = ta.getBoolean(R.styleable.ScanPanel_scanAutostart, false);
         useTextureView = ta.getBoolean(R.styleable.ScanPanel_scanUseTextureView, false);
+        cameraApi = ta.getInt(R.styleable.ScanPanel_scanCameraApi, ScanHandler.CAMERA_API_1);
         String decoderText = ta.getString(R.styleable.ScanPanel_scanDecoder);
         // 加载设定的帧解码器
         if (!TextUtils.isEmpty(decoderText)) {
             try {
                 Class<?> cls = Class.forName(decoderText);
+                Constructor<?> constructor;
+                Object[] args;
                 try {
-                    Constructor<?> def = cls.getConstructor();
-                    frameDecoder = (FrameDecoder) def.newInstance();
+                    constructor = cls.getConstructor();
+                    args = new Object[0];
                 } catch (NoSuchMethodException e) {
-                    Constructor<?> c = cls.getConstructor(Context.class);
-                    frameDecoder = (FrameDecoder) c.newInstance(context);
+                    constructor = cls.getConstructor(Context.class);
+                    args = new Object[]{context};
                 }
+                Constructor<?> decoderConstructor = constructor;
+                // 使用工厂创建解码器，并行解码时每个解码线程都会创建自己的解码器
+                frameDecoderFactory = () -> {
+                    try {
+                        return (FrameDecoder) decoderConstructor.newInstance(args);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                };
+                frameDecoder = frameDecoderFactory.createDecoder();
             } catch (Exception e) {
                 throw new RuntimeException(e);
             }
@@ -155,6 +212,27 @@ public class ScanPanel extends ViewGroup {
     public void start() {
         if (null == scanHandler) {
             scanHandler = new ScanHandler(getContext());
+            // 摄像头相关配置需要在设置surface之前，设置surface后会打开摄像头
+            scanHandler.setCameraApi(cameraApi);
+            scanHandler.setPreviewBufferCount(previewBufferCount);
+            scanHandler.setFrameDecoderFactory(frameDecoderFactory);
+            scanHandler.setParallelDecode(decodeWorkerCount, maxInFlightFrames);
+            scanHandler.setTiledDecode(tileColumns, tileRows, tileOverlap);
+            scanHandler.setDecodeBudget(decodeBudgetMillis, cancelOnNewFrame);
+            scanHandler.setMaxFrameAge(maxFrameAgeMillis);
+            scanHandler.setBurstSelection(burstSize, burstWindowMillis);
+            scanHandler.setRoiTracking(roiMaxMisses, roiPadding);
+            scanHandler.setContinuousScan(continuousScan, duplicateTtlMillis);
+            scanHandler.setSharpnessThreshold(sharpnessThreshold);
+            scanHandler.setFrameStats(frameStats);
+            scanHandler.setChangeDetection(changeDetection, changeTolerance, changeMaxDelayMillis);
+            scanHandler.setCompactClip(compactClip, compactRotate);
+            scanHandler.setCodeLocation(codeLocation, locatorCellSize, locatorFallback);
+            scanHandler.setAdaptiveFormats(adaptiveWindowSize, adaptiveMinHits, discoveryInterval);
+            if (null != codeFormats) {
+                scanHandler.setCodeFormats(codeFormats, fullPassInterval);
+            }
+            scanHandler.setFramePipeline(framePipeline);
             scanHandler.setSurface(surface, surfaceWidth, surfaceHeight);
             scanHandler.setClip(clipRect);
             scanHandler.setDisplayRotation(displayRotation);
@@ -205,6 +283,15 @@ public class ScanPanel extends ViewGroup {
                     });
                 }
 
+                @Override
+                public void onScanDecodeResult(ScanHandler handler, DecodeResult result) {
+                    post(() -> {
+                        if (null != callback) {
+                            callback.onScanDecodeResult(ScanPanel.this, result);
+                        }
+                    });
+                }
+
                 @Override
                 public void onScanEnd(ScanHandler handler) {
                     post(() -> {
@@ -219,7 +306,7 @@ public class ScanPanel extends ViewGroup {
     }
 
     /**
-     * 继续解码下一帧
+     * 继续解码下一帧，连续扫码时不需要调用
      */
     public void next() {
         if (null != scanHandler) {
@@ -272,6 +359,351 @@ public class ScanPanel extends ViewGroup {
         }
     }
 
+    /**
+     * 设置帧解码器工厂，{@link ScanHandler#setFrameDecoderFactory(FrameDecoder.Factory)}；
+     * 通过scanDecoder属性指定解码器时，会自动创建工厂
+     *
+     * @param factory 帧解码器工厂
+     */
+    public void setFrameDecoderFactory(FrameDecoder.Factory factory) {
+        frameDecoderFactory = factory;
+        if (null != scanHandler) {
+            scanHandler.setFrameDecoderFactory(factory);
+        }
+    }
+
+    /**
+     * 设置并行解码，{@link ScanHandler#setParallelDecode(int, int)}，需要在{@link #start()}之前设置
+     *
+     * @param workerCount 解码线程数量
+     * @param maxInFlight 最多同时处理的帧数量，0表示与解码线程数量一致
+     */
+    public void setParallelDecode(int workerCount, int maxInFlight) {
+        decodeWorkerCount = Math.max(1, workerCount);
+        maxInFlightFrames = Math.max(0, maxInFlight);
+        if (null != scanHandler) {
+            scanHandler.setParallelDecode(decodeWorkerCount, maxInFlightFrames);
+        }
+    }
+
+    /**
+     * 设置分块解码，{@link ScanHandler#setTiledDecode(int, int, float)}，需要在{@link #start()}之前设置
+     *
+     * @param columns 列数，列数与行数都为1时不分块
+     * @param rows    行数
+     * @param overlap 重叠比例，相对于块大小
+     */
+    public void setTiledDecode(int columns, int rows, float overlap) {
+        tileColumns = Math.max(1, columns);
+        tileRows = Math.max(1, rows);
+        tileOverlap = overlap;
+        if (null != scanHandler) {
+            scanHandler.setTiledDecode(tileColumns, tileRows, tileOverlap);
+        }
+    }
+
+    /**
+     * 设置解码预算，{@link ScanHandler#setDecodeBudget(long, boolean)}
+     *
+     * @param budgetMillis     每帧的解码时间，毫秒，0表示不限制
+     * @param cancelOnNewFrame 所有帧都在解码中时，新帧是否取消最旧的解码
+     */
+    public void setDecodeBudget(long budgetMillis, boolean cancelOnNewFrame) {
+        decodeBudgetMillis = Math.max(0, budgetMillis);
+        this.cancelOnNewFrame = cancelOnNewFrame;
+        if (null != scanHandler) {
+            scanHandler.setDecodeBudget(decodeBudgetMillis, cancelOnNewFrame);
+        }
+    }
+
+    /**
+     * 设置帧的最大等待时间，{@link ScanHandler#setMaxFrameAge(long)}
+     *
+     * @param maxAgeMillis 最大等待时间，毫秒，0表示不限制
+     */
+    public void setMaxFrameAge(long maxAgeMillis) {
+        maxFrameAgeMillis = Math.max(0, maxAgeMillis);
+        if (null != scanHandler) {
+            scanHandler.setMaxFrameAge(maxFrameAgeMillis);
+        }
+    }
+
+    /**
+     * 设置连拍选优，{@link ScanHandler#setBurstSelection(int, long)}
+     *
+     * @param size         连拍帧数量，1表示不选优
+     * @param windowMillis 凑齐连拍帧的最长等待时间，毫秒
+     */
+    public void setBurstSelection(int size, long windowMillis) {
+        burstSize = Math.max(1, size);
+        burstWindowMillis = Math.max(0, windowMillis);
+        if (null != scanHandler) {
+            scanHandler.setBurstSelection(burstSize, burstWindowMillis);
+        }
+    }
+
+    /**
+     * 获取等待太久而丢弃的帧数量，{@link ScanHandler#getStaleFrameCount()}
+     *
+     * @return 帧数量
+     */
+    public long getStaleFrameCount() {
+        if (null != scanHandler) {
+            return scanHandler.getStaleFrameCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 获取被取消或者超时的解码数量，{@link ScanHandler#getAbortedDecodeCount()}
+     *
+     * @return 数量
+     */
+    public long getAbortedDecodeCount() {
+        if (null != scanHandler) {
+            return scanHandler.getAbortedDecodeCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 设置感兴趣区域跟踪，{@link ScanHandler#setRoiTracking(int, float)}
+     *
+     * @param maxMisses 最多连续失败次数，0表示不跟踪
+     * @param padding   扩展比例，相对于结果范围的最大边
+     */
+    public void setRoiTracking(int maxMisses, float padding) {
+        roiMaxMisses = Math.max(0, maxMisses);
+        roiPadding = Math.max(0, padding);
+        if (null != scanHandler) {
+            scanHandler.setRoiTracking(roiMaxMisses, roiPadding);
+        }
+    }
+
+    /**
+     * 设置连续扫码，{@link ScanHandler#setContinuousScan(boolean, long)}
+     *
+     * @param continuous         true，连续扫码
+     * @param duplicateTtlMillis 重复结果有效期，毫秒；0表示不过滤
+     */
+    public void setContinuousScan(boolean continuous, long duplicateTtlMillis) {
+        continuousScan = continuous;
+        this.duplicateTtlMillis = Math.max(0, duplicateTtlMillis);
+        if (null != scanHandler) {
+            scanHandler.setContinuousScan(continuousScan, this.duplicateTtlMillis);
+        }
+    }
+
+    /**
+     * 设置清晰度阈值，{@link ScanHandler#setSharpnessThreshold(double)}
+     *
+     * @param threshold 清晰度阈值，小于等于0表示不过滤
+     */
+    public void setSharpnessThreshold(double threshold) {
+        sharpnessThreshold = threshold;
+        if (null != scanHandler) {
+            scanHandler.setSharpnessThreshold(threshold);
+        }
+    }
+
+    /**
+     * 设置是否计算帧统计数据，{@link ScanHandler#setFrameStats(boolean)}
+     *
+     * @param enabled 是否计算
+     */
+    public void setFrameStats(boolean enabled) {
+        frameStats = enabled;
+        if (null != scanHandler) {
+            scanHandler.setFrameStats(enabled);
+        }
+    }
+
+    /**
+     * 获取最后一帧的统计数据，{@link ScanHandler#getFrameStats(FrameStats)}
+     *
+     * @param out 输出的统计数据
+     * @return true，成功；false，未开启或者还没有帧
+     */
+    public boolean getFrameStats(FrameStats out) {
+        if (null != scanHandler) {
+            return scanHandler.getFrameStats(out);
+        }
+        return false;
+    }
+
+    /**
+     * 获取因为模糊而跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getSkippedBlurryFrameCount() {
+        if (null != scanHandler) {
+            return scanHandler.getSkippedBlurryFrameCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 设置画面变化检测，{@link ScanHandler#setChangeDetection(boolean, int, long)}
+     *
+     * @param enabled        是否检测
+     * @param tolerance      容差，画面平均亮度差值不超过此值时视为不变
+     * @param maxDelayMillis 画面不变时的最大等待时间，毫秒
+     */
+    public void setChangeDetection(boolean enabled, int tolerance, long maxDelayMillis) {
+        changeDetection = enabled;
+        changeTolerance = tolerance;
+        changeMaxDelayMillis = maxDelayMillis;
+        if (null != scanHandler) {
+            scanHandler.setChangeDetection(enabled, tolerance, maxDelayMillis);
+        }
+    }
+
+    /**
+     * 获取因为画面没有变化而跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getSkippedStaticFrameCount() {
+        if (null != scanHandler) {
+            return scanHandler.getSkippedStaticFrameCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 设置码定位，{@link ScanHandler#setCodeLocation(boolean, int, boolean)}
+     *
+     * @param enabled  是否定位
+     * @param cellSize 格子大小，像素
+     * @param fallback 候选区域都解码失败时，是否解码整个裁剪区域
+     */
+    public void setCodeLocation(boolean enabled, int cellSize, boolean fallback) {
+        codeLocation = enabled;
+        locatorCellSize = cellSize;
+        locatorFallback = fallback;
+        if (null != scanHandler) {
+            scanHandler.setCodeLocation(enabled, cellSize, fallback);
+        }
+    }
+
+    /**
+     * 获取码定位没有找到候选区域的帧数量，{@link ScanHandler#getUnlocatedFrameCount()}
+     *
+     * @return 帧数量
+     */
+    public long getUnlocatedFrameCount() {
+        if (null != scanHandler) {
+            return scanHandler.getUnlocatedFrameCount();
+        }
+        return 0;
+    }
+
+    /**
+     * 设置自适应码制，{@link ScanHandler#setAdaptiveFormats(int, int, int)}
+     *
+     * @param windowSize        统计最近多少次结果，0表示不使用自适应码制
+     * @param minHits           结果数量达到此值时视为可信
+     * @param discoveryInterval 历史可信时，每隔多少帧尝试其他码制，0表示不尝试
+     */
+    public void setAdaptiveFormats(int windowSize, int minHits, int discoveryInterval) {
+        adaptiveWindowSize = windowSize;
+        adaptiveMinHits = minHits;
+        this.discoveryInterval = discoveryInterval;
+        if (null != scanHandler) {
+            scanHandler.setAdaptiveFormats(windowSize, minHits, discoveryInterval);
+        }
+    }
+
+    /**
+     * 设置解码的码制，{@link ScanHandler#setCodeFormats(Collection, int)}
+     *
+     * @param formats          码制，null或者空表示所有码制
+     * @param fullPassInterval 每隔多少帧进行一次完整解码，0表示不进行完整解码
+     */
+    public void setCodeFormats(Collection<CodeFormat> formats, int fullPassInterval) {
+        codeFormats = null == formats ? new ArrayList<>() : new ArrayList<>(formats);
+        this.fullPassInterval = fullPassInterval;
+        if (null != scanHandler) {
+            scanHandler.setCodeFormats(codeFormats, fullPassInterval);
+        }
+    }
+
+    /**
+     * 获取自适应码制的码制历史，{@link ScanHandler#getFormatHistory()}
+     *
+     * @return 码制历史，未使用自适应码制或者未开始时返回null
+     */
+    public FormatHistory getFormatHistory() {
+        if (null != scanHandler) {
+            return scanHandler.getFormatHistory();
+        }
+        return null;
+    }
+
+    /**
+     * 设置帧处理流水线，{@link ScanHandler#setFramePipeline(FramePipeline)}
+     *
+     * @param pipeline 流水线，null表示只使用帧解码器解码
+     */
+    public void setFramePipeline(FramePipeline pipeline) {
+        framePipeline = pipeline;
+        if (null != scanHandler) {
+            scanHandler.setFramePipeline(pipeline);
+        }
+    }
+
+    public FramePipeline getFramePipeline() {
+        return framePipeline;
+    }
+
+    /**
+     * 设置紧凑帧模式，{@link ScanHandler#setCompactClip(boolean, boolean)}，需要在{@link #start()}之前设置
+     *
+     * @param compact 是否使用紧凑帧
+     * @param rotate  是否旋转到显示方向
+     */
+    public void setCompactClip(boolean compact, boolean rotate) {
+        compactClip = compact;
+        compactRotate = rotate;
+        if (null != scanHandler) {
+            scanHandler.setCompactClip(compact, rotate);
+        }
+    }
+
+    /**
+     * 设置摄像头API，{@link ScanHandler#setCameraApi(int)}，需要在{@link #start()}之前设置
+     *
+     * @param cameraApi {@link ScanHandler#CAMERA_API_1}或者{@link ScanHandler#CAMERA_API_2}
+     */
+    public void setCameraApi(int cameraApi) {
+        this.cameraApi = cameraApi;
+        if (null != scanHandler) {
+            scanHandler.setCameraApi(cameraApi);
+        }
+    }
+
+    /**
+     * 获取摄像头API
+     *
+     * @return 摄像头API
+     */
+    public int getCameraApi() {
+        return cameraApi;
+    }
+
+    /**
+     * 设置预览缓冲区数量，{@link ScanHandler#setPreviewBufferCount(int)}，需要在{@link #start()}之前设置
+     *
+     * @param count 缓冲区数量，0表示不使用缓冲区
+     */
+    public void setPreviewBufferCount(int count) {
+        previewBufferCount = Math.max(0, count);
+        if (null != scanHandler) {
+            scanHandler.setPreviewBufferCount(previewBufferCount);
+        }
+    }
+
     /**
      * 计算裁剪区域，如果{@link Callback#onComputeClip(ScanPanel, int, int, Rect)}返回false，则触发此方法
      *
@@ -493,6 +925,16 @@ public class ScanPanel extends ViewGroup {
          */
         void onScanResult(ScanPanel panel, String result);
 
+        /**
+         * 扫码成功，包含码制、结果点（帧坐标和视图坐标）以及耗时；默认调用{@link #onScanResult(ScanPanel, String)}
+         *
+         * @param panel  扫码面板
+         * @param result 扫码结果
+         */
+        default void onScanDecodeResult(ScanPanel panel, DecodeResult result) {
+            onScanResult(panel, result.getText());
+        }
+
         /**
          * 计算裁剪区域，即扫码区域
          *
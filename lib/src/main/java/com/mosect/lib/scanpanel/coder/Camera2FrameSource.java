@@ -0,0 +1,146 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.annotation.TargetApi;
+import android.graphics.ImageFormat;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Surface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 使用{@link ImageReader}作为帧源，输出{@link ImageFormat#YUV_420_888}格式的平面帧，不会转换成NV21；
+ * 需要将{@link #getSurface()}添加到Camera2的会话中
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public class Camera2FrameSource implements FrameSource {
+
+    private static final String TAG = "Camera2FrameSource";
+
+    private final byte[] lock = new byte[0];
+    private final ImageReader imageReader;
+    private final Handler handler;
+    private final boolean realtimeTimestamp; // 图像时间戳是否使用SystemClock.elapsedRealtimeNanos()时钟
+    private int state = 0; // 状态：0，未开始；1，运行中；2，已停止
+    private Callback callback;
+    private final List<Frame> framePool = new ArrayList<>(); // 帧对象池
+
+    /**
+     * 创建Camera2帧源
+     *
+     * @param width             帧宽度，可以与预览大小不同
+     * @param height            帧高度
+     * @param maxImages         最多同时持有的图像数量
+     * @param realtimeTimestamp 图像时间戳是否使用{@link SystemClock#elapsedRealtimeNanos()}时钟，
+     *                          即CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE为REALTIME
+     * @param handler           回调线程
+     */
+    public Camera2FrameSource(int width, int height, int maxImages, boolean realtimeTimestamp, Handler handler) {
+        this.imageReader = ImageReader.newInstance(width, height, ImageFormat.YUV_420_888, Math.max(2, maxImages));
+        this.realtimeTimestamp = realtimeTimestamp;
+        this.handler = handler;
+    }
+
+    @Override
+    public void start(Callback callback) {
+        synchronized (lock) {
+            if (state == 0) {
+                state = 1;
+                this.callback = callback;
+                imageReader.setOnImageAvailableListener(this::onImageAvailable, handler);
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            if (state != 2) {
+                state = 2;
+                callback = null;
+                framePool.clear();
+                imageReader.setOnImageAvailableListener(null, null);
+                imageReader.close();
+            }
+        }
+    }
+
+    @Override
+    public void requestFrame() {
+        // 摄像头会话持续输出帧，不需要处理请求
+    }
+
+    @Override
+    public void releaseFrame(Frame frame) {
+        synchronized (lock) {
+            Image image = (Image) frame.getTag();
+            frame.clear();
+            if (state == 1) {
+                image.close();
+                framePool.add(frame);
+            }
+        }
+    }
+
+    private void onImageAvailable(ImageReader reader) {
+        Callback callback;
+        Frame frame;
+        synchronized (lock) {
+            if (state != 1) return;
+            Image image;
+            try {
+                image = reader.acquireLatestImage();
+            } catch (IllegalStateException e) {
+                // 持有的图像数量已达到上限，等待归还
+                Log.w(TAG, "onImageAvailable: maxImages", e);
+                return;
+            }
+            if (null == image) return;
+            callback = this.callback;
+            if (framePool.isEmpty()) {
+                frame = new Frame();
+            } else {
+                frame = framePool.remove(framePool.size() - 1);
+            }
+            long timestamp = image.getTimestamp();
+            if (realtimeTimestamp) {
+                // 转换成System.nanoTime()时钟
+                timestamp += System.nanoTime() - SystemClock.elapsedRealtimeNanos();
+            }
+            Image.Plane plane = image.getPlanes()[0];
+            frame.setPlane(ImageFormat.YUV_420_888, plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                    image.getWidth(), image.getHeight(), timestamp);
+            frame.setTag(image);
+        }
+        callback.onFrameAvailable(this, frame);
+    }
+
+    /**
+     * 获取输出帧的surface，需要添加到Camera2的会话中
+     *
+     * @return surface
+     */
+    public Surface getSurface() {
+        return imageReader.getSurface();
+    }
+
+    @Override
+    public int getFormat() {
+        return ImageFormat.YUV_420_888;
+    }
+
+    @Override
+    public int getWidth() {
+        return imageReader.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return imageReader.getHeight();
+    }
+}
@@ -0,0 +1,132 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.ImageFormat;
+import android.hardware.Camera;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 使用{@link Camera}作为帧源
+ */
+public class CameraFrameSource implements FrameSource {
+
+    private final byte[] lock = new byte[0];
+    private final Camera camera;
+    private final int bufferCount; // 预览缓冲区数量，0表示不使用缓冲区
+    private int state = 0; // 状态：0，未开始；1，运行中；2，已停止
+    private int width;
+    private int height;
+    private int format;
+    private Callback callback;
+    private final List<Frame> framePool = new ArrayList<>(); // 帧对象池
+
+    /**
+     * 创建摄像头帧源
+     *
+     * @param camera      摄像头
+     * @param bufferCount 预览缓冲区数量；大于0时使用{@link Camera#setPreviewCallbackWithBuffer(Camera.PreviewCallback)}
+     *                    持续输出帧并复用缓冲区，稳定状态下每帧不再分配内存；
+     *                    0表示每次请求时使用{@link Camera#setOneShotPreviewCallback(Camera.PreviewCallback)}输出一帧
+     */
+    public CameraFrameSource(Camera camera, int bufferCount) {
+        this.camera = camera;
+        this.bufferCount = Math.max(0, bufferCount);
+    }
+
+    @Override
+    public void start(Callback callback) {
+        synchronized (lock) {
+            if (state == 0) {
+                state = 1;
+                this.callback = callback;
+                Camera.Parameters parameters = camera.getParameters();
+                Camera.Size size = parameters.getPreviewSize();
+                width = size.width;
+                height = size.height;
+                format = parameters.getPreviewFormat();
+                if (bufferCount > 0) {
+                    // 预先分配缓冲区，帧归还后交给摄像头重复使用
+                    int bufferSize = width * height * ImageFormat.getBitsPerPixel(format) / 8;
+                    for (int i = 0; i < bufferCount; i++) {
+                        camera.addCallbackBuffer(new byte[bufferSize]);
+                        framePool.add(new Frame());
+                    }
+                    camera.setPreviewCallbackWithBuffer(this::onPreviewFrame);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            if (state != 2) {
+                if (state == 1 && bufferCount > 0) {
+                    camera.setPreviewCallbackWithBuffer(null);
+                }
+                state = 2;
+                callback = null;
+                framePool.clear();
+            }
+        }
+    }
+
+    @Override
+    public void requestFrame() {
+        synchronized (lock) {
+            if (state == 1 && bufferCount == 0) {
+                camera.setOneShotPreviewCallback(this::onPreviewFrame);
+            }
+        }
+    }
+
+    @Override
+    public void releaseFrame(Frame frame) {
+        synchronized (lock) {
+            byte[] data = frame.getData();
+            frame.clear();
+            if (state == 1) {
+                if (bufferCount > 0) {
+                    camera.addCallbackBuffer(data);
+                }
+                framePool.add(frame);
+            }
+        }
+    }
+
+    private void onPreviewFrame(byte[] data, Camera camera) {
+        Callback callback;
+        Frame frame;
+        synchronized (lock) {
+            if (state != 1) return;
+            callback = this.callback;
+            if (framePool.isEmpty()) {
+                frame = new Frame();
+            } else {
+                frame = framePool.remove(framePool.size() - 1);
+            }
+            frame.set(format, data, width, height, System.nanoTime());
+        }
+        callback.onFrameAvailable(this, frame);
+    }
+
+    @Override
+    public int getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    public Camera getCamera() {
+        return camera;
+    }
+}
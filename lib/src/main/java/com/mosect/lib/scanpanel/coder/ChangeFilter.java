@@ -0,0 +1,173 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 画面变化过滤，跳过与上一次解码失败的帧几乎相同的帧，比如摄像头对着没有码的静止画面；
+ * 将解码区域划分成网格，每个格子间隔采样取平均亮度作为特征，特征的平均差值不超过容差时视为相同；
+ * 画面持续不变时，逐渐延长接收下一帧的间隔
+ */
+public class ChangeFilter implements FrameFilter {
+
+    private static final int CELL_SAMPLES = 4; // 每个格子每个方向的采样数量
+
+    private final int gridSize; // 网格大小，即每个方向的格子数量
+    private final int tolerance; // 容差，特征的平均亮度差值
+    private final long minDelay; // 最小等待时间，毫秒
+    private final long maxDelay; // 最大等待时间，毫秒
+    private final ThreadLocal<Signature> signatures = new ThreadLocal<>(); // 当前线程最后一次通过的帧特征
+    private final int[] failedSignature; // 最后一次解码失败的帧特征
+    private boolean hasFailed = false; // 是否存在解码失败的帧特征
+    private int failedLeft, failedTop, failedRight, failedBottom; // 最后一次解码失败的帧区域
+    private int staticCount = 0; // 连续跳过的帧数量
+    private long skippedCount = 0; // 跳过的帧数量
+
+    /**
+     * 创建画面变化过滤
+     *
+     * @param gridSize  网格大小，比如16
+     * @param tolerance 容差，特征的平均亮度差值，比如4
+     * @param minDelay  画面不变时的最小等待时间，毫秒，之后每次翻倍
+     * @param maxDelay  画面不变时的最大等待时间，毫秒
+     */
+    public ChangeFilter(int gridSize, int tolerance, long minDelay, long maxDelay) {
+        this.gridSize = Math.max(2, gridSize);
+        this.tolerance = Math.max(0, tolerance);
+        this.minDelay = Math.max(0, minDelay);
+        this.maxDelay = Math.max(this.minDelay, maxDelay);
+        this.failedSignature = new int[this.gridSize * this.gridSize];
+    }
+
+    @Override
+    public boolean accept(Frame frame, Rect clip) {
+        int left = 0, top = 0, right = frame.getWidth(), bottom = frame.getHeight();
+        if (null != clip) {
+            left = Math.max(left, clip.left);
+            top = Math.max(top, clip.top);
+            right = Math.min(right, clip.right);
+            bottom = Math.min(bottom, clip.bottom);
+        }
+        Signature signature = signatures.get();
+        if (null == signature) {
+            signature = new Signature(gridSize * gridSize);
+            signatures.set(signature);
+        }
+        signature.valid = computeSignature(frame, left, top, right, bottom, signature.values);
+        if (!signature.valid) {
+            // 区域太小，不过滤
+            return true;
+        }
+        // 记录区域，区域发生改变时特征不可比较
+        signature.left = left;
+        signature.top = top;
+        signature.right = right;
+        signature.bottom = bottom;
+        synchronized (this) {
+            if (hasFailed && failedLeft == left && failedTop == top
+                    && failedRight == right && failedBottom == bottom
+                    && difference(signature.values, failedSignature) <= tolerance) {
+                staticCount++;
+                skippedCount++;
+                return false;
+            }
+            staticCount = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void onDecoded(Frame frame, boolean success) {
+        Signature signature = signatures.get();
+        synchronized (this) {
+            if (success || null == signature || !signature.valid) {
+                // 解码成功，下一帧需要重新解码
+                hasFailed = false;
+            } else {
+                System.arraycopy(signature.values, 0, failedSignature, 0, failedSignature.length);
+                failedLeft = signature.left;
+                failedTop = signature.top;
+                failedRight = signature.right;
+                failedBottom = signature.bottom;
+                hasFailed = true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized long getFrameDelayMillis() {
+        if (staticCount <= 0 || minDelay <= 0) return 0;
+        // 画面持续不变，等待时间逐渐翻倍
+        int shift = Math.min(staticCount - 1, 16);
+        return Math.min(maxDelay, minDelay << shift);
+    }
+
+    /**
+     * 计算区域特征
+     *
+     * @param frame     帧
+     * @param left      区域左边
+     * @param top       区域上边
+     * @param right     区域右边
+     * @param bottom    区域下边
+     * @param signature 输出的特征
+     * @return true，计算成功；false，区域太小
+     */
+    private boolean computeSignature(Frame frame, int left, int top, int right, int bottom, int[] signature) {
+        int width = right - left;
+        int height = bottom - top;
+        int samples = gridSize * CELL_SAMPLES;
+        if (width < samples || height < samples) return false;
+        int index = 0;
+        for (int gy = 0; gy < gridSize; gy++) {
+            for (int gx = 0; gx < gridSize; gx++) {
+                int sum = 0;
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    int y = top + (int) ((long) (gy * CELL_SAMPLES + sy) * height / samples);
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        int x = left + (int) ((long) (gx * CELL_SAMPLES + sx) * width / samples);
+                        sum += frame.getLuma(x, y);
+                    }
+                }
+                signature[index++] = sum / (CELL_SAMPLES * CELL_SAMPLES);
+            }
+        }
+        return true;
+    }
+
+    private static int difference(int[] a, int[] b) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += Math.abs(a[i] - b[i]);
+        }
+        return sum / a.length;
+    }
+
+    /**
+     * 获取跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    /**
+     * 画面是否处于静止状态，即上一帧被跳过
+     *
+     * @return true，静止状态
+     */
+    public synchronized boolean isStatic() {
+        return staticCount > 0;
+    }
+
+    private static class Signature {
+
+        private final int[] values; // 每个格子的平均亮度
+        private boolean valid; // 是否有效，区域太小时无效
+        private int left, top, right, bottom; // 区域
+
+        private Signature(int size) {
+            values = new int[size];
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 码制，名称与{@link DecodeResult#getFormat()}一致，与具体的解码库无关
+ */
+public enum CodeFormat {
+    AZTEC,
+    CODABAR,
+    CODE_39,
+    CODE_93,
+    CODE_128,
+    DATA_MATRIX,
+    EAN_8,
+    EAN_13,
+    ITF,
+    MAXICODE,
+    PDF_417,
+    QR_CODE,
+    RSS_14,
+    RSS_EXPANDED,
+    UPC_A,
+    UPC_E,
+    UPC_EAN_EXTENSION
+}
@@ -0,0 +1,240 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 码定位，在解码之前粗略地找出可能包含码的区域，解码器只需要处理这些区域；
+ * 将解码区域划分成格子，每个格子间隔采样计算梯度，强梯度采样点足够多的格子视为候选格子（码的边缘密集），
+ * 相连的候选格子合并成一个候选区域
+ */
+public class CodeLocator {
+
+    private static final int CELL_SAMPLES = 4; // 每个格子每个方向的采样数量
+    private static final int MIN_CELLS = 2; // 候选区域最少的格子数量
+    private static final int MAX_GRID_SIZE = 64; // 每个方向最多的格子数量
+
+    private final int cellSize; // 格子大小，像素
+    private final int gradientThreshold; // 强梯度阈值
+    private final int maxCandidates; // 最多候选区域数量
+    private final boolean fallback; // 候选区域都解码失败时，是否解码整个区域
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<>(); // 每个线程的工作数据
+    private long locatedCount = 0; // 找到候选区域的帧数量
+    private long emptyCount = 0; // 没有候选区域的帧数量
+
+    /**
+     * 创建码定位
+     *
+     * @param cellSize          格子大小，像素，比如32；码越小，格子需要越小
+     * @param gradientThreshold 强梯度阈值，相邻采样点的亮度差值，比如32
+     * @param maxCandidates     最多候选区域数量，按面积从大到小选取
+     * @param fallback          候选区域都解码失败时，是否解码整个区域；false时没有候选区域的帧不解码
+     */
+    public CodeLocator(int cellSize, int gradientThreshold, int maxCandidates, boolean fallback) {
+        this.cellSize = Math.max(CELL_SAMPLES * 2, cellSize);
+        this.gradientThreshold = Math.max(1, gradientThreshold);
+        this.maxCandidates = Math.max(1, maxCandidates);
+        this.fallback = fallback;
+    }
+
+    /**
+     * 查找候选区域
+     *
+     * @param frame 帧
+     * @param clip  解码区域，null表示整帧
+     * @param out   输出的候选区域，数组长度至少为{@link #getMaxCandidates()}
+     * @return 候选区域数量
+     */
+    public int locate(Frame frame, Rect clip, Rect[] out) {
+        int left = 0, top = 0, right = frame.getWidth(), bottom = frame.getHeight();
+        if (null != clip) {
+            left = Math.max(left, clip.left);
+            top = Math.max(top, clip.top);
+            right = Math.min(right, clip.right);
+            bottom = Math.min(bottom, clip.bottom);
+        }
+        int width = right - left;
+        int height = bottom - top;
+        // 格子太多时增大格子，保证采样的数量有上限
+        int size = Math.max(cellSize, Math.max(width, height) / MAX_GRID_SIZE + 1);
+        int gridWidth = width / size;
+        int gridHeight = height / size;
+        if (gridWidth < 2 || gridHeight < 2) {
+            // 区域太小，直接解码整个区域
+            out[0].set(left, top, right, bottom);
+            return 1;
+        }
+        Workspace workspace = workspaces.get();
+        if (null == workspace) {
+            workspace = new Workspace();
+            workspaces.set(workspace);
+        }
+        workspace.ensure(gridWidth * gridHeight, maxCandidates);
+        boolean[] marks = workspace.marks;
+        markCells(frame, left, top, size, gridWidth, gridHeight, marks);
+
+        // 合并相连的候选格子
+        int count = 0;
+        int[] stack = workspace.stack;
+        for (int start = 0; start < gridWidth * gridHeight; start++) {
+            if (!marks[start]) continue;
+            marks[start] = false;
+            int cells = 0;
+            int minX = gridWidth, minY = gridHeight, maxX = 0, maxY = 0;
+            int stackSize = 0;
+            stack[stackSize++] = start;
+            while (stackSize > 0) {
+                int cell = stack[--stackSize];
+                int cx = cell % gridWidth;
+                int cy = cell / gridWidth;
+                cells++;
+                if (cx < minX) minX = cx;
+                if (cx > maxX) maxX = cx;
+                if (cy < minY) minY = cy;
+                if (cy > maxY) maxY = cy;
+                // 间隔一个格子也视为相连，码内部可能有平坦的区域
+                for (int dy = -2; dy <= 2; dy++) {
+                    int ny = cy + dy;
+                    if (ny < 0 || ny >= gridHeight) continue;
+                    for (int dx = -2; dx <= 2; dx++) {
+                        int nx = cx + dx;
+                        if (nx < 0 || nx >= gridWidth) continue;
+                        int next = ny * gridWidth + nx;
+                        if (marks[next]) {
+                            marks[next] = false;
+                            stack[stackSize++] = next;
+                        }
+                    }
+                }
+            }
+            if (cells < MIN_CELLS) continue;
+            count = addCandidate(workspace, count, cells, minX, minY, maxX, maxY);
+        }
+
+        synchronized (this) {
+            if (count > 0) {
+                locatedCount++;
+            } else {
+                emptyCount++;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            // 向外扩展一个格子，码的静区和边缘可能在候选格子之外
+            int[] box = workspace.boxes[i];
+            out[i].set(Math.max(left, left + (box[0] - 1) * size),
+                    Math.max(top, top + (box[1] - 1) * size),
+                    Math.min(right, left + (box[2] + 2) * size),
+                    Math.min(bottom, top + (box[3] + 2) * size));
+        }
+        return count;
+    }
+
+    /**
+     * 标记候选格子
+     */
+    private void markCells(Frame frame, int left, int top, int size,
+                           int gridWidth, int gridHeight, boolean[] marks) {
+        int step = size / CELL_SAMPLES;
+        int minStrong = CELL_SAMPLES * CELL_SAMPLES / 4; // 至少四分之一的采样点为强梯度
+        for (int gy = 0; gy < gridHeight; gy++) {
+            for (int gx = 0; gx < gridWidth; gx++) {
+                int strong = 0;
+                int cellLeft = left + gx * size;
+                int cellTop = top + gy * size;
+                for (int sy = 0; sy < CELL_SAMPLES; sy++) {
+                    int y = cellTop + sy * step;
+                    for (int sx = 0; sx < CELL_SAMPLES; sx++) {
+                        int x = cellLeft + sx * step;
+                        // 采样点与右边、下边采样点的亮度差值，不超出格子
+                        int value = frame.getLuma(x, y);
+                        int gradient = Math.abs(frame.getLuma(x + step - 1, y) - value)
+                                + Math.abs(frame.getLuma(x, y + step - 1) - value);
+                        if (gradient >= gradientThreshold) {
+                            strong++;
+                        }
+                    }
+                }
+                marks[gy * gridWidth + gx] = strong >= minStrong;
+            }
+        }
+    }
+
+    /**
+     * 添加候选区域，保留格子数量最多的maxCandidates个
+     *
+     * @return 候选区域数量
+     */
+    private int addCandidate(Workspace workspace, int count, int cells, int minX, int minY, int maxX, int maxY) {
+        int index;
+        if (count < maxCandidates) {
+            index = count++;
+        } else {
+            // 替换格子数量最少的候选区域
+            index = 0;
+            for (int i = 1; i < count; i++) {
+                if (workspace.cells[i] < workspace.cells[index]) {
+                    index = i;
+                }
+            }
+            if (workspace.cells[index] >= cells) return count;
+        }
+        workspace.cells[index] = cells;
+        int[] box = workspace.boxes[index];
+        box[0] = minX;
+        box[1] = minY;
+        box[2] = maxX;
+        box[3] = maxY;
+        return count;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getMaxCandidates() {
+        return maxCandidates;
+    }
+
+    public boolean isFallback() {
+        return fallback;
+    }
+
+    /**
+     * 获取找到候选区域的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getLocatedCount() {
+        return locatedCount;
+    }
+
+    /**
+     * 获取没有候选区域的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getEmptyCount() {
+        return emptyCount;
+    }
+
+    /**
+     * 每个线程的工作数据，复用
+     */
+    private static class Workspace {
+
+        private boolean[] marks = new boolean[0]; // 候选格子标记
+        private int[] stack = new int[0]; // 合并格子使用的栈
+        private int[] cells = new int[0]; // 候选区域的格子数量
+        private int[][] boxes = new int[0][]; // 候选区域的格子范围：minX、minY、maxX、maxY
+
+        void ensure(int cellCount, int maxCandidates) {
+            if (marks.length < cellCount) {
+                marks = new boolean[cellCount];
+                stack = new int[cellCount];
+            }
+            if (cells.length < maxCandidates) {
+                cells = new int[maxCandidates];
+                boxes = new int[maxCandidates][4];
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 解码预算，限制一帧的解码时间，并且可以在有更新的帧或者裁剪区域改变时取消解码；
+ * 取消是协作式的：解码线程通过{@link #isCurrentExhausted()}检查当前线程的预算，在各个解码阶段之间提前结束
+ */
+public class DecodeBudget {
+
+    private static final ThreadLocal<DecodeBudget> CURRENT = new ThreadLocal<>(); // 当前线程的预算
+
+    private volatile long deadline = 0; // 截止时间，纳秒，0表示不限制
+    private volatile boolean cancelled = false; // 是否已取消
+
+    /**
+     * 获取当前线程的预算
+     *
+     * @return 预算，没有时返回null
+     */
+    public static DecodeBudget current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 设置当前线程的预算，解码线程在解码之前设置
+     *
+     * @param budget 预算，null表示清除
+     */
+    public static void setCurrent(DecodeBudget budget) {
+        if (null == budget) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(budget);
+        }
+    }
+
+    /**
+     * 判断当前线程的预算是否已用完，解码器在各个解码阶段之间调用，返回true时应该放弃剩余的阶段
+     *
+     * @return true，已取消或者超时；没有预算时返回false
+     */
+    public static boolean isCurrentExhausted() {
+        DecodeBudget budget = CURRENT.get();
+        return null != budget && budget.isExhausted();
+    }
+
+    /**
+     * 开始新的一帧
+     *
+     * @param budgetNanos 解码时间，纳秒，0表示不限制
+     */
+    public void start(long budgetNanos) {
+        cancelled = false;
+        deadline = budgetNanos > 0 ? System.nanoTime() + budgetNanos : 0;
+    }
+
+    /**
+     * 取消解码，可以在任意线程中调用
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 判断是否超时
+     *
+     * @return true，超时
+     */
+    public boolean isExpired() {
+        long time = deadline;
+        return time != 0 && System.nanoTime() - time >= 0;
+    }
+
+    /**
+     * 判断预算是否已用完
+     *
+     * @return true，已取消或者超时
+     */
+    public boolean isExhausted() {
+        return cancelled || isExpired();
+    }
+
+    /**
+     * 获取剩余时间
+     *
+     * @return 剩余时间，纳秒；不限制时返回Long.MAX_VALUE
+     */
+    public long getRemainingNanos() {
+        if (cancelled) return 0;
+        long time = deadline;
+        if (time == 0) return Long.MAX_VALUE;
+        return Math.max(0, time - System.nanoTime());
+    }
+}
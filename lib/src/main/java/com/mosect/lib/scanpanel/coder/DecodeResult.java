@@ -0,0 +1,263 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 解码结果，包含码制、文本、原始数据、结果点以及耗时；解码线程会复用此对象，跨线程传递时需要使用副本
+ */
+public class DecodeResult {
+
+    private String text; // 文本
+    private String format; // 码制，比如QR_CODE
+    private byte[] rawBytes; // 原始数据
+    private float[] points = new float[8]; // 结果点，帧坐标：x1,y1,x2,y2 ... xN,yN
+    private float[] viewPoints = new float[8]; // 结果点，视图坐标
+    private int pointCount; // 结果点数量
+    private boolean viewPointsMapped; // 是否已经转换视图坐标
+    private int frameWidth; // 帧宽度
+    private int frameHeight; // 帧高度
+    private long frameTimestamp; // 帧采集时间，纳秒，与System.nanoTime()使用同一时钟
+    private long decodeStartTime; // 开始解码时间，纳秒
+    private long decodeEndTime; // 结束解码时间，纳秒
+
+    public DecodeResult() {
+    }
+
+    /**
+     * 创建结果副本
+     *
+     * @param src 结果
+     */
+    public DecodeResult(DecodeResult src) {
+        copyFrom(src);
+    }
+
+    /**
+     * 重置结果，以便复用
+     */
+    public void reset() {
+        text = null;
+        format = null;
+        rawBytes = null;
+        pointCount = 0;
+        viewPointsMapped = false;
+        frameWidth = 0;
+        frameHeight = 0;
+        frameTimestamp = 0;
+        decodeStartTime = 0;
+        decodeEndTime = 0;
+    }
+
+    /**
+     * 复制结果
+     *
+     * @param src 结果
+     */
+    public void copyFrom(DecodeResult src) {
+        text = src.text;
+        format = src.format;
+        rawBytes = src.rawBytes;
+        ensurePointCapacity(src.pointCount);
+        System.arraycopy(src.points, 0, points, 0, src.pointCount * 2);
+        System.arraycopy(src.viewPoints, 0, viewPoints, 0, src.pointCount * 2);
+        pointCount = src.pointCount;
+        viewPointsMapped = src.viewPointsMapped;
+        frameWidth = src.frameWidth;
+        frameHeight = src.frameHeight;
+        frameTimestamp = src.frameTimestamp;
+        decodeStartTime = src.decodeStartTime;
+        decodeEndTime = src.decodeEndTime;
+    }
+
+    /**
+     * 设置解码内容，由解码器调用
+     *
+     * @param text     文本
+     * @param format   码制
+     * @param rawBytes 原始数据，可以为null
+     */
+    public void set(String text, String format, byte[] rawBytes) {
+        this.text = text;
+        this.format = format;
+        this.rawBytes = rawBytes;
+    }
+
+    /**
+     * 添加结果点，由解码器调用
+     *
+     * @param x 帧坐标x
+     * @param y 帧坐标y
+     */
+    public void addPoint(float x, float y) {
+        ensurePointCapacity(pointCount + 1);
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        pointCount++;
+        viewPointsMapped = false;
+    }
+
+    /**
+     * 修改结果点，用于转换坐标
+     *
+     * @param index 结果点位置
+     * @param x     帧坐标x
+     * @param y     帧坐标y
+     */
+    public void setPoint(int index, float x, float y) {
+        points[index * 2] = x;
+        points[index * 2 + 1] = y;
+        viewPointsMapped = false;
+    }
+
+    /**
+     * 设置帧信息，由帧处理调用
+     *
+     * @param width     帧宽度
+     * @param height    帧高度
+     * @param timestamp 帧采集时间
+     */
+    public void setFrame(int width, int height, long timestamp) {
+        this.frameWidth = width;
+        this.frameHeight = height;
+        this.frameTimestamp = timestamp;
+    }
+
+    /**
+     * 设置解码时间，由帧处理调用
+     *
+     * @param startTime 开始解码时间，纳秒
+     * @param endTime   结束解码时间，纳秒
+     */
+    public void setDecodeTime(long startTime, long endTime) {
+        this.decodeStartTime = startTime;
+        this.decodeEndTime = endTime;
+    }
+
+    /**
+     * 设置视图坐标的结果点，数量与帧坐标的结果点一致
+     *
+     * @param points 视图坐标：x1,y1,x2,y2 ... xN,yN
+     */
+    public void setViewPoints(float[] points) {
+        System.arraycopy(points, 0, viewPoints, 0, pointCount * 2);
+        viewPointsMapped = true;
+    }
+
+    private void ensurePointCapacity(int count) {
+        if (points.length < count * 2) {
+            int size = Math.max(points.length * 2, count * 2);
+            float[] newPoints = new float[size];
+            System.arraycopy(points, 0, newPoints, 0, pointCount * 2);
+            points = newPoints;
+            float[] newViewPoints = new float[size];
+            System.arraycopy(viewPoints, 0, newViewPoints, 0, pointCount * 2);
+            viewPoints = newViewPoints;
+        }
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public byte[] getRawBytes() {
+        return rawBytes;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * 获取帧坐标的结果点
+     *
+     * @param out 输出：x1,y1,x2,y2 ... xN,yN，大小至少为{@link #getPointCount()}*2
+     */
+    public void getPoints(float[] out) {
+        System.arraycopy(points, 0, out, 0, pointCount * 2);
+    }
+
+    public float getPointX(int index) {
+        return points[index * 2];
+    }
+
+    public float getPointY(int index) {
+        return points[index * 2 + 1];
+    }
+
+    /**
+     * 判断是否存在视图坐标的结果点
+     *
+     * @return true，存在
+     */
+    public boolean hasViewPoints() {
+        return viewPointsMapped;
+    }
+
+    /**
+     * 获取视图坐标的结果点
+     *
+     * @param out 输出：x1,y1,x2,y2 ... xN,yN，大小至少为{@link #getPointCount()}*2
+     */
+    public void getViewPoints(float[] out) {
+        System.arraycopy(viewPoints, 0, out, 0, pointCount * 2);
+    }
+
+    public float getViewPointX(int index) {
+        return viewPoints[index * 2];
+    }
+
+    public float getViewPointY(int index) {
+        return viewPoints[index * 2 + 1];
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+
+    public long getFrameTimestamp() {
+        return frameTimestamp;
+    }
+
+    public long getDecodeStartTime() {
+        return decodeStartTime;
+    }
+
+    public long getDecodeEndTime() {
+        return decodeEndTime;
+    }
+
+    /**
+     * 获取解码耗时
+     *
+     * @return 耗时，纳秒
+     */
+    public long getDecodeDuration() {
+        return decodeEndTime - decodeStartTime;
+    }
+
+    /**
+     * 获取从采集到解码完成的耗时
+     *
+     * @return 耗时，纳秒
+     */
+    public long getLatency() {
+        return decodeEndTime - frameTimestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "DecodeResult{" +
+                "text='" + text + '\'' +
+                ", format='" + format + '\'' +
+                ", pointCount=" + pointCount +
+                ", decodeDuration=" + getDecodeDuration() +
+                ", latency=" + getLatency() +
+                '}';
+    }
+}
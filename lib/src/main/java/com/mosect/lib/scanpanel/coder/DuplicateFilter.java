@@ -0,0 +1,67 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 重复结果过滤，在有效期内再次解析到相同内容时视为重复；
+ * 使用有大小限制的缓存，超出时移除最久未出现的内容
+ */
+public class DuplicateFilter {
+
+    private final long ttl; // 有效期，纳秒
+    private final int maxSize; // 最多缓存的内容数量
+    private final LinkedHashMap<String, Long> cache; // 内容 -> 最后一次出现的时间，按出现顺序排列
+
+    /**
+     * 创建重复结果过滤
+     *
+     * @param ttlMillis 有效期，毫秒；内容持续出现时，有效期从最后一次出现开始计算
+     * @param maxSize   最多缓存的内容数量
+     */
+    public DuplicateFilter(long ttlMillis, int maxSize) {
+        this.ttl = Math.max(0, ttlMillis) * 1000000L;
+        this.maxSize = Math.max(1, maxSize);
+        this.cache = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > DuplicateFilter.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * 判断结果是否为新内容，并记录此次出现
+     *
+     * @param text 内容
+     * @param time 出现时间，纳秒，与System.nanoTime()使用同一时钟
+     * @return true，新内容；false，有效期内的重复内容
+     */
+    public synchronized boolean accept(String text, long time) {
+        if (null == text) return true;
+        // 移除已过期的内容，按出现顺序排列，遇到未过期的即可停止
+        Iterator<Long> it = cache.values().iterator();
+        while (it.hasNext()) {
+            if (time - it.next() < ttl) break;
+            it.remove();
+        }
+        Long last = cache.put(text, time);
+        return null == last;
+    }
+
+    /**
+     * 清空缓存
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    public long getTtlMillis() {
+        return ttl / 1000000L;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
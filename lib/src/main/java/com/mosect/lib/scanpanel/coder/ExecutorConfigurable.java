@@ -0,0 +1,17 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * 使用额外线程辅助解码的帧解码器；{@link com.mosect.lib.scanpanel.ScanHandler}持有辅助解码的线程池，
+ * 设置给实现此接口的解码器，包括工厂创建的每个解码器，扫码结束时关闭；单独使用解码器时由调用者创建并关闭线程池
+ */
+public interface ExecutorConfigurable {
+
+    /**
+     * 设置辅助解码的线程池，需要在解码之前设置
+     *
+     * @param executor 线程池，null表示不使用额外线程；线程池关闭后解码器不再使用额外线程
+     */
+    void setExecutor(ExecutorService executor);
+}
@@ -0,0 +1,38 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 将{@link FrameFilter}适配成{@link FrameProcessor#TYPE_FILTER}阶段，帧过滤与流水线的过滤阶段使用同一套跳过和等待逻辑；
+ * {@link FrameHandler#addFrameFilter(FrameFilter)}添加的帧过滤也通过此类执行
+ */
+public class FilterProcessor implements FrameProcessor {
+
+    private final FrameFilter filter;
+
+    public FilterProcessor(FrameFilter filter) {
+        this.filter = filter;
+    }
+
+    public FrameFilter getFilter() {
+        return filter;
+    }
+
+    @Override
+    public int getType() {
+        return TYPE_FILTER;
+    }
+
+    @Override
+    public boolean process(FrameContext context) {
+        return filter.accept(context.getFrame(), context.getClip());
+    }
+
+    @Override
+    public long getFrameDelayMillis() {
+        return filter.getFrameDelayMillis();
+    }
+
+    @Override
+    public String getName() {
+        return filter.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,28 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.util.Collection;
+
+/**
+ * 支持码制配置的帧解码器；{@link com.mosect.lib.scanpanel.ScanHandler}会将码制和码制历史应用到实现此接口的解码器，
+ * 包括工厂创建的每个解码器；没有实现此接口的解码器使用自己的配置
+ */
+public interface FormatConfigurable {
+
+    /**
+     * 设置码制，使用分级解码：每一帧只快速解码允许的码制，每隔fullPassInterval帧，
+     * 在快速解码失败后使用所有码制并且尽力解码；同一帧的多次解码（候选区域、分块等）只计为一帧；需要在解码之前设置
+     *
+     * @param formats          允许的码制，null或者空表示所有码制
+     * @param fullPassInterval 每隔多少帧进行一次完整解码，0表示不进行完整解码
+     */
+    void setCodeFormats(Collection<CodeFormat> formats, int fullPassInterval);
+
+    /**
+     * 设置码制历史，解码器可以根据历史中的码制调整尝试顺序，详见{@link FormatHistory}；解码器不支持时忽略
+     *
+     * @param history           码制历史，可以在多个解码器之间共享；null表示不使用
+     * @param discoveryInterval 历史可信时，每隔多少帧尝试历史中未出现的码制，0表示不尝试
+     */
+    default void setFormatHistory(FormatHistory history, int discoveryInterval) {
+    }
+}
@@ -0,0 +1,108 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 码制历史，记录最近若干次解码结果的码制，用于调整解码器尝试码制的顺序；
+ * 一次扫码通常只出现一两种码制，优先尝试出现次数多的码制可以减少每帧的解码时间；可以在多个解码线程之间共享
+ */
+public class FormatHistory {
+
+    private final String[] window; // 滑动窗口，最近的解码结果码制
+    private final int minHits; // 结果数量达到此值时视为可信
+    private final Map<String, Integer> counts = new HashMap<>(); // 码制 -> 窗口中的出现次数
+    private int size = 0; // 窗口中的结果数量
+    private int next = 0; // 下一个写入位置
+
+    /**
+     * 创建码制历史
+     *
+     * @param windowSize 窗口大小，只统计最近windowSize次解码结果
+     * @param minHits    结果数量达到此值时视为可信，解码器可以只尝试窗口中出现过的码制
+     */
+    public FormatHistory(int windowSize, int minHits) {
+        this.window = new String[Math.max(1, windowSize)];
+        this.minHits = Math.max(1, Math.min(window.length, minHits));
+    }
+
+    /**
+     * 记录一次解码结果
+     *
+     * @param format 码制名称
+     */
+    public synchronized void record(String format) {
+        if (null == format) return;
+        String old = window[next];
+        if (null != old) {
+            // 移出窗口
+            int count = counts.get(old) - 1;
+            if (count > 0) {
+                counts.put(old, count);
+            } else {
+                counts.remove(old);
+            }
+        } else {
+            size++;
+        }
+        window[next] = format;
+        next = (next + 1) % window.length;
+        Integer count = counts.get(format);
+        counts.put(format, null == count ? 1 : count + 1);
+    }
+
+    /**
+     * 获取窗口中出现过的码制，按出现次数从多到少排列
+     *
+     * @param out 输出列表，会先清空
+     * @return 输出列表
+     */
+    public synchronized List<String> getRankedFormats(List<String> out) {
+        out.clear();
+        out.addAll(counts.keySet());
+        Collections.sort(out, (a, b) -> counts.get(b) - counts.get(a));
+        return out;
+    }
+
+    /**
+     * 获取码制在窗口中的出现次数
+     *
+     * @param format 码制名称
+     * @return 出现次数
+     */
+    public synchronized int getCount(String format) {
+        Integer count = counts.get(format);
+        return null == count ? 0 : count;
+    }
+
+    /**
+     * 判断历史是否可信，即窗口中的结果数量达到minHits
+     *
+     * @return true，可信
+     */
+    public synchronized boolean isConfident() {
+        return size >= minHits;
+    }
+
+    /**
+     * 清空历史，比如切换扫码场景时
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < window.length; i++) {
+            window[i] = null;
+        }
+        counts.clear();
+        size = 0;
+        next = 0;
+    }
+
+    public int getWindowSize() {
+        return window.length;
+    }
+
+    public int getMinHits() {
+        return minHits;
+    }
+}
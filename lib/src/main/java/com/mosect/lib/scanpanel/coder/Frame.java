@@ -0,0 +1,171 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 帧数据，由{@link FrameSource}提供，使用完毕后需要调用{@link FrameSource#releaseFrame(Frame)}归还；
+ * 帧对象会被帧源重复使用，归还后不能再访问
+ */
+public class Frame {
+
+    private int format; // 格式
+    private byte[] data; // 数据，使用平面数据时为null
+    private ByteBuffer plane; // 亮度（Y）平面数据，使用数组数据时为null
+    private int rowStride; // 平面数据行跨度
+    private int pixelStride; // 平面数据像素跨度
+    private Object tag; // 帧源附加的对象，比如{@link android.media.Image}
+    private int width; // 宽
+    private int height; // 高
+    private long timestamp; // 采集时间，纳秒，与System.nanoTime()使用同一时钟
+    private FrameStats stats; // 统计数据，第一次使用时创建，帧数据改变后失效
+
+    /**
+     * 设置帧数据，由帧源调用
+     *
+     * @param format    格式
+     * @param data      数据
+     * @param width     宽
+     * @param height    高
+     * @param timestamp 采集时间，纳秒，与System.nanoTime()使用同一时钟
+     */
+    public void set(int format, byte[] data, int width, int height, long timestamp) {
+        this.format = format;
+        this.data = data;
+        this.plane = null;
+        this.rowStride = width;
+        this.pixelStride = 1;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        invalidateStats();
+    }
+
+    /**
+     * 设置平面帧数据，由帧源调用；用于无法（或不需要）转换成数组的帧，比如{@link android.media.Image}
+     *
+     * @param format      格式，比如{@link android.graphics.ImageFormat#YUV_420_888}
+     * @param plane       亮度（Y）平面数据，从当前position开始
+     * @param rowStride   行跨度
+     * @param pixelStride 像素跨度
+     * @param width       宽
+     * @param height      高
+     * @param timestamp   采集时间，纳秒，与System.nanoTime()使用同一时钟
+     */
+    public void setPlane(int format, ByteBuffer plane, int rowStride, int pixelStride,
+                         int width, int height, long timestamp) {
+        this.format = format;
+        this.data = null;
+        this.plane = plane;
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        this.width = width;
+        this.height = height;
+        this.timestamp = timestamp;
+        invalidateStats();
+    }
+
+    /**
+     * 清除帧数据，由帧源在回收帧时调用
+     */
+    public void clear() {
+        data = null;
+        plane = null;
+        tag = null;
+        invalidateStats();
+    }
+
+    /**
+     * 获取统计数据，使用相同的区域和采样间隔计算过时直接返回，否则重新计算；
+     * 帧同一时间只在一个线程中使用，不需要同步
+     *
+     * @param clip 区域，null表示整帧
+     * @param step 采样间隔，像素
+     * @return 统计数据，帧数据改变后重新计算，不能在归还帧之后使用
+     */
+    public FrameStats getStats(Rect clip, int step) {
+        if (null == stats) {
+            stats = new FrameStats();
+        }
+        if (!stats.isComputed(this, clip, step)) {
+            stats.compute(this, clip, step);
+        }
+        return stats;
+    }
+
+    /**
+     * 获取最后一次计算的统计数据
+     *
+     * @return 统计数据，没有计算过时返回null
+     */
+    public FrameStats getStats() {
+        return null != stats && stats.isComputed() ? stats : null;
+    }
+
+    private void invalidateStats() {
+        if (null != stats) {
+            stats.invalidate();
+        }
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * 获取亮度（Y）平面数据
+     *
+     * @return 平面数据，使用数组数据时返回null
+     */
+    public ByteBuffer getPlane() {
+        return plane;
+    }
+
+    /**
+     * 获取亮度值，适合少量采样，大量读取时直接访问数据效率更高
+     *
+     * @param x x坐标
+     * @param y y坐标
+     * @return 亮度值，0~255；平面数据从position开始计算
+     */
+    public int getLuma(int x, int y) {
+        int offset = y * rowStride + x * pixelStride;
+        if (null != data) {
+            return data[offset] & 0xFF;
+        }
+        return plane.get(plane.position() + offset) & 0xFF;
+    }
+
+    public int getRowStride() {
+        return rowStride;
+    }
+
+    public int getPixelStride() {
+        return pixelStride;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
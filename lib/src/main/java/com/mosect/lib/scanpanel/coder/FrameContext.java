@@ -0,0 +1,135 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 帧上下文，在{@link FramePipeline}的各个阶段之间传递帧、解码区域和结果；由解码线程复用
+ */
+public class FrameContext {
+
+    private Frame sourceFrame; // 帧源输出的帧（或者紧凑帧）
+    private Frame frame; // 需要解码的帧，变换阶段可以替换
+    private Rect clip; // 解码区域，null表示整帧
+    private DecodeResult result; // 解码结果
+    private boolean decoded; // 是否已解码成功
+    private int frameWidth; // 原始帧宽度
+    private int frameHeight; // 原始帧高度
+    private long skipDelay; // 跳过此帧的阶段要求的等待时间，毫秒
+
+    /**
+     * 开始处理新的一帧，由解码线程调用
+     *
+     * @param frame       帧
+     * @param clip        解码区域，null表示整帧
+     * @param result      解码结果，由解码线程复用
+     * @param frameWidth  原始帧宽度
+     * @param frameHeight 原始帧高度
+     */
+    void reset(Frame frame, Rect clip, DecodeResult result, int frameWidth, int frameHeight) {
+        this.sourceFrame = frame;
+        this.frame = frame;
+        this.clip = clip;
+        this.result = result;
+        this.decoded = false;
+        this.frameWidth = frameWidth;
+        this.frameHeight = frameHeight;
+        this.skipDelay = 0;
+    }
+
+    /**
+     * 清除帧，帧归还之后不再引用
+     */
+    void clear() {
+        sourceFrame = null;
+        frame = null;
+        clip = null;
+        result = null;
+    }
+
+    /**
+     * 重置结果并设置帧信息，在每个解码阶段之前调用
+     */
+    void prepareResult() {
+        result.reset();
+        result.setFrame(frameWidth, frameHeight, sourceFrame.getTimestamp());
+    }
+
+    /**
+     * 获取帧源输出的帧，开启紧凑复制时为紧凑帧
+     *
+     * @return 帧
+     */
+    public Frame getSourceFrame() {
+        return sourceFrame;
+    }
+
+    public Frame getFrame() {
+        return frame;
+    }
+
+    /**
+     * 替换需要解码的帧，由变换阶段调用；帧由变换阶段持有，在此帧处理完成之前不能修改；
+     * 新帧的坐标与{@link #getSourceFrame()}不同时，需要在结果后处理阶段将结果点映射回{@link #getSourceFrame()}
+     *
+     * @param frame 帧
+     */
+    public void setFrame(Frame frame) {
+        this.frame = frame;
+    }
+
+    public Rect getClip() {
+        return clip;
+    }
+
+    /**
+     * 设置解码区域，由变换阶段调用，比如只解码画面中的一部分
+     *
+     * @param clip 解码区域，null表示整帧
+     */
+    public void setClip(Rect clip) {
+        this.clip = clip;
+    }
+
+    /**
+     * 获取解码结果，解码阶段写入，结果后处理阶段可以修改；结果后处理阶段中结果点仍然是解码时的坐标，
+     * 所有结果后处理完成之后，紧凑帧的结果点才映射回原始帧
+     *
+     * @return 解码结果
+     */
+    public DecodeResult getResult() {
+        return result;
+    }
+
+    /**
+     * 替换解码结果，用于对同一帧中的其他结果执行结果后处理
+     *
+     * @param result 解码结果
+     */
+    void setResult(DecodeResult result) {
+        this.result = result;
+    }
+
+    public boolean isDecoded() {
+        return decoded;
+    }
+
+    void setDecoded(boolean decoded) {
+        this.decoded = decoded;
+    }
+
+    long getSkipDelay() {
+        return skipDelay;
+    }
+
+    void setSkipDelay(long skipDelay) {
+        this.skipDelay = skipDelay;
+    }
+
+    public int getFrameWidth() {
+        return frameWidth;
+    }
+
+    public int getFrameHeight() {
+        return frameHeight;
+    }
+}
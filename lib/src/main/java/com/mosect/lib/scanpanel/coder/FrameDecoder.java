@@ -1,7 +1,10 @@
 package com.mosect.lib.scanpanel.coder;
 
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 
+import java.nio.ByteBuffer;
+
 /**
  * 帧解码器
  */
@@ -10,7 +13,8 @@ public interface FrameDecoder {
     /**
      * 解码帧
      *
-     * @param format 格式，目前只会是{@link android.graphics.ImageFormat#NV21}
+     * @param format 格式，{@link android.graphics.ImageFormat#NV21}，
+     *               或者{@link android.graphics.ImageFormat#YUV_420_888}（此时数据只包含紧凑排列的亮度数据）
      * @param data   数据
      * @param width  宽
      * @param height 高
@@ -19,4 +23,66 @@ public interface FrameDecoder {
      * @throws Exception 解码异常
      */
     String decodeFrame(int format, byte[] data, int width, int height, Rect clip) throws Exception;
+
+    /**
+     * 解码平面帧，数据可以是带有行填充的直接缓冲区（比如Camera2的图像平面），不需要复制成紧凑数组；
+     * 默认将亮度平面复制成紧凑数组后调用{@link #decodeFrame(int, byte[], int, int, Rect)}，
+     * 解码器可以复写此方法，直接读取缓冲区，避免复制整帧
+     *
+     * @param format      格式，比如{@link ImageFormat#YUV_420_888}
+     * @param luma        亮度（Y）平面，从position开始读取，解码后position不能改变
+     * @param width       宽
+     * @param height      高
+     * @param rowStride   行跨度
+     * @param pixelStride 像素跨度
+     * @param timestamp   采集时间，纳秒，与System.nanoTime()使用同一时钟
+     * @param clip        裁剪区域
+     * @return 解码后的字符串，返回null，表示无内容
+     * @throws Exception 解码异常
+     */
+    default String decodeFrame(int format, ByteBuffer luma, int width, int height,
+                               int rowStride, int pixelStride, long timestamp, Rect clip) throws Exception {
+        byte[] data = LumaPlanes.obtainBuffer(width * height);
+        LumaPlanes.copy(luma, rowStride, pixelStride, width, height, data);
+        return decodeFrame(ImageFormat.YUV_420_888, data, width, height, clip);
+    }
+
+    /**
+     * 解码帧，输出结构化的结果；默认根据帧数据调用{@link #decodeFrame(int, byte[], int, int, Rect)}
+     * 或者{@link #decodeFrame(int, ByteBuffer, int, int, int, int, long, Rect)}，只输出文本；
+     * 解码器可以复写此方法，输出码制、原始数据以及结果点
+     *
+     * @param frame  帧
+     * @param clip   裁剪区域
+     * @param result 输出的结果，由调用者复用，不要持有此对象
+     * @return true，解码成功；false，无内容
+     * @throws Exception 解码异常
+     */
+    default boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) throws Exception {
+        String text;
+        if (null != frame.getData()) {
+            text = decodeFrame(frame.getFormat(), frame.getData(), frame.getWidth(), frame.getHeight(), clip);
+        } else {
+            text = decodeFrame(frame.getFormat(), frame.getPlane(), frame.getWidth(), frame.getHeight(),
+                    frame.getRowStride(), frame.getPixelStride(), frame.getTimestamp(), clip);
+        }
+        if (null == text || text.isEmpty()) {
+            return false;
+        }
+        result.set(text, null, null);
+        return true;
+    }
+
+    /**
+     * 帧解码器工厂，并行解码时每个解码线程会创建属于自己的解码器
+     */
+    interface Factory {
+
+        /**
+         * 创建帧解码器
+         *
+         * @return 帧解码器
+         */
+        FrameDecoder createDecoder();
+    }
 }
@@ -0,0 +1,36 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 帧过滤，在解码之前判断帧是否值得解码，比如跳过模糊的帧；在解码线程中调用，需要保证线程安全
+ */
+public interface FrameFilter {
+
+    /**
+     * 判断帧是否需要解码
+     *
+     * @param frame 帧
+     * @param clip  解码区域，null表示整帧
+     * @return true，需要解码；false，跳过此帧
+     */
+    boolean accept(Frame frame, Rect clip);
+
+    /**
+     * 帧解码完成，在调用{@link #accept(Frame, Rect)}的同一线程中调用；被其他过滤跳过的帧不会调用
+     *
+     * @param frame   帧
+     * @param success 是否解码成功
+     */
+    default void onDecoded(Frame frame, boolean success) {
+    }
+
+    /**
+     * 获取跳过帧之后，需要等待多久再接收下一帧，用于在画面没有变化时降低帧率
+     *
+     * @return 等待时间，毫秒，0表示不等待
+     */
+    default long getFrameDelayMillis() {
+        return 0;
+    }
+}
@@ -1,11 +1,15 @@
 package com.mosect.lib.scanpanel.coder;
 
+import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.hardware.Camera;
 import android.util.Log;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class FrameHandler {
 
@@ -14,76 +18,486 @@ public class FrameHandler {
     private int state = 0;
     private final byte[] lock = new byte[0];
     private FrameDecoder decoder;
-    private Camera camera;
-    private int width;
-    private int height;
-    private int format;
+    private FrameDecoder.Factory decoderFactory;
+    private FrameSource source;
     private Rect clip;
-    private ExecutorService decodeExecutor;
+    private RoiTracker roiTracker; // 感兴趣区域跟踪，null表示始终解码完整裁剪区域
+    private CodeLocator codeLocator; // 码定位，null表示不定位
+    private boolean continuous = false; // 连续解码，解码成功后不暂停
+    private DuplicateFilter duplicateFilter; // 重复结果过滤，只在连续解码时有效
+    private final List<FrameFilter> frameFilters = new CopyOnWriteArrayList<>(); // 帧过滤，解码之前执行
+    private volatile FramePipeline filterPipeline; // 帧过滤适配成的流水线，null表示没有帧过滤
+    private long skippedFrameCount = 0; // 被帧过滤跳过的帧数量
+    private long nextFrameTime = 0; // 下一次接收帧的时间，纳秒，用于在画面没有变化时降低帧率
+    private boolean requestDelayed = false; // 是否有延迟的帧请求，到达nextFrameTime后由空闲的解码线程发出
+    private boolean compactClip = false; // 是否在回调线程中复制裁剪区域的亮度数据，并且马上归还原始帧
+    private int compactRotation = 0; // 复制裁剪区域时顺时针旋转的角度
+    private final List<Frame> compactPool = new ArrayList<>(); // 紧凑帧对象池，复用数组
+    private final Rect compactRegion = new Rect(); // 复制区域，只在回调线程中使用
+    private long decodeBudget = 0; // 每帧的解码时间，纳秒，0表示不限制
+    private boolean cancelOnNewFrame = false; // 所有帧都在解码中时，新帧是否取消最旧的解码
+    private final List<FrameTask> runningTasks = new ArrayList<>(); // 解码中的帧
+    private long cancelledCount = 0; // 被取消的解码数量
+    private long expiredCount = 0; // 超时的解码数量
+    private volatile long maxFrameAge = 0; // 帧的最大等待时间，纳秒，从采集时间开始计算，0表示不限制
+    private long staleFrameCount = 0; // 等待太久而丢弃的帧数量
+    private int burstSize = 1; // 连拍选优的帧数量，1表示不选优
+    private long burstWindow = 0; // 凑齐连拍帧的最长等待时间，纳秒
+    private int burstStep = 4; // 计算清晰度的采样间隔
+    private volatile int statsStep = 0; // 帧统计数据的采样间隔，0表示不计算
+    private final FrameStats lastStats = new FrameStats(); // 最后一帧的统计数据
+    private volatile FramePipeline framePipeline; // 帧处理流水线，null表示只使用内置的解码
     private Callback callback;
 
+    private int bufferCount = 0; // 预览缓冲区数量，0表示不使用缓冲区，只在使用摄像头时有效
+    private int workerCount = 1; // 解码线程数量
+    private int maxInFlight = 0; // 最多同时处理的帧数量（包括等待中和解码中），0表示与解码线程数量一致
+    private boolean frameRequested = false; // 是否接收帧源输出的帧
+    private long frameSequence = 0; // 帧序号，用于保证结果顺序
+    private long resultSequence = 0; // 最后一次回调结果的帧序号
+    private int decodingCount = 0; // 解码中的帧数量
+    private final ArrayDeque<FrameTask> pendingTasks = new ArrayDeque<>(); // 等待解码的帧
+    private final List<FrameTask> taskPool = new ArrayList<>(); // 帧任务池，避免每帧创建对象
+
+    /**
+     * 使用摄像头开始解码，{@link #setWorkerCount(int)}大于1时，会自动使用缓冲区模式
+     *
+     * @param camera 摄像头
+     */
     public void start(Camera camera) {
+        int count = bufferCount;
+        if ((null != decoderFactory && workerCount > 1) || burstSize > 1) {
+            // 并行解码和连拍选优需要摄像头持续输出帧，必须使用缓冲区模式
+            if (compactClip) {
+                // 缓冲区在回调线程中马上归还，不需要与处理中的帧数量一致
+                count = Math.max(count, 2);
+            } else {
+                int workers = null != decoderFactory ? workerCount : 1;
+                count = Math.max(count, Math.max(maxInFlight, workers + burstSize - 1) + 1);
+            }
+        }
+        start(new CameraFrameSource(camera, count));
+    }
+
+    /**
+     * 使用帧源开始解码
+     *
+     * @param source 帧源
+     */
+    public void start(FrameSource source) {
         synchronized (lock) {
-            if (state == 0) {
-                state = 1;
-                this.camera = camera;
-                Camera.Parameters parameters = camera.getParameters();
-                Camera.Size size = parameters.getPreviewSize();
-                width = size.width;
-                height = size.height;
-                format = parameters.getPreviewFormat();
-                decodeExecutor = Executors.newFixedThreadPool(1);
+            if (state != 0) return;
+            state = 1;
+            this.source = source;
+            if (null == decoderFactory) {
+                // 同一个解码器不能同时在多个线程中使用
+                workerCount = 1;
+            }
+            if (maxInFlight <= 0) {
+                maxInFlight = workerCount;
+            }
+            // 连拍选优时，其他线程解码中也需要能凑齐连拍帧
+            maxInFlight = Math.max(maxInFlight, workerCount + burstSize - 1);
+            for (int i = 0; i < workerCount; i++) {
+                new Thread(new DecodeWorker(), "FrameHandler-" + i).start();
             }
         }
+        source.start(new FrameSource.Callback() {
+            @Override
+            public void onFrameAvailable(FrameSource source, Frame frame) {
+                handleFrame(source, frame);
+            }
+
+            @Override
+            public void onSourceError(FrameSource source, Exception error) {
+                Log.e(TAG, "onSourceError: ", error);
+            }
+        });
     }
 
     public void destroy() {
+        FrameSource source = null;
         synchronized (lock) {
             if (state != 2) {
+                if (state == 1) {
+                    source = this.source;
+                    // 等待中的帧需要归还给帧源，否则摄像头缓冲区会减少
+                    while (!pendingTasks.isEmpty()) {
+                        recycleTask(pendingTasks.pollFirst());
+                    }
+                }
                 state = 2;
-                decodeExecutor.shutdown();
+                pendingTasks.clear();
+                taskPool.clear();
+                compactPool.clear();
+                lock.notifyAll();
             }
         }
+        if (null != source) {
+            source.stop();
+        }
     }
 
     public void requestNextFrame() {
+        FrameSource source = null;
         synchronized (lock) {
             if (state == 1) {
-                camera.setOneShotPreviewCallback((data, camera1) -> {
-                    synchronized (lock) {
-                        if (state == 1) {
-                            handleFrameData(data);
-                        }
-                    }
-                });
+                frameRequested = true;
+                nextFrameTime = 0;
+                requestDelayed = false;
+                source = this.source;
             }
         }
+        if (null != source) {
+            source.requestFrame();
+        }
     }
 
-    private void handleFrameData(byte[] data) {
-        decodeExecutor.execute(() -> {
-            FrameDecoder decoder = this.decoder;
-            String text = null;
-            if (null != decoder) {
-                try {
-                    text = decoder.decodeFrame(format, data, width, height, clip);
-                } catch (Exception e) {
-                    Log.e(TAG, "handleFrameData: ", e);
+    /**
+     * 处理帧源输出的帧
+     *
+     * @param source 帧源
+     * @param frame  帧
+     */
+    private void handleFrame(FrameSource source, Frame frame) {
+        FrameTask task;
+        synchronized (lock) {
+            if (state != 1 || !frameRequested || System.nanoTime() < nextFrameTime) {
+                // 没有请求帧或者需要等待，马上归还
+                source.releaseFrame(frame);
+                return;
+            }
+            if (pendingTasks.size() + decodingCount >= maxInFlight) {
+                if (pendingTasks.isEmpty()) {
+                    if (!cancelOnNewFrame || !cancelOldestTask()) {
+                        // 所有帧都在解码中，丢弃新帧
+                        source.releaseFrame(frame);
+                        return;
+                    }
+                    // 已取消最旧的解码，新帧等待解码
+                } else {
+                    // 丢弃最旧的等待帧
+                    recycleTask(pendingTasks.pollFirst());
                 }
             }
-            handleDecodeResult(text);
-        });
+            if (taskPool.isEmpty()) {
+                task = new FrameTask();
+            } else {
+                task = taskPool.remove(taskPool.size() - 1);
+            }
+            task.sequence = ++frameSequence;
+            task.score = 0;
+            task.frameWidth = frame.getWidth();
+            task.frameHeight = frame.getHeight();
+            task.compact = compactClip;
+            if (!task.compact) {
+                task.frame = frame;
+                pendingTasks.addLast(task);
+                lock.notifyAll();
+                return;
+            }
+            if (compactPool.isEmpty()) {
+                task.frame = new Frame();
+            } else {
+                task.frame = compactPool.remove(compactPool.size() - 1);
+            }
+        }
+        // 在回调线程中复制裁剪区域的亮度数据，复制完成后马上归还原始帧
+        compactFrame(frame, task);
+        source.releaseFrame(frame);
+        synchronized (lock) {
+            if (state != 1 || !frameRequested) {
+                recycleTask(task);
+                return;
+            }
+            pendingTasks.addLast(task);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * 复制帧中需要解码的区域（感兴趣区域或者裁剪区域）的亮度数据到紧凑帧中
+     *
+     * @param frame 原始帧
+     * @param task  帧任务，持有紧凑帧
+     */
+    private void compactFrame(Frame frame, FrameTask task) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        Rect region = clip;
+        RoiTracker tracker = roiTracker;
+        if (null != tracker) {
+            region = tracker.computeClip(region, width, height, compactRegion);
+        }
+        int left = 0, top = 0, right = width, bottom = height;
+        if (null != region) {
+            left = Math.max(left, region.left);
+            top = Math.max(top, region.top);
+            right = Math.min(right, region.right);
+            bottom = Math.min(bottom, region.bottom);
+        }
+        if (left >= right || top >= bottom) {
+            // 区域无效，使用整帧
+            left = 0;
+            top = 0;
+            right = width;
+            bottom = height;
+        }
+        int clipWidth = right - left;
+        int clipHeight = bottom - top;
+        int rotation = compactRotation;
+        Frame compact = task.frame;
+        byte[] data = compact.getData();
+        if (null == data || data.length < clipWidth * clipHeight) {
+            data = new byte[clipWidth * clipHeight];
+        }
+        LumaPlanes.copyClip(frame, left, top, clipWidth, clipHeight, rotation, data);
+        boolean swap = rotation == 90 || rotation == 270;
+        // 只有亮度数据，使用紧凑排列的YUV_420_888格式
+        compact.set(ImageFormat.YUV_420_888, data, swap ? clipHeight : clipWidth, swap ? clipWidth : clipHeight,
+                frame.getTimestamp());
+        task.clipLeft = left;
+        task.clipTop = top;
+        task.clipWidth = clipWidth;
+        task.clipHeight = clipHeight;
+        task.rotation = rotation;
     }
 
-    private void handleDecodeResult(String text) {
+    /**
+     * 将紧凑帧的结果点转换成原始帧坐标
+     *
+     * @param task   帧任务
+     * @param result 解码结果
+     */
+    private static void mapCompactPoints(FrameTask task, DecodeResult result) {
+        for (int i = 0; i < result.getPointCount(); i++) {
+            float u = result.getPointX(i);
+            float v = result.getPointY(i);
+            float x, y;
+            switch (task.rotation) {
+                case 90:
+                    x = v;
+                    y = task.clipHeight - u;
+                    break;
+                case 180:
+                    x = task.clipWidth - u;
+                    y = task.clipHeight - v;
+                    break;
+                case 270:
+                    x = task.clipWidth - v;
+                    y = u;
+                    break;
+                default:
+                    x = u;
+                    y = v;
+                    break;
+            }
+            result.setPoint(i, task.clipLeft + x, task.clipTop + y);
+        }
+    }
+
+    /**
+     * 回收帧任务，需要在lock中调用
+     *
+     * @param task 帧任务
+     */
+    private void recycleTask(FrameTask task) {
+        runningTasks.remove(task);
+        task.budget = null;
+        Frame frame = task.frame;
+        task.frame = null;
+        if (task.compact) {
+            // 紧凑帧由帧处理持有，原始帧已经归还
+            if (state == 1) {
+                compactPool.add(frame);
+            }
+        } else {
+            source.releaseFrame(frame);
+        }
+        if (state == 1) {
+            taskPool.add(task);
+        }
+    }
+
+    /**
+     * 计算凑齐连拍帧还需要等待的时间，需要持有锁
+     *
+     * @return 等待时间，纳秒，小于等于0表示不需要等待
+     */
+    private long getBurstWait() {
+        if (burstSize <= 1 || pendingTasks.size() >= burstSize) return 0;
+        // 从最旧的等待帧的采集时间开始计算
+        return burstWindow - (System.nanoTime() - pendingTasks.peekFirst().frame.getTimestamp());
+    }
+
+    /**
+     * 选出评分最高的连拍帧，评分相同时取较新的帧，其他帧直接丢弃；需要持有锁
+     *
+     * @param tasks 连拍帧，从旧到新排列，选择后清空
+     * @return 帧任务
+     */
+    private FrameTask pickBestTask(List<FrameTask> tasks) {
+        FrameTask best = null;
+        for (FrameTask task : tasks) {
+            if (null == best || task.score >= best.score) {
+                best = task;
+            }
+        }
+        for (FrameTask task : tasks) {
+            if (task != best) {
+                recycleTask(task);
+            }
+        }
+        tasks.clear();
+        return best;
+    }
+
+    /**
+     * 判断帧是否等待太久
+     *
+     * @param task 帧任务
+     * @return true，帧的等待时间超过最大等待时间
+     */
+    private boolean isStale(FrameTask task) {
+        long age = maxFrameAge;
+        return age > 0 && System.nanoTime() - task.frame.getTimestamp() > age;
+    }
+
+    /**
+     * 丢弃等待太久的帧，需要持有锁；等待的帧按采集顺序排列，遇到未超时的即可停止
+     */
+    private void dropStaleTasks() {
+        while (!pendingTasks.isEmpty() && isStale(pendingTasks.peekFirst())) {
+            recycleTask(pendingTasks.pollFirst());
+            staleFrameCount++;
+        }
+    }
+
+    /**
+     * 取消最旧的解码中的帧，需要持有锁
+     *
+     * @return true，已取消；false，没有可以取消的帧
+     */
+    private boolean cancelOldestTask() {
+        FrameTask oldest = null;
+        for (FrameTask task : runningTasks) {
+            if (!task.budget.isCancelled() && (null == oldest || task.sequence < oldest.sequence)) {
+                oldest = task;
+            }
+        }
+        if (null == oldest) return false;
+        oldest.budget.cancel();
+        cancelledCount++;
+        return true;
+    }
+
+    /**
+     * 处理解码结果
+     *
+     * @param task   帧任务
+     * @param result 解码结果，null表示未解析到内容；此对象由解码线程复用
+     */
+    private void handleDecodeResult(FrameTask task, DecodeResult result) {
+        handleDecodeResult(task, result, null);
+    }
+
+    /**
+     * 处理解码结果
+     *
+     * @param task        帧任务
+     * @param result      解码结果，null表示未解析到内容；此对象由解码线程复用
+     * @param moreResults 同一帧中的其他结果，只在连续解码时回调；null表示没有
+     */
+    private void handleDecodeResult(FrameTask task, DecodeResult result, List<DecodeResult> moreResults) {
         Callback callback = null;
+        List<DecodeResult> hits = null;
+        boolean requestFrame = false;
         synchronized (lock) {
+            decodingCount--;
             if (state == 1) {
-                callback = this.callback;
+                if (null == result) {
+                    // 未解析到内容，继续请求下一帧，无需经过回调
+                    requestFrame = frameRequested;
+                } else if (continuous) {
+                    // 连续解码，不暂停接收帧；并行解码时结果可能乱序，不同内容的结果都需要回调
+                    requestFrame = frameRequested;
+                    if (frameRequested) {
+                        hits = filterResults(result, moreResults);
+                    }
+                    if (null != hits) {
+                        resultSequence = Math.max(resultSequence, task.sequence);
+                        callback = this.callback;
+                    }
+                } else if (frameRequested && task.sequence > resultSequence) {
+                    // 只回调比上一次结果更新的帧，暂停接收帧，直到再次请求
+                    resultSequence = task.sequence;
+                    frameRequested = false;
+                    while (!pendingTasks.isEmpty()) {
+                        recycleTask(pendingTasks.pollFirst());
+                    }
+                    callback = this.callback;
+                    // 结果需要传递到其他线程，使用副本
+                    hits = Collections.singletonList(new DecodeResult(result));
+                }
             }
+            recycleTask(task);
+        }
+        if (requestFrame) {
+            source.requestFrame();
         }
         if (null != callback) {
-            callback.onFrameDecodeResult(text);
+            for (DecodeResult hit : hits) {
+                callback.onFrameDecodeResult(hit);
+            }
+        }
+    }
+
+    /**
+     * 连续解码时，同一帧中的结果依次经过重复过滤；需要持有锁
+     *
+     * @param result      解码结果，由解码线程复用
+     * @param moreResults 同一帧中的其他结果，由解码器新建；null表示没有
+     * @return 需要回调的结果，null表示没有
+     */
+    private List<DecodeResult> filterResults(DecodeResult result, List<DecodeResult> moreResults) {
+        DuplicateFilter filter = duplicateFilter;
+        long now = System.nanoTime();
+        List<DecodeResult> hits = null;
+        int count = null == moreResults ? 1 : moreResults.size() + 1;
+        for (int i = 0; i < count; i++) {
+            DecodeResult item = i == 0 ? result : moreResults.get(i - 1);
+            if (null == filter || filter.accept(item.getText(), now)) {
+                if (null == hits) {
+                    hits = new ArrayList<>(count);
+                }
+                // 解码线程复用的结果需要使用副本
+                hits.add(i == 0 ? new DecodeResult(item) : item);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * 处理被帧过滤或者流水线跳过的帧，需要等待时，只记录下一次接收帧的时间，由空闲的解码线程在等待结束后请求下一帧，
+     * 解码线程不会被占用
+     *
+     * @param task  帧任务
+     * @param delay 跳过此帧的过滤要求的等待时间，毫秒
+     */
+    private void handleSkippedFrame(FrameTask task, long delay) {
+        if (delay <= 0) {
+            handleDecodeResult(task, null);
+            return;
+        }
+        synchronized (lock) {
+            decodingCount--;
+            recycleTask(task);
+            if (state == 1 && frameRequested) {
+                // 等待期间到达的帧会被马上归还
+                nextFrameTime = Math.max(nextFrameTime, System.nanoTime() + delay * 1000000L);
+                requestDelayed = true;
+                lock.notifyAll();
+            }
         }
     }
 
@@ -95,16 +509,702 @@ public class FrameHandler {
         return decoder;
     }
 
+    /**
+     * 设置帧解码器工厂，设置后每个解码线程都会创建自己的解码器，需要在开始之前调用；
+     * 未设置时，只能使用一个解码线程
+     *
+     * @param decoderFactory 帧解码器工厂
+     */
+    public void setDecoderFactory(FrameDecoder.Factory decoderFactory) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.decoderFactory = decoderFactory;
+            }
+        }
+    }
+
     public void setClip(Rect clip) {
+        Rect old = this.clip;
         this.clip = clip;
+        if (null == old ? null != clip : !old.equals(clip)) {
+            synchronized (lock) {
+                // 裁剪区域改变，解码中的帧已经没有意义
+                for (FrameTask task : runningTasks) {
+                    if (!task.budget.isCancelled()) {
+                        task.budget.cancel();
+                        cancelledCount++;
+                    }
+                }
+            }
+        }
+        RoiTracker tracker = roiTracker;
+        if (null != tracker) {
+            // 裁剪区域改变，之前的跟踪区域不再可靠
+            tracker.reset();
+        }
+    }
+
+    /**
+     * 设置紧凑帧模式，在帧源回调线程中只复制需要解码区域的亮度数据到复用的数组中，然后马上归还原始帧；
+     * 解码线程处理的数据更少，帧源也可以使用更少的缓冲区；需要在开始之前调用
+     *
+     * @param compact  是否使用紧凑帧
+     * @param rotation 复制时顺时针旋转的角度，比如显示方向：0、90、180、270；结果点会转换回原始帧坐标
+     */
+    public void setCompactClip(boolean compact, int rotation) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.compactClip = compact;
+                this.compactRotation = ((rotation % 360 + 360) % 360) / 90 * 90;
+            }
+        }
+    }
+
+    public boolean isCompactClip() {
+        return compactClip;
+    }
+
+    /**
+     * 设置感兴趣区域跟踪，解码成功后优先解码结果附近的区域
+     *
+     * @param roiTracker 感兴趣区域跟踪，null表示始终解码完整裁剪区域
+     */
+    public void setRoiTracker(RoiTracker roiTracker) {
+        this.roiTracker = roiTracker;
+    }
+
+    public RoiTracker getRoiTracker() {
+        return roiTracker;
+    }
+
+    /**
+     * 设置码定位，解码之前找出可能包含码的候选区域，只解码候选区域；跟踪感兴趣区域时不定位
+     *
+     * @param codeLocator 码定位，null表示不定位
+     */
+    public void setCodeLocator(CodeLocator codeLocator) {
+        this.codeLocator = codeLocator;
+    }
+
+    public CodeLocator getCodeLocator() {
+        return codeLocator;
+    }
+
+    /**
+     * 设置帧处理流水线，在帧过滤之后执行，可以插入过滤、变换、解码和结果后处理阶段，详见{@link FramePipeline}；
+     * 流水线中的解码阶段都没有结果时，使用内置的解码
+     *
+     * @param pipeline 流水线，null表示只使用内置的解码
+     */
+    public void setFramePipeline(FramePipeline pipeline) {
+        this.framePipeline = pipeline;
+    }
+
+    public FramePipeline getFramePipeline() {
+        return framePipeline;
+    }
+
+    /**
+     * 设置连续解码，解码成功后继续解码后续的帧，不需要调用{@link #requestNextFrame()}；
+     * 解码器实现{@link MultiCodeDecoder}时，同一帧中的每个码都会回调
+     *
+     * @param continuous true，连续解码
+     */
+    public void setContinuous(boolean continuous) {
+        this.continuous = continuous;
+    }
+
+    public boolean isContinuous() {
+        return continuous;
+    }
+
+    /**
+     * 设置重复结果过滤，只在连续解码时有效，重复的结果不会回调
+     *
+     * @param duplicateFilter 重复结果过滤，null表示不过滤
+     */
+    public void setDuplicateFilter(DuplicateFilter duplicateFilter) {
+        this.duplicateFilter = duplicateFilter;
+    }
+
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicateFilter;
+    }
+
+    /**
+     * 添加帧过滤，解码之前按添加顺序执行，任意一个不通过时跳过此帧；帧过滤通过{@link FilterProcessor}适配成过滤阶段，
+     * 与{@link FramePipeline}的过滤阶段使用同样的跳过和等待逻辑
+     *
+     * @param filter 帧过滤
+     */
+    public void addFrameFilter(FrameFilter filter) {
+        synchronized (lock) {
+            frameFilters.add(filter);
+            updateFilterPipeline();
+        }
+    }
+
+    public void removeFrameFilter(FrameFilter filter) {
+        synchronized (lock) {
+            frameFilters.remove(filter);
+            updateFilterPipeline();
+        }
+    }
+
+    /**
+     * 将帧过滤适配成过滤阶段，与流水线的过滤阶段使用同样的方式执行；需要持有锁
+     */
+    private void updateFilterPipeline() {
+        if (frameFilters.isEmpty()) {
+            filterPipeline = null;
+            return;
+        }
+        FrameProcessor[] stages = new FrameProcessor[frameFilters.size()];
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new FilterProcessor(frameFilters.get(i));
+        }
+        filterPipeline = new FramePipeline(stages);
+    }
+
+    /**
+     * 设置每帧的解码时间预算，解码器通过{@link DecodeBudget#isCurrentExhausted()}检查，超时后提前结束
+     *
+     * @param budgetMillis 解码时间，毫秒，0表示不限制
+     */
+    public void setDecodeBudget(long budgetMillis) {
+        synchronized (lock) {
+            this.decodeBudget = Math.max(0, budgetMillis) * 1000000L;
+        }
+    }
+
+    public long getDecodeBudget() {
+        synchronized (lock) {
+            return decodeBudget / 1000000L;
+        }
+    }
+
+    /**
+     * 设置连拍选优，保留最近的若干帧，使用清晰度（拉普拉斯方差，同时反映对比度）评分，优先解码评分最高的帧；
+     * 手持扫码时可以提高每次解码的成功率，减少花费在模糊帧上的时间；需要在开始之前调用
+     *
+     * @param size         连拍帧数量，1表示不选优
+     * @param windowMillis 凑齐连拍帧的最长等待时间，毫秒，从最旧的等待帧的采集时间开始计算
+     * @param step         计算清晰度的采样间隔，像素
+     */
+    public void setBurstSelection(int size, long windowMillis, int step) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.burstSize = Math.max(1, size);
+                this.burstWindow = Math.max(0, windowMillis) * 1000000L;
+                this.burstStep = Math.max(1, step);
+            }
+        }
+    }
+
+    public int getBurstSize() {
+        return burstSize;
+    }
+
+    /**
+     * 设置帧的最大等待时间，从采集时间开始计算；解码线程空闲时优先解码最新的帧，
+     * 等待时间超过此值的帧在解码之前丢弃，使结果反映当前的画面
+     *
+     * @param maxAgeMillis 最大等待时间，毫秒，0表示不限制
+     */
+    public void setMaxFrameAge(long maxAgeMillis) {
+        synchronized (lock) {
+            this.maxFrameAge = Math.max(0, maxAgeMillis) * 1000000L;
+        }
+    }
+
+    public long getMaxFrameAge() {
+        synchronized (lock) {
+            return maxFrameAge / 1000000L;
+        }
+    }
+
+    /**
+     * 获取等待太久而丢弃的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getStaleFrameCount() {
+        synchronized (lock) {
+            return staleFrameCount;
+        }
+    }
+
+    /**
+     * 设置帧统计数据，解码线程在帧过滤之前计算解码区域的统计数据并保存在帧中，帧过滤和解码器可以通过{@link Frame#getStats()}直接使用；
+     * 采样间隔与清晰度过滤一致时，清晰度过滤不再重复遍历像素
+     *
+     * @param step 采样间隔，像素，0表示不计算
+     */
+    public void setFrameStats(int step) {
+        this.statsStep = Math.max(0, step);
+    }
+
+    /**
+     * 获取最后一帧的统计数据，比如根据亮度判断是否需要补光
+     *
+     * @param out 输出的统计数据
+     * @return true，成功；false，未设置{@link #setFrameStats(int)}或者还没有帧
+     */
+    public boolean getLastStats(FrameStats out) {
+        synchronized (lock) {
+            if (!lastStats.isComputed()) return false;
+            out.copyFrom(lastStats);
+            return true;
+        }
+    }
+
+    /**
+     * 设置新帧取消解码，所有帧都在解码中时，新帧不再被丢弃，而是取消最旧的解码并等待解码；
+     * 裁剪区域改变时总是会取消解码中的帧
+     *
+     * @param cancel true，新帧取消最旧的解码
+     */
+    public void setCancelOnNewFrame(boolean cancel) {
+        synchronized (lock) {
+            this.cancelOnNewFrame = cancel;
+        }
+    }
+
+    /**
+     * 获取被取消的解码数量，包括新帧取消和裁剪区域改变取消
+     *
+     * @return 数量
+     */
+    public long getCancelledCount() {
+        synchronized (lock) {
+            return cancelledCount;
+        }
+    }
+
+    /**
+     * 获取超时的解码数量
+     *
+     * @return 数量
+     */
+    public long getExpiredCount() {
+        synchronized (lock) {
+            return expiredCount;
+        }
+    }
+
+    /**
+     * 获取被帧过滤跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getSkippedFrameCount() {
+        synchronized (lock) {
+            return skippedFrameCount;
+        }
     }
 
     public void setCallback(Callback callback) {
         this.callback = callback;
     }
 
+    /**
+     * 设置预览缓冲区数量，只在使用{@link #start(Camera)}时有效，需要在开始之前调用；
+     * 详见{@link CameraFrameSource#CameraFrameSource(Camera, int)}
+     *
+     * @param bufferCount 缓冲区数量
+     */
+    public void setBufferCount(int bufferCount) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.bufferCount = Math.max(0, bufferCount);
+            }
+        }
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * 设置解码线程数量，需要在开始之前调用；
+     * 大于1时，多个线程同时解码连续的帧，需要设置{@link #setDecoderFactory(FrameDecoder.Factory)}
+     *
+     * @param workerCount 解码线程数量
+     */
+    public void setWorkerCount(int workerCount) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.workerCount = Math.max(1, workerCount);
+            }
+        }
+    }
+
+    public int getWorkerCount() {
+        return workerCount;
+    }
+
+    /**
+     * 设置最多同时处理的帧数量（包括等待中和解码中），超出时丢弃最旧的等待帧，需要在开始之前调用
+     *
+     * @param maxInFlight 帧数量，0表示与解码线程数量一致
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        synchronized (lock) {
+            if (state == 0) {
+                this.maxInFlight = Math.max(0, maxInFlight);
+            }
+        }
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 获取帧源
+     *
+     * @return 帧源，未开始时返回null
+     */
+    public FrameSource getSource() {
+        return source;
+    }
+
     public interface Callback {
 
-        void onFrameDecodeResult(String text);
+        /**
+         * 帧解码成功，未解析到内容的帧以及连续解码时的重复结果不会回调
+         *
+         * @param result 解码结果，回调方可以持有此对象
+         */
+        void onFrameDecodeResult(DecodeResult result);
+    }
+
+    private static class FrameTask {
+
+        private Frame frame;
+        private long sequence;
+        private double score; // 连拍选优的评分
+        private int frameWidth; // 原始帧宽度
+        private int frameHeight; // 原始帧高度
+        private boolean compact; // 是否为紧凑帧，即只包含复制区域的亮度数据
+        private int clipLeft, clipTop, clipWidth, clipHeight; // 紧凑帧在原始帧中的区域
+        private int rotation; // 紧凑帧顺时针旋转的角度
+        private DecodeBudget budget; // 解码中的帧的预算
+    }
+
+    /**
+     * 解码线程，每个线程拥有自己的解码器
+     */
+    private class DecodeWorker implements Runnable {
+
+        private FrameDecoder ownDecoder;
+        private final DecodeResult result = new DecodeResult(); // 复用的解码结果
+        private final Rect roiClip = new Rect(); // 复用的跟踪区域
+        private Rect[] candidates = new Rect[0]; // 复用的候选区域
+        private final DecodeBudget budget = new DecodeBudget(); // 复用的解码预算
+        private final List<FrameTask> burstTasks = new ArrayList<>(); // 评分中的连拍帧，复用
+        private final FrameContext context = new FrameContext(); // 复用的流水线上下文
+        private final List<DecodeResult> moreResults = new ArrayList<>(); // 同一帧中的其他结果，只在连续解码时使用
+        private FrameTask currentTask; // 流水线处理中的帧任务
+        private RoiTracker currentTracker; // 流水线处理中使用的区域跟踪
+        // 流水线中的内置解码阶段
+        private final FrameProcessor defaultDecoder = new FrameProcessor() {
+            @Override
+            public int getType() {
+                return TYPE_DECODER;
+            }
+
+            @Override
+            public boolean process(FrameContext context) {
+                FrameDecoder decoder = getWorkerDecoder();
+                return null != decoder && decodeDefault(decoder, currentTask, context.getFrame(),
+                        context.getClip(), currentTracker);
+            }
+
+            @Override
+            public String getName() {
+                return FramePipeline.DEFAULT_DECODER_NAME;
+            }
+        };
+
+        /**
+         * 开始解码帧任务，需要持有锁
+         *
+         * @param task 帧任务
+         */
+        private void startTask(FrameTask task) {
+            // 更旧的帧超时后丢弃
+            dropStaleTasks();
+            decodingCount++;
+            budget.start(decodeBudget);
+            task.budget = budget;
+            runningTasks.add(task);
+        }
+
+        @Override
+        public void run() {
+            DecodeBudget.setCurrent(budget);
+            while (true) {
+                FrameTask task = null;
+                FrameSource requestSource = null;
+                synchronized (lock) {
+                    long wait = 0;
+                    while (state == 1 && (pendingTasks.isEmpty() || (wait = getBurstWait()) > 0)) {
+                        try {
+                            if (!pendingTasks.isEmpty()) {
+                                // 等待凑齐连拍帧
+                                lock.wait(wait / 1000000L + 1);
+                            } else if (!requestDelayed) {
+                                lock.wait();
+                            } else if ((wait = nextFrameTime - System.nanoTime()) > 0) {
+                                // 等待帧过滤要求的延迟
+                                lock.wait(wait / 1000000L + 1);
+                            } else {
+                                // 延迟结束，由此线程请求下一帧
+                                requestDelayed = false;
+                                if (frameRequested) {
+                                    requestSource = source;
+                                    break;
+                                }
+                            }
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (state != 1) break;
+                    if (null == requestSource) {
+                        if (burstSize > 1 && pendingTasks.size() > 1) {
+                            // 取出所有连拍帧，在锁外评分，不占用摄像头回调线程；评分期间帧不会被新帧挤掉
+                            burstTasks.addAll(pendingTasks);
+                            pendingTasks.clear();
+                            decodingCount += burstTasks.size();
+                        } else {
+                            // 优先解码最新的帧
+                            task = pendingTasks.pollLast();
+                            startTask(task);
+                        }
+                    }
+                }
+                if (null != requestSource) {
+                    // 在锁外请求帧，之后继续等待
+                    requestSource.requestFrame();
+                    continue;
+                }
+                if (null == task) {
+                    Rect scoreClip = clip;
+                    for (FrameTask burstTask : burstTasks) {
+                        // 紧凑帧只包含需要解码的区域；统计数据保存在帧中，解码时不需要重复计算
+                        burstTask.score = SharpnessFilter.computeSharpness(burstTask.frame,
+                                burstTask.compact ? null : scoreClip, burstStep);
+                    }
+                    synchronized (lock) {
+                        decodingCount -= burstTasks.size();
+                        task = pickBestTask(burstTasks);
+                        if (state != 1) {
+                            recycleTask(task);
+                            break;
+                        }
+                        startTask(task);
+                    }
+                }
+                if (isStale(task)) {
+                    // 帧已经不能反映当前画面，不解码
+                    synchronized (lock) {
+                        staleFrameCount++;
+                    }
+                    handleDecodeResult(task, null);
+                    continue;
+                }
+                boolean success = false;
+                FrameDecoder decoder = getWorkerDecoder();
+                FramePipeline pipeline = framePipeline;
+                if (null != decoder || null != pipeline) {
+                    Frame frame = task.frame;
+                    RoiTracker tracker = roiTracker;
+                    Rect decodeClip = clip;
+                    if (task.compact) {
+                        // 紧凑帧只包含需要解码的区域
+                        decodeClip = null;
+                    } else if (null != tracker) {
+                        decodeClip = tracker.computeClip(decodeClip, frame.getWidth(), frame.getHeight(), roiClip);
+                    }
+                    int step = statsStep;
+                    if (step > 0) {
+                        // 统计数据保存在帧中，之后的使用者不需要重复计算
+                        FrameStats stats = frame.getStats(decodeClip, step);
+                        synchronized (lock) {
+                            lastStats.copyFrom(stats);
+                        }
+                    }
+                    context.reset(frame, decodeClip, result, task.frameWidth, task.frameHeight);
+                    moreResults.clear();
+                    currentTask = task;
+                    currentTracker = tracker;
+                    // 帧过滤与流水线的过滤阶段以同样的方式跳过帧
+                    FramePipeline filters = filterPipeline;
+                    boolean processed = null == filters || filters.process(context, null);
+                    long startTime = System.nanoTime();
+                    if (processed && null != pipeline) {
+                        processed = pipeline.process(context, defaultDecoder);
+                        success = context.isDecoded();
+                    } else if (processed) {
+                        success = decodeDefault(decoder, task, frame, decodeClip, tracker);
+                    }
+                    if (!processed) {
+                        // 跳过此帧，不计入跟踪失败次数
+                        long delay = context.getSkipDelay();
+                        context.clear();
+                        currentTask = null;
+                        synchronized (lock) {
+                            skippedFrameCount++;
+                        }
+                        handleSkippedFrame(task, delay);
+                        continue;
+                    }
+                    result.setDecodeTime(startTime, System.nanoTime());
+                    if (success && null != pipeline) {
+                        // 结果后处理使用解码时的坐标，处理完成之后再将紧凑帧的结果点映射回原始帧
+                        success = pipeline.postProcess(context);
+                        postProcessMoreResults(pipeline);
+                        if (!success && !moreResults.isEmpty()) {
+                            // 第一个结果被丢弃，使用同一帧中的下一个结果
+                            result.copyFrom(moreResults.remove(0));
+                            success = true;
+                        }
+                    }
+                    context.clear();
+                    currentTask = null;
+                    if (!success) {
+                        moreResults.clear();
+                    }
+                    if (success && task.compact) {
+                        mapCompactPoints(task, result);
+                        for (DecodeResult more : moreResults) {
+                            mapCompactPoints(task, more);
+                        }
+                    }
+                    if (!success && budget.isCancelled()) {
+                        // 被取消的帧没有完整解码，不计入过滤和跟踪
+                        handleDecodeResult(task, null);
+                        continue;
+                    }
+                    if (!success && budget.isExpired()) {
+                        synchronized (lock) {
+                            expiredCount++;
+                        }
+                    }
+                    for (FrameFilter filter : frameFilters) {
+                        filter.onDecoded(frame, success);
+                    }
+                    if (null != tracker) {
+                        if (success) {
+                            tracker.onHit(result);
+                        } else {
+                            tracker.onMiss();
+                        }
+                    }
+                }
+                handleDecodeResult(task, success ? result : null, moreResults);
+                moreResults.clear();
+            }
+        }
+
+        /**
+         * 对同一帧中的其他结果执行结果后处理，丢弃被拒绝的结果
+         *
+         * @param pipeline 流水线
+         */
+        private void postProcessMoreResults(FramePipeline pipeline) {
+            for (int i = moreResults.size() - 1; i >= 0; i--) {
+                context.setResult(moreResults.get(i));
+                context.setDecoded(true);
+                if (!pipeline.postProcess(context)) {
+                    moreResults.remove(i);
+                }
+            }
+            context.setResult(result);
+        }
+
+        /**
+         * 内置的解码，设置了码定位并且没有跟踪感兴趣区域时只解码候选区域
+         */
+        private boolean decodeDefault(FrameDecoder decoder, FrameTask task, Frame frame, Rect clip, RoiTracker tracker) {
+            CodeLocator locator = codeLocator;
+            if (null != locator && (null == tracker || !tracker.isTracking())) {
+                return decodeCandidates(decoder, locator, task, frame, clip);
+            }
+            return decode(decoder, task, frame, clip);
+        }
+
+        /**
+         * 只解码候选区域，候选区域都解码失败时根据设置解码整个区域
+         */
+        private boolean decodeCandidates(FrameDecoder decoder, CodeLocator locator, FrameTask task, Frame frame, Rect clip) {
+            int max = locator.getMaxCandidates();
+            if (candidates.length < max) {
+                candidates = new Rect[max];
+                for (int i = 0; i < max; i++) {
+                    candidates[i] = new Rect();
+                }
+            }
+            int count = locator.locate(frame, clip, candidates);
+            for (int i = 0; i < count; i++) {
+                if (decode(decoder, task, frame, candidates[i])) return true;
+                if (budget.isExhausted()) return false;
+            }
+            if (locator.isFallback() && !(count == 1 && coversClip(frame, clip, candidates[0]))) {
+                return decode(decoder, task, frame, clip);
+            }
+            return false;
+        }
+
+        private boolean coversClip(Frame frame, Rect clip, Rect candidate) {
+            if (null == clip) {
+                return candidate.left <= 0 && candidate.top <= 0
+                        && candidate.right >= frame.getWidth() && candidate.bottom >= frame.getHeight();
+            }
+            return candidate.contains(clip);
+        }
+
+        private boolean decode(FrameDecoder decoder, FrameTask task, Frame frame, Rect clip) {
+            result.reset();
+            result.setFrame(task.frameWidth, task.frameHeight, task.frame.getTimestamp());
+            moreResults.clear();
+            try {
+                if (continuous && decoder instanceof MultiCodeDecoder) {
+                    // 连续解码时输出同一帧中的所有码
+                    return decodeAll((MultiCodeDecoder) decoder, task, frame, clip);
+                }
+                return decoder.decodeFrame(frame, clip, result);
+            } catch (Exception e) {
+                Log.e(TAG, "decode: ", e);
+                return false;
+            }
+        }
+
+        /**
+         * 解码帧中的所有码，第一个结果写入复用的结果，其他结果保存在{@link #moreResults}中
+         */
+        private boolean decodeAll(MultiCodeDecoder decoder, FrameTask task, Frame frame, Rect clip) throws Exception {
+            if (decoder.decodeAll(frame, clip, moreResults) <= 0) return false;
+            result.copyFrom(moreResults.remove(0));
+            // 保留帧源输出的帧信息，紧凑帧的帧信息与解码的帧不同
+            result.setFrame(task.frameWidth, task.frameHeight, task.frame.getTimestamp());
+            for (DecodeResult more : moreResults) {
+                more.setFrame(task.frameWidth, task.frameHeight, task.frame.getTimestamp());
+            }
+            return true;
+        }
+
+        private FrameDecoder getWorkerDecoder() {
+            FrameDecoder.Factory factory = decoderFactory;
+            if (null != factory) {
+                if (null == ownDecoder) {
+                    ownDecoder = factory.createDecoder();
+                }
+                return ownDecoder;
+            }
+            return decoder;
+        }
     }
 }
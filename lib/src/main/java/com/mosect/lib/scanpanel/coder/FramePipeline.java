@@ -0,0 +1,201 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.util.Log;
+
+import java.util.List;
+
+/**
+ * 帧处理流水线，由{@link FrameHandler}在帧过滤之后调用，按顺序执行各个{@link FrameProcessor}阶段，并统计每个阶段的耗时；
+ * 过滤、变换和解码阶段按添加顺序执行，之后如果还没有结果，使用{@link FrameHandler}内置的解码（解码器、码定位等）；
+ * 解码成功后再按添加顺序执行结果后处理阶段。同一个流水线可以同时在多个解码线程中使用
+ */
+public class FramePipeline {
+
+    private static final String TAG = "FramePipeline";
+
+    /**
+     * 内置解码阶段的名称
+     */
+    public static final String DEFAULT_DECODER_NAME = "decode";
+
+    private final FrameProcessor[] stages; // 各个阶段
+    private final String[] names; // 各个阶段的名称，最后一个为内置解码阶段
+    private final long[] calls; // 各个阶段的调用次数
+    private final long[] nanos; // 各个阶段的总耗时，纳秒
+    private long droppedCount = 0; // 过滤或者变换阶段跳过的帧数量
+    private long rejectedCount = 0; // 结果后处理阶段丢弃的结果数量
+
+    /**
+     * 创建流水线
+     *
+     * @param stages 各个阶段
+     */
+    public FramePipeline(List<FrameProcessor> stages) {
+        this(stages.toArray(new FrameProcessor[0]));
+    }
+
+    /**
+     * 创建流水线
+     *
+     * @param stages 各个阶段
+     */
+    public FramePipeline(FrameProcessor... stages) {
+        this.stages = stages.clone();
+        this.names = new String[stages.length + 1];
+        for (int i = 0; i < stages.length; i++) {
+            names[i] = stages[i].getName();
+        }
+        names[stages.length] = DEFAULT_DECODER_NAME;
+        this.calls = new long[names.length];
+        this.nanos = new long[names.length];
+    }
+
+    /**
+     * 执行过滤、变换和解码阶段，预算用完时不再执行剩余的阶段
+     *
+     * @param context        帧上下文
+     * @param defaultDecoder 内置解码阶段，其他解码阶段都没有结果时调用；null表示不使用
+     * @return true，执行完成，通过{@link FrameContext#isDecoded()}判断是否有结果；false，帧被跳过，
+     * 跳过此帧的阶段要求的等待时间写入上下文
+     */
+    boolean process(FrameContext context, FrameProcessor defaultDecoder) {
+        for (int i = 0; i < stages.length; i++) {
+            FrameProcessor stage = stages[i];
+            int type = stage.getType();
+            if (type == FrameProcessor.TYPE_POST) continue;
+            if (type == FrameProcessor.TYPE_DECODER && context.isDecoded()) continue;
+            if (DecodeBudget.isCurrentExhausted()) return true;
+            if (type == FrameProcessor.TYPE_DECODER) {
+                context.prepareResult();
+                context.setDecoded(run(i, stage, context, false));
+            } else if (!run(i, stage, context, true)) {
+                synchronized (this) {
+                    droppedCount++;
+                }
+                context.setSkipDelay(stage.getFrameDelayMillis());
+                return false;
+            }
+        }
+        if (null != defaultDecoder && !context.isDecoded() && !DecodeBudget.isCurrentExhausted()) {
+            context.setDecoded(run(stages.length, defaultDecoder, context, false));
+        }
+        return true;
+    }
+
+    /**
+     * 执行结果后处理阶段
+     *
+     * @param context 帧上下文，已解码成功
+     * @return true，保留结果；false，结果被丢弃
+     */
+    boolean postProcess(FrameContext context) {
+        for (int i = 0; i < stages.length; i++) {
+            FrameProcessor stage = stages[i];
+            if (stage.getType() != FrameProcessor.TYPE_POST) continue;
+            if (!run(i, stage, context, true)) {
+                synchronized (this) {
+                    rejectedCount++;
+                }
+                context.setDecoded(false);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean run(int index, FrameProcessor stage, FrameContext context, boolean errorValue) {
+        long startTime = System.nanoTime();
+        boolean value;
+        try {
+            value = stage.process(context);
+        } catch (Exception e) {
+            Log.e(TAG, "run: " + names[index], e);
+            value = errorValue;
+        }
+        long time = System.nanoTime() - startTime;
+        synchronized (this) {
+            calls[index]++;
+            nanos[index] += time;
+        }
+        return value;
+    }
+
+    /**
+     * 获取阶段数量，包括最后的内置解码阶段
+     *
+     * @return 阶段数量
+     */
+    public int getStageCount() {
+        return names.length;
+    }
+
+    /**
+     * 获取阶段名称
+     *
+     * @param index 阶段位置，{@link #getStageCount()} - 1为内置解码阶段
+     * @return 名称
+     */
+    public String getStageName(int index) {
+        return names[index];
+    }
+
+    /**
+     * 获取阶段的调用次数
+     *
+     * @param index 阶段位置
+     * @return 调用次数
+     */
+    public synchronized long getStageCalls(int index) {
+        return calls[index];
+    }
+
+    /**
+     * 获取阶段的总耗时
+     *
+     * @param index 阶段位置
+     * @return 总耗时，纳秒
+     */
+    public synchronized long getStageNanos(int index) {
+        return nanos[index];
+    }
+
+    /**
+     * 获取阶段的平均耗时
+     *
+     * @param index 阶段位置
+     * @return 平均耗时，纳秒，没有调用过时返回0
+     */
+    public synchronized long getStageAverageNanos(int index) {
+        return calls[index] > 0 ? nanos[index] / calls[index] : 0;
+    }
+
+    /**
+     * 获取过滤或者变换阶段跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 获取结果后处理阶段丢弃的结果数量
+     *
+     * @return 结果数量
+     */
+    public synchronized long getRejectedCount() {
+        return rejectedCount;
+    }
+
+    /**
+     * 清空耗时统计
+     */
+    public synchronized void resetStats() {
+        for (int i = 0; i < names.length; i++) {
+            calls[i] = 0;
+            nanos[i] = 0;
+        }
+        droppedCount = 0;
+        rejectedCount = 0;
+    }
+}
@@ -0,0 +1,59 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 帧处理阶段，由{@link FramePipeline}在解码线程中按顺序调用，需要保证线程安全；
+ * 根据类型，可以是过滤（跳过不值得解码的帧）、变换（替换需要解码的帧或者区域）、解码（设置结果）或者结果后处理（修改或者丢弃结果）
+ */
+public interface FrameProcessor {
+
+    /**
+     * 过滤，返回false时跳过此帧
+     */
+    int TYPE_FILTER = 0;
+    /**
+     * 变换，修改上下文中的帧或者解码区域；返回false时跳过此帧
+     */
+    int TYPE_TRANSFORM = 1;
+    /**
+     * 解码，只在还没有结果时调用；解码成功时将结果写入{@link FrameContext#getResult()}并返回true
+     */
+    int TYPE_DECODER = 2;
+    /**
+     * 结果后处理，只在解码成功后调用，可以修改结果；返回false时丢弃结果，视为解码失败
+     */
+    int TYPE_POST = 3;
+
+    /**
+     * 获取类型
+     *
+     * @return {@link #TYPE_FILTER}、{@link #TYPE_TRANSFORM}、{@link #TYPE_DECODER}或者{@link #TYPE_POST}
+     */
+    int getType();
+
+    /**
+     * 处理帧
+     *
+     * @param context 帧上下文，由解码线程复用，不能在此方法之外使用
+     * @return 含义与类型有关，见各类型的说明
+     * @throws Exception 处理出错，过滤、变换和结果后处理出错时视为返回true，解码出错时视为返回false
+     */
+    boolean process(FrameContext context) throws Exception;
+
+    /**
+     * 获取过滤或者变换阶段跳过帧之后，需要等待多久再接收下一帧，用于在画面没有变化时降低帧率
+     *
+     * @return 等待时间，毫秒，0表示不等待
+     */
+    default long getFrameDelayMillis() {
+        return 0;
+    }
+
+    /**
+     * 获取名称，用于统计各阶段的耗时
+     *
+     * @return 名称
+     */
+    default String getName() {
+        return getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,75 @@
+package com.mosect.lib.scanpanel.coder;
+
+/**
+ * 帧源，为{@link FrameHandler}提供帧数据；帧源不依赖具体的摄像头实现，可以是摄像头，也可以是文件回放
+ */
+public interface FrameSource {
+
+    /**
+     * 开始输出帧
+     *
+     * @param callback 回调，帧源会在自己的线程中回调，并且不会在持有内部锁时回调
+     */
+    void start(Callback callback);
+
+    /**
+     * 停止输出帧，停止后不能再次开始
+     */
+    void stop();
+
+    /**
+     * 请求下一帧；持续输出帧的帧源可以忽略此方法
+     */
+    void requestFrame();
+
+    /**
+     * 归还帧，帧数据使用完毕后必须归还
+     *
+     * @param frame 帧
+     */
+    void releaseFrame(Frame frame);
+
+    /**
+     * 获取帧格式
+     *
+     * @return 帧格式，比如{@link android.graphics.ImageFormat#NV21}
+     */
+    int getFormat();
+
+    /**
+     * 获取帧宽度
+     *
+     * @return 宽度
+     */
+    int getWidth();
+
+    /**
+     * 获取帧高度
+     *
+     * @return 高度
+     */
+    int getHeight();
+
+    /**
+     * 帧源回调
+     */
+    interface Callback {
+
+        /**
+         * 有可用的帧，不需要的帧也必须通过{@link FrameSource#releaseFrame(Frame)}归还
+         *
+         * @param source 帧源
+         * @param frame  帧
+         */
+        void onFrameAvailable(FrameSource source, Frame frame);
+
+        /**
+         * 帧源出错并已停止，之后不会再输出帧
+         *
+         * @param source 帧源
+         * @param error  错误
+         */
+        default void onSourceError(FrameSource source, Exception error) {
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 帧统计数据，在解码区域内间隔采样，一次遍历同时计算亮度平均值、直方图、对比度和清晰度；
+ * 通过{@link Frame#getStats(Rect, int)}获取，结果保存在帧中，同一帧的多个使用者（比如清晰度过滤、连拍选优、补光判断）不需要重复遍历像素
+ */
+public class FrameStats {
+
+    private static final int MIN_SAMPLES = 16; // 计算清晰度最少的采样数量
+
+    private final int[] histogram = new int[256]; // 亮度直方图
+    private boolean computed = false; // 是否已计算
+    private int left, top, right, bottom; // 计算的区域
+    private int step; // 采样间隔
+    private int sampleCount; // 采样数量
+    private double mean; // 亮度平均值
+    private double contrast; // 对比度，即亮度标准差
+    private double sharpness; // 清晰度，即拉普拉斯响应方差
+    private int minLuma; // 最小亮度
+    private int maxLuma; // 最大亮度
+
+    /**
+     * 计算统计数据，只采样区域内部（离边缘至少一个采样间隔）的点，与拉普拉斯响应使用相同的采样点
+     *
+     * @param frame 帧
+     * @param clip  区域，null表示整帧
+     * @param step  采样间隔，像素
+     */
+    public void compute(Frame frame, Rect clip, int step) {
+        step = Math.max(1, step);
+        int left = 0, top = 0, right = frame.getWidth(), bottom = frame.getHeight();
+        if (null != clip) {
+            left = Math.max(left, clip.left);
+            top = Math.max(top, clip.top);
+            right = Math.min(right, clip.right);
+            bottom = Math.min(bottom, clip.bottom);
+        }
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = 0;
+        }
+        long lumaSum = 0;
+        long lumaSumSq = 0;
+        long lapSum = 0;
+        long lapSumSq = 0;
+        int count = 0;
+        int min = 255, max = 0;
+        for (int y = top + step; y < bottom - step; y += step) {
+            for (int x = left + step; x < right - step; x += step) {
+                int value = frame.getLuma(x, y);
+                int lap = 4 * value
+                        - frame.getLuma(x - step, y)
+                        - frame.getLuma(x + step, y)
+                        - frame.getLuma(x, y - step)
+                        - frame.getLuma(x, y + step);
+                histogram[value]++;
+                lumaSum += value;
+                lumaSumSq += value * value;
+                lapSum += lap;
+                lapSumSq += lap * lap;
+                if (value < min) min = value;
+                if (value > max) max = value;
+                count++;
+            }
+        }
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+        this.step = step;
+        this.sampleCount = count;
+        if (count > 0) {
+            mean = (double) lumaSum / count;
+            contrast = Math.sqrt(Math.max(0, (double) lumaSumSq / count - mean * mean));
+            minLuma = min;
+            maxLuma = max;
+        } else {
+            mean = 0;
+            contrast = 0;
+            minLuma = 0;
+            maxLuma = 0;
+        }
+        if (count < MIN_SAMPLES) {
+            // 区域太小，清晰度不可信，视为清晰
+            sharpness = Double.MAX_VALUE;
+        } else {
+            double lapMean = (double) lapSum / count;
+            sharpness = (double) lapSumSq / count - lapMean * lapMean;
+        }
+        computed = true;
+    }
+
+    /**
+     * 判断是否已使用相同的区域和采样间隔计算过
+     *
+     * @param frame 帧
+     * @param clip  区域，null表示整帧
+     * @param step  采样间隔
+     * @return true，已计算，可以直接使用
+     */
+    public boolean isComputed(Frame frame, Rect clip, int step) {
+        if (!computed || this.step != Math.max(1, step)) return false;
+        if (null == clip) {
+            return left == 0 && top == 0 && right == frame.getWidth() && bottom == frame.getHeight();
+        }
+        return left == Math.max(0, clip.left) && top == Math.max(0, clip.top)
+                && right == Math.min(frame.getWidth(), clip.right)
+                && bottom == Math.min(frame.getHeight(), clip.bottom);
+    }
+
+    public boolean isComputed() {
+        return computed;
+    }
+
+    /**
+     * 清除统计数据，帧数据改变时调用
+     */
+    public void invalidate() {
+        computed = false;
+    }
+
+    /**
+     * 复制统计数据
+     *
+     * @param other 其他统计数据
+     */
+    public void copyFrom(FrameStats other) {
+        System.arraycopy(other.histogram, 0, histogram, 0, histogram.length);
+        computed = other.computed;
+        left = other.left;
+        top = other.top;
+        right = other.right;
+        bottom = other.bottom;
+        step = other.step;
+        sampleCount = other.sampleCount;
+        mean = other.mean;
+        contrast = other.contrast;
+        sharpness = other.sharpness;
+        minLuma = other.minLuma;
+        maxLuma = other.maxLuma;
+    }
+
+    /**
+     * 获取亮度百分位数，比如0.05和0.95两个百分位数的差值可以作为不受噪点影响的动态范围
+     *
+     * @param fraction 比例，0~1
+     * @return 亮度值，0~255
+     */
+    public int getPercentile(float fraction) {
+        if (sampleCount <= 0) return 0;
+        int target = (int) Math.ceil(Math.max(0, Math.min(1, fraction)) * sampleCount);
+        int sum = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            sum += histogram[i];
+            if (sum >= target && sum > 0) return i;
+        }
+        return histogram.length - 1;
+    }
+
+    /**
+     * 获取亮度直方图，不能修改
+     *
+     * @return 直方图，下标为亮度值，值为采样数量
+     */
+    public int[] getHistogram() {
+        return histogram;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * 获取亮度平均值，可以用于判断是否需要补光
+     *
+     * @return 平均值，0~255
+     */
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * 获取对比度，即亮度标准差；对比度低时可以换用更适合的二值化方式
+     *
+     * @return 对比度
+     */
+    public double getContrast() {
+        return contrast;
+    }
+
+    /**
+     * 获取清晰度，即拉普拉斯响应方差，与{@link SharpnessFilter}一致
+     *
+     * @return 清晰度，区域太小时返回{@link Double#MAX_VALUE}
+     */
+    public double getSharpness() {
+        return sharpness;
+    }
+
+    public int getMinLuma() {
+        return minLuma;
+    }
+
+    public int getMaxLuma() {
+        return maxLuma;
+    }
+}
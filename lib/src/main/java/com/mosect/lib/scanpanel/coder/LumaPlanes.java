@@ -0,0 +1,111 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 亮度平面工具
+ */
+public final class LumaPlanes {
+
+    private static final ThreadLocal<byte[]> BUFFERS = new ThreadLocal<>();
+
+    private LumaPlanes() {
+    }
+
+    /**
+     * 获取当前线程复用的数组，大小不一致时重新创建；数组只能在当前线程中使用，并且会被下一次调用覆盖
+     *
+     * @param size 大小
+     * @return 数组
+     */
+    public static byte[] obtainBuffer(int size) {
+        byte[] buffer = BUFFERS.get();
+        if (null == buffer || buffer.length != size) {
+            buffer = new byte[size];
+            BUFFERS.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * 将亮度平面复制成紧凑排列的数组
+     *
+     * @param plane       亮度平面，从position开始读取，不修改position，多个线程可以同时读取同一个平面
+     * @param rowStride   行跨度
+     * @param pixelStride 像素跨度
+     * @param width       宽
+     * @param height      高
+     * @param out         输出，大小至少为width*height
+     */
+    public static void copy(ByteBuffer plane, int rowStride, int pixelStride, int width, int height, byte[] out) {
+        copy(plane, plane.position(), rowStride, pixelStride, width, height, out);
+    }
+
+    private static void copy(ByteBuffer plane, int start, int rowStride, int pixelStride,
+                             int width, int height, byte[] out) {
+        // 批量读取需要修改position，使用自己的副本，不影响其他线程
+        ByteBuffer buffer = pixelStride == 1 ? plane.duplicate() : plane;
+        for (int y = 0; y < height; y++) {
+            int rowStart = start + y * rowStride;
+            int offset = y * width;
+            if (pixelStride == 1) {
+                buffer.position(rowStart);
+                buffer.get(out, offset, width);
+            } else {
+                for (int x = 0; x < width; x++) {
+                    out[offset + x] = buffer.get(rowStart + x * pixelStride);
+                }
+            }
+        }
+    }
+
+    /**
+     * 将帧中指定区域的亮度数据复制成紧凑排列的数组，可以同时顺时针旋转
+     *
+     * @param frame    帧，平面数据从position开始读取，不修改position
+     * @param left     区域左边
+     * @param top      区域上边
+     * @param width    区域宽度
+     * @param height   区域高度
+     * @param rotation 顺时针旋转角度：0、90、180、270；旋转90或者270时，输出的宽高互换
+     * @param out      输出，大小至少为width*height
+     */
+    public static void copyClip(Frame frame, int left, int top, int width, int height, int rotation, byte[] out) {
+        byte[] data = frame.getData();
+        ByteBuffer plane = frame.getPlane();
+        int rowStride = frame.getRowStride();
+        int pixelStride = frame.getPixelStride();
+        // 平面数据从position开始，数组数据从0开始
+        int base = null != data ? 0 : plane.position();
+        if (rotation == 0) {
+            if (null != data) {
+                for (int y = 0; y < height; y++) {
+                    System.arraycopy(data, (top + y) * rowStride + left, out, y * width, width);
+                }
+            } else {
+                copy(plane, base + top * rowStride + left * pixelStride,
+                        rowStride, pixelStride, width, height, out);
+            }
+            return;
+        }
+        // 按源数据的行顺序读取，写入旋转后的位置
+        for (int y = 0; y < height; y++) {
+            int rowStart = base + (top + y) * rowStride + left * pixelStride;
+            for (int x = 0; x < width; x++) {
+                int index = rowStart + x * pixelStride;
+                byte value = null != data ? data[index] : plane.get(index);
+                switch (rotation) {
+                    case 90:
+                        out[x * height + (height - 1 - y)] = value;
+                        break;
+                    case 180:
+                        out[(height - 1 - y) * width + (width - 1 - x)] = value;
+                        break;
+                    default: // 270
+                        out[(width - 1 - x) * height + y] = value;
+                        break;
+                }
+            }
+        }
+    }
+}
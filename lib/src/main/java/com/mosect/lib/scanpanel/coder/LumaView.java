@@ -0,0 +1,279 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 亮度视图，以旋转（顺时针0、90、180、270）、水平镜像以及反色的方式访问帧中的某个区域，不复制数据；
+ * 变换顺序：先旋转，再镜像，最后反色；视图对象可以复用，但不能同时在多个线程中修改
+ */
+public class LumaView {
+
+    private byte[] data; // 数组数据
+    private ByteBuffer plane; // 平面数据
+    private int base; // 数据起始位置，平面数据为设置时的position
+    private int rowStride; // 行跨度
+    private int pixelStride; // 像素跨度
+    private int left, top; // 区域在数据中的位置
+    private int clipWidth, clipHeight; // 区域大小
+    private int rotation = 0; // 顺时针旋转角度
+    private boolean mirror = false; // 是否水平镜像
+    private boolean invert = false; // 是否反色
+
+    /**
+     * 使用帧数据
+     *
+     * @param frame 帧，帧归还之后视图不能再访问
+     * @param clip  区域，null表示整帧
+     * @return 此对象
+     */
+    public LumaView set(Frame frame, Rect clip) {
+        int l = 0, t = 0, r = frame.getWidth(), b = frame.getHeight();
+        if (null != clip) {
+            l = Math.max(l, clip.left);
+            t = Math.max(t, clip.top);
+            r = Math.min(r, clip.right);
+            b = Math.min(b, clip.bottom);
+        }
+        if (null != frame.getData()) {
+            return set(frame.getData(), frame.getRowStride(), l, t, r - l, b - t);
+        }
+        return set(frame.getPlane(), frame.getRowStride(), frame.getPixelStride(), l, t, r - l, b - t);
+    }
+
+    /**
+     * 使用数组数据，比如NV21
+     *
+     * @param data      数据，亮度数据在前
+     * @param rowStride 行跨度，NV21为帧宽度
+     * @param left      区域左边
+     * @param top       区域上边
+     * @param width     区域宽度
+     * @param height    区域高度
+     * @return 此对象
+     */
+    public LumaView set(byte[] data, int rowStride, int left, int top, int width, int height) {
+        this.data = data;
+        this.plane = null;
+        this.base = 0;
+        this.rowStride = rowStride;
+        this.pixelStride = 1;
+        setClip(left, top, width, height);
+        return this;
+    }
+
+    /**
+     * 使用平面数据，比如{@link android.media.Image.Plane#getBuffer()}
+     *
+     * @param plane       亮度平面，从当前position开始，使用绝对位置读取，不修改position
+     * @param rowStride   行跨度
+     * @param pixelStride 像素跨度
+     * @param left        区域左边
+     * @param top         区域上边
+     * @param width       区域宽度
+     * @param height      区域高度
+     * @return 此对象
+     */
+    public LumaView set(ByteBuffer plane, int rowStride, int pixelStride, int left, int top, int width, int height) {
+        this.data = null;
+        this.plane = plane;
+        this.base = plane.position();
+        this.rowStride = rowStride;
+        this.pixelStride = pixelStride;
+        setClip(left, top, width, height);
+        return this;
+    }
+
+    private void setClip(int left, int top, int width, int height) {
+        this.left = left;
+        this.top = top;
+        this.clipWidth = width;
+        this.clipHeight = height;
+    }
+
+    /**
+     * 设置变换
+     *
+     * @param rotation 顺时针旋转角度：0、90、180、270
+     * @param mirror   是否水平镜像（旋转之后）
+     * @param invert   是否反色
+     * @return 此对象
+     */
+    public LumaView setTransform(int rotation, boolean mirror, boolean invert) {
+        this.rotation = ((rotation % 360 + 360) % 360) / 90 * 90;
+        this.mirror = mirror;
+        this.invert = invert;
+        return this;
+    }
+
+    /**
+     * 复制另一个视图的数据和变换，用于在同一数据上创建不同的变换
+     *
+     * @param src 视图
+     * @return 此对象
+     */
+    public LumaView copyFrom(LumaView src) {
+        data = src.data;
+        plane = src.plane;
+        base = src.base;
+        rowStride = src.rowStride;
+        pixelStride = src.pixelStride;
+        left = src.left;
+        top = src.top;
+        clipWidth = src.clipWidth;
+        clipHeight = src.clipHeight;
+        rotation = src.rotation;
+        mirror = src.mirror;
+        invert = src.invert;
+        return this;
+    }
+
+    /**
+     * 获取视图宽度，旋转90或者270时为区域高度
+     *
+     * @return 宽度
+     */
+    public int getWidth() {
+        return rotation == 90 || rotation == 270 ? clipHeight : clipWidth;
+    }
+
+    /**
+     * 获取视图高度，旋转90或者270时为区域宽度
+     *
+     * @return 高度
+     */
+    public int getHeight() {
+        return rotation == 90 || rotation == 270 ? clipWidth : clipHeight;
+    }
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    public boolean isMirror() {
+        return mirror;
+    }
+
+    public boolean isInvert() {
+        return invert;
+    }
+
+    /**
+     * 获取亮度值
+     *
+     * @param x 视图坐标x
+     * @param y 视图坐标y
+     * @return 亮度值，0~255
+     */
+    public int get(int x, int y) {
+        int value = read(indexOf(x, y)) & 0xFF;
+        return invert ? 255 - value : value;
+    }
+
+    /**
+     * 获取一行亮度数据
+     *
+     * @param y   视图坐标y
+     * @param row 输出的数组，为null或者太小时创建新的数组
+     * @return 行数据，大小至少为{@link #getWidth()}
+     */
+    public byte[] getRow(int y, byte[] row) {
+        int width = getWidth();
+        if (null == row || row.length < width) {
+            row = new byte[width];
+        }
+        int start = indexOf(0, y);
+        int step = width > 1 ? indexOf(1, y) - start : pixelStride;
+        if (step == 1 && null != data) {
+            // 连续的数据，直接复制
+            System.arraycopy(data, start, row, 0, width);
+        } else if (null != data) {
+            for (int x = 0, index = start; x < width; x++, index += step) {
+                row[x] = data[index];
+            }
+        } else {
+            for (int x = 0, index = start; x < width; x++, index += step) {
+                row[x] = plane.get(index);
+            }
+        }
+        if (invert) {
+            for (int x = 0; x < width; x++) {
+                row[x] = (byte) ~row[x];
+            }
+        }
+        return row;
+    }
+
+    /**
+     * 将视图坐标转换成数据（帧）坐标
+     *
+     * @param x   视图坐标x
+     * @param y   视图坐标y
+     * @param out 输出：帧坐标x,y
+     */
+    public void mapPoint(float x, float y, float[] out) {
+        int width = getWidth();
+        if (mirror) {
+            x = width - x;
+        }
+        float sx, sy;
+        switch (rotation) {
+            case 90:
+                sx = y;
+                sy = clipHeight - x;
+                break;
+            case 180:
+                sx = clipWidth - x;
+                sy = clipHeight - y;
+                break;
+            case 270:
+                sx = clipWidth - y;
+                sy = x;
+                break;
+            default:
+                sx = x;
+                sy = y;
+                break;
+        }
+        out[0] = left + sx;
+        out[1] = top + sy;
+    }
+
+    /**
+     * 计算视图坐标在数据中的位置
+     *
+     * @param x 视图坐标x
+     * @param y 视图坐标y
+     * @return 数据位置
+     */
+    private int indexOf(int x, int y) {
+        if (mirror) {
+            x = getWidth() - 1 - x;
+        }
+        int sx, sy;
+        switch (rotation) {
+            case 90:
+                sx = y;
+                sy = clipHeight - 1 - x;
+                break;
+            case 180:
+                sx = clipWidth - 1 - x;
+                sy = clipHeight - 1 - y;
+                break;
+            case 270:
+                sx = clipWidth - 1 - y;
+                sy = x;
+                break;
+            default:
+                sx = x;
+                sy = y;
+                break;
+        }
+        return base + (top + sy) * rowStride + (left + sx) * pixelStride;
+    }
+
+    private byte read(int index) {
+        return null != data ? data[index] : plane.get(index);
+    }
+}
@@ -0,0 +1,23 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import java.util.List;
+
+/**
+ * 可以输出同一帧中多个码的帧解码器；连续解码时{@link FrameHandler}使用{@link #decodeAll(Frame, Rect, List)}解码，
+ * 同一帧中的每个结果经过重复过滤后依次回调
+ */
+public interface MultiCodeDecoder extends FrameDecoder {
+
+    /**
+     * 解码帧中的所有码，去除内容重复的结果
+     *
+     * @param frame 帧
+     * @param clip  裁剪区域，null表示整帧
+     * @param out   输出的结果，按优先级排列；结果为新建的对象，调用者可以持有
+     * @return 结果数量
+     * @throws Exception 解码异常
+     */
+    int decodeAll(Frame frame, Rect clip, List<DecodeResult> out) throws Exception;
+}
@@ -0,0 +1,245 @@
+package com.mosect.lib.scanpanel.coder;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文件回放帧源，按照设定的帧率循环输出文件中的NV21帧；不依赖摄像头，可以在普通JVM中测试解码流程的吞吐量
+ * <p>
+ * 每个文件包含一个或多个连续的NV21帧，每帧大小为width*height*3/2
+ */
+public class ReplayFrameSource implements FrameSource {
+
+    /**
+     * NV21格式，与{@link android.graphics.ImageFormat#NV21}一致
+     */
+    private static final int FORMAT_NV21 = 17;
+
+    private final byte[] lock = new byte[0];
+    private final List<File> files;
+    private final int width;
+    private final int height;
+    private final float fps; // 帧率，小于等于0表示尽快输出
+    private final int bufferCount;
+    private int state = 0; // 状态：0，未开始；1，运行中；2，已停止
+    private Callback callback;
+    private final List<Frame> framePool = new ArrayList<>(); // 空闲帧
+    private long frameCount = 0; // 已输出的帧数量
+    private long droppedCount = 0; // 因为没有空闲缓冲区而丢弃的帧数量
+    private IOException error; // 读取文件的错误
+
+    private InputStream input;
+    private int fileIndex = 0;
+
+    /**
+     * 创建文件回放帧源
+     *
+     * @param files       NV21文件列表
+     * @param width       帧宽度
+     * @param height      帧高度
+     * @param fps         帧率，小于等于0表示尽快输出（有空闲缓冲区就输出）
+     * @param bufferCount 缓冲区数量
+     */
+    public ReplayFrameSource(List<File> files, int width, int height, float fps, int bufferCount) {
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Files is empty");
+        }
+        this.files = new ArrayList<>(files);
+        this.width = width;
+        this.height = height;
+        this.fps = fps;
+        this.bufferCount = Math.max(1, bufferCount);
+    }
+
+    @Override
+    public void start(Callback callback) {
+        synchronized (lock) {
+            if (state == 0) {
+                state = 1;
+                this.callback = callback;
+                int frameSize = width * height * 3 / 2;
+                for (int i = 0; i < bufferCount; i++) {
+                    Frame frame = new Frame();
+                    frame.set(FORMAT_NV21, new byte[frameSize], width, height, 0);
+                    framePool.add(frame);
+                }
+                new Thread(this::loop, "ReplayFrameSource").start();
+            }
+        }
+    }
+
+    @Override
+    public void stop() {
+        synchronized (lock) {
+            if (state != 2) {
+                state = 2;
+                callback = null;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public void requestFrame() {
+        // 持续输出帧，不需要处理请求
+    }
+
+    @Override
+    public void releaseFrame(Frame frame) {
+        synchronized (lock) {
+            if (state == 1) {
+                framePool.add(frame);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private void loop() {
+        long interval = fps > 0 ? (long) (1000000000L / fps) : 0;
+        long nextTime = System.nanoTime();
+        try {
+            while (true) {
+                if (interval > 0) {
+                    // 按照帧率等待
+                    long wait = nextTime - System.nanoTime();
+                    if (wait > 0) {
+                        Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                    }
+                    nextTime += interval;
+                }
+                Frame frame;
+                Callback callback;
+                synchronized (lock) {
+                    if (interval <= 0) {
+                        // 尽快输出，等待空闲缓冲区
+                        while (state == 1 && framePool.isEmpty()) {
+                            lock.wait();
+                        }
+                    }
+                    if (state != 1) break;
+                    if (framePool.isEmpty()) {
+                        // 与摄像头一致，没有空闲缓冲区时丢弃此帧
+                        droppedCount++;
+                        continue;
+                    }
+                    frame = framePool.remove(framePool.size() - 1);
+                    callback = this.callback;
+                }
+                byte[] data = frame.getData();
+                readFrame(data);
+                frame.set(FORMAT_NV21, data, width, height, System.nanoTime());
+                synchronized (lock) {
+                    frameCount++;
+                }
+                callback.onFrameAvailable(this, frame);
+            }
+        } catch (InterruptedException ignored) {
+        } catch (IOException e) {
+            // 读取出错，停止输出帧并通知使用者
+            Callback callback;
+            synchronized (lock) {
+                error = e;
+                callback = state == 1 ? this.callback : null;
+                state = 2;
+                this.callback = null;
+                lock.notifyAll();
+            }
+            if (null != callback) {
+                callback.onSourceError(this, e);
+            }
+        } finally {
+            closeInput();
+        }
+    }
+
+    /**
+     * 读取下一帧，文件读取完毕后切换到下一个文件，所有文件读取完毕后从头开始
+     *
+     * @param out 输出的帧数据
+     * @throws IOException 读取异常
+     */
+    private void readFrame(byte[] out) throws IOException {
+        int emptyFiles = 0;
+        while (true) {
+            if (null == input) {
+                input = new FileInputStream(files.get(fileIndex));
+                fileIndex = (fileIndex + 1) % files.size();
+            }
+            int offset = 0;
+            while (offset < out.length) {
+                int len = input.read(out, offset, out.length - offset);
+                if (len < 0) break;
+                offset += len;
+            }
+            if (offset == out.length) return;
+            // 文件剩余数据不足一帧，切换到下一个文件
+            closeInput();
+            if (++emptyFiles > files.size()) {
+                throw new EOFException("No complete frame in files");
+            }
+        }
+    }
+
+    private void closeInput() {
+        if (null != input) {
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+            input = null;
+        }
+    }
+
+    @Override
+    public int getFormat() {
+        return FORMAT_NV21;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * 获取已输出的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getFrameCount() {
+        synchronized (lock) {
+            return frameCount;
+        }
+    }
+
+    /**
+     * 获取读取文件的错误
+     *
+     * @return 错误，没有出错时返回null
+     */
+    public IOException getError() {
+        synchronized (lock) {
+            return error;
+        }
+    }
+
+    /**
+     * 获取因为没有空闲缓冲区而丢弃的帧数量
+     *
+     * @return 帧数量
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+}
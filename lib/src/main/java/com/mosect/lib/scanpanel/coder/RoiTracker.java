@@ -0,0 +1,143 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 感兴趣区域跟踪：解码成功后，下一帧只解码上一次结果点附近的区域，连续多次失败后恢复解码完整裁剪区域；
+ * 可以在多个解码线程中共用
+ */
+public class RoiTracker {
+
+    private final float padding; // 扩展比例，相对于结果点范围的最大边
+    private final int minSize; // 结果点范围的最小边长，1D码的结果点只有一条线
+    private final int maxMisses; // 最多连续失败次数，超过后恢复解码完整裁剪区域
+    private boolean tracking = false; // 是否正在跟踪
+    private int left, top, right, bottom; // 跟踪区域，帧坐标
+    private int misses = 0; // 连续失败次数
+    private long roiFrames = 0; // 使用跟踪区域解码的帧数量
+    private long fullFrames = 0; // 使用完整裁剪区域解码的帧数量
+
+    /**
+     * 创建跟踪
+     *
+     * @param padding   扩展比例，相对于结果点范围的最大边，比如0.5
+     * @param minSize   结果点范围的最小边长，像素
+     * @param maxMisses 最多连续失败次数，超过后恢复解码完整裁剪区域
+     */
+    public RoiTracker(float padding, int minSize, int maxMisses) {
+        this.padding = Math.max(0, padding);
+        this.minSize = Math.max(1, minSize);
+        this.maxMisses = Math.max(1, maxMisses);
+    }
+
+    /**
+     * 计算需要解码的区域
+     *
+     * @param clip   完整裁剪区域，null表示整帧
+     * @param width  帧宽度
+     * @param height 帧高度
+     * @param out    输出的区域
+     * @return 需要解码的区域，可能是out，也可能是clip
+     */
+    public synchronized Rect computeClip(Rect clip, int width, int height, Rect out) {
+        if (!tracking) {
+            fullFrames++;
+            return clip;
+        }
+        int cl = 0, ct = 0, cr = width, cb = height;
+        if (null != clip) {
+            cl = clip.left;
+            ct = clip.top;
+            cr = clip.right;
+            cb = clip.bottom;
+        }
+        int l = Math.max(left, cl);
+        int t = Math.max(top, ct);
+        int r = Math.min(right, cr);
+        int b = Math.min(bottom, cb);
+        if (l >= r || t >= b) {
+            // 跟踪区域已经不在裁剪区域中
+            tracking = false;
+            fullFrames++;
+            return clip;
+        }
+        roiFrames++;
+        out.set(l, t, r, b);
+        return out;
+    }
+
+    /**
+     * 解码成功，使用结果点更新跟踪区域
+     *
+     * @param result 解码结果
+     */
+    public synchronized void onHit(DecodeResult result) {
+        misses = 0;
+        int count = result.getPointCount();
+        if (count == 0) {
+            // 没有结果点，无法跟踪
+            tracking = false;
+            return;
+        }
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            float x = result.getPointX(i);
+            float y = result.getPointY(i);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+        float cx = (minX + maxX) / 2f;
+        float cy = (minY + maxY) / 2f;
+        float size = Math.max(minSize, Math.max(maxX - minX, maxY - minY));
+        float half = size / 2f + size * padding;
+        left = (int) (cx - half);
+        top = (int) (cy - half);
+        right = (int) Math.ceil(cx + half);
+        bottom = (int) Math.ceil(cy + half);
+        tracking = true;
+    }
+
+    /**
+     * 解码失败
+     */
+    public synchronized void onMiss() {
+        if (tracking && ++misses >= maxMisses) {
+            // 连续失败，恢复解码完整裁剪区域
+            tracking = false;
+            misses = 0;
+        }
+    }
+
+    /**
+     * 重置跟踪，比如裁剪区域发生改变
+     */
+    public synchronized void reset() {
+        tracking = false;
+        misses = 0;
+    }
+
+    public synchronized boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * 获取使用跟踪区域解码的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getRoiFrames() {
+        return roiFrames;
+    }
+
+    /**
+     * 获取使用完整裁剪区域解码的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getFullFrames() {
+        return fullFrames;
+    }
+}
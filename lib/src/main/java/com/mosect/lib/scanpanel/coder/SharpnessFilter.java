@@ -0,0 +1,79 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+/**
+ * 清晰度过滤，跳过模糊的帧（比如移动手机或者对焦中采集的帧）；
+ * 在解码区域内间隔采样，计算拉普拉斯响应的方差作为清晰度，低于阈值时跳过此帧
+ */
+public class SharpnessFilter implements FrameFilter {
+
+    private final int step; // 采样间隔，像素
+    private volatile double threshold; // 清晰度阈值
+    private long acceptedCount = 0; // 通过的帧数量
+    private long skippedCount = 0; // 跳过的帧数量
+    private double lastSharpness = 0; // 最后一帧的清晰度
+
+    /**
+     * 创建清晰度过滤
+     *
+     * @param threshold 清晰度阈值，低于此值的帧会被跳过，比如100
+     * @param step      采样间隔，像素，越大越快，但越不准确，比如4
+     */
+    public SharpnessFilter(double threshold, int step) {
+        this.threshold = threshold;
+        this.step = Math.max(1, step);
+    }
+
+    @Override
+    public boolean accept(Frame frame, Rect clip) {
+        double sharpness = computeSharpness(frame, clip, step);
+        boolean accepted = sharpness >= threshold;
+        synchronized (this) {
+            lastSharpness = sharpness;
+            if (accepted) {
+                acceptedCount++;
+            } else {
+                skippedCount++;
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * 计算清晰度，即间隔采样的拉普拉斯响应方差；使用帧的统计数据，相同区域和采样间隔的统计数据已计算时不再遍历像素
+     *
+     * @param frame 帧
+     * @param clip  区域，null表示整帧
+     * @param step  采样间隔
+     * @return 清晰度，区域太小时返回{@link Double#MAX_VALUE}，即不跳过
+     */
+    public static double computeSharpness(Frame frame, Rect clip, int step) {
+        return frame.getStats(clip, step).getSharpness();
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public synchronized long getAcceptedCount() {
+        return acceptedCount;
+    }
+
+    /**
+     * 获取跳过的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public synchronized double getLastSharpness() {
+        return lastSharpness;
+    }
+}
@@ -0,0 +1,364 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分块解码器，将较大的解码区域划分成相互重叠的块，在共享线程池中同时解码，使用最靠近区域中心的成功结果，
+ * 或者通过{@link #decodeAll(Frame, Rect, List)}合并所有块的结果；
+ * 每个线程使用工厂创建自己的解码器，同一个分块解码器可以同时在多个线程中使用
+ */
+public class TileDecoder implements MultiCodeDecoder {
+
+    private static final String TAG = "TileDecoder";
+
+    private static ExecutorService tilePool; // 解码块的共享线程池
+
+    private final Factory factory; // 解码器工厂
+    private final int columns; // 列数
+    private final int rows; // 行数
+    private final float overlap; // 重叠比例，相对于块大小
+    private final int minTileSize; // 块的最小边长，区域太小时不分块
+    private final ThreadLocal<FrameDecoder> decoders = new ThreadLocal<>(); // 每个线程的解码器
+    private final ThreadLocal<Batch> batches = new ThreadLocal<>(); // 每个调用线程复用的解码批次
+    private long tiledCount = 0; // 分块解码的帧数量
+    private long tileAttempts = 0; // 解码的块数量
+    private long skippedTiles = 0; // 已有结果或者预算用完而跳过的块数量
+
+    /**
+     * 创建分块解码器
+     *
+     * @param factory     解码器工厂，每个线程创建自己的解码器
+     * @param columns     列数
+     * @param rows        行数
+     * @param overlap     重叠比例，每个块向四周扩展块大小的此比例，码的大小不超过重叠部分时一定完整位于某个块中，比如0.25
+     * @param minTileSize 块的最小边长，像素；区域太小时减少块的数量
+     */
+    public TileDecoder(Factory factory, int columns, int rows, float overlap, int minTileSize) {
+        this.factory = factory;
+        this.columns = Math.max(1, columns);
+        this.rows = Math.max(1, rows);
+        this.overlap = Math.max(0, Math.min(1, overlap));
+        this.minTileSize = Math.max(1, minTileSize);
+    }
+
+    @Override
+    public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) throws Exception {
+        Frame frame = new Frame();
+        frame.set(format, data, width, height, 0);
+        DecodeResult result = new DecodeResult();
+        return decodeFrame(frame, clip, result) ? result.getText() : null;
+    }
+
+    @Override
+    public String decodeFrame(int format, ByteBuffer luma, int width, int height,
+                              int rowStride, int pixelStride, long timestamp, Rect clip) throws Exception {
+        Frame frame = new Frame();
+        frame.setPlane(format, luma, rowStride, pixelStride, width, height, timestamp);
+        DecodeResult result = new DecodeResult();
+        return decodeFrame(frame, clip, result) ? result.getText() : null;
+    }
+
+    /**
+     * 分块解码，某个块解码成功后，未开始的块不再解码；优先使用靠近区域中心的块的结果
+     */
+    @Override
+    public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) throws Exception {
+        Batch batch = decodeTiles(frame, clip, true);
+        try {
+            for (int i = 0; i < batch.count; i++) {
+                if (batch.success[i]) {
+                    // 保留调用者设置的帧信息，紧凑帧的帧信息与解码的帧不同
+                    int frameWidth = result.getFrameWidth();
+                    int frameHeight = result.getFrameHeight();
+                    long frameTimestamp = result.getFrameTimestamp();
+                    result.copyFrom(batch.results[i]);
+                    result.setFrame(frameWidth, frameHeight, frameTimestamp);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            // 不再引用帧，帧归还之后可以被回收
+            batch.frame = null;
+            batch.budget = null;
+        }
+    }
+
+    /**
+     * 解码所有块，合并结果并去除内容重复的结果（码位于重叠部分时多个块会解析到相同的内容），内容相同时保留靠近区域中心的块的结果
+     */
+    @Override
+    public int decodeAll(Frame frame, Rect clip, List<DecodeResult> out) {
+        Batch batch = decodeTiles(frame, clip, false);
+        try {
+            int start = out.size();
+            for (int i = 0; i < batch.count; i++) {
+                if (!batch.success[i]) continue;
+                DecodeResult tileResult = batch.results[i];
+                if (containsText(out, start, tileResult.getText())) continue;
+                // 批次中的结果会被下一次解码覆盖，输出副本
+                out.add(new DecodeResult(tileResult));
+            }
+            return out.size() - start;
+        } finally {
+            batch.frame = null;
+            batch.budget = null;
+        }
+    }
+
+    private static boolean containsText(List<DecodeResult> results, int start, String text) {
+        for (int i = start; i < results.size(); i++) {
+            if (Objects.equals(results.get(i).getText(), text)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * 划分并解码块，当前线程解码最靠近中心的块，其他块在线程池中解码；返回前等待所有块结束，之后帧可以被归还
+     *
+     * @param frame     帧
+     * @param clip      解码区域
+     * @param firstOnly 是否在某个块解码成功后，跳过未开始的块
+     * @return 解码批次，当前线程复用的对象，下一次解码时会被覆盖
+     */
+    private Batch decodeTiles(Frame frame, Rect clip, boolean firstOnly) {
+        Batch batch = batches.get();
+        if (null == batch) {
+            batch = new Batch();
+            batches.set(batch);
+        }
+        // 块在线程池中解码时使用调用线程的预算
+        batch.start(frame, DecodeBudget.current(), firstOnly);
+        createTiles(frame, clip, batch);
+        int count = batch.count;
+        batch.remaining = count;
+        Batch current = batch;
+        synchronized (this) {
+            if (count > 1) {
+                tiledCount++;
+            }
+        }
+        if (count > 1) {
+            ExecutorService pool = getTilePool();
+            for (int i = 1; i < count; i++) {
+                int index = i;
+                pool.execute(() -> runTile(current, index));
+            }
+        }
+        runTile(batch, 0);
+        synchronized (batch) {
+            while (batch.remaining > 0) {
+                try {
+                    batch.wait();
+                } catch (InterruptedException e) {
+                    // 必须等待所有块结束，否则帧归还后仍然被读取
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void runTile(Batch batch, int index) {
+        boolean success = false;
+        boolean skipped;
+        synchronized (batch) {
+            skipped = (batch.firstOnly && batch.found) || (null != batch.budget && batch.budget.isExhausted());
+        }
+        if (!skipped) {
+            DecodeResult result = batch.results[index];
+            result.setFrame(batch.frame.getWidth(), batch.frame.getHeight(), batch.frame.getTimestamp());
+            DecodeBudget old = DecodeBudget.current();
+            DecodeBudget.setCurrent(batch.budget);
+            try {
+                success = obtainDecoder().decodeFrame(batch.frame, batch.tiles[index], result);
+            } catch (Exception e) {
+                Log.e(TAG, "runTile: ", e);
+            } finally {
+                DecodeBudget.setCurrent(old);
+            }
+        }
+        synchronized (this) {
+            if (skipped) {
+                skippedTiles++;
+            } else {
+                tileAttempts++;
+            }
+        }
+        synchronized (batch) {
+            batch.success[index] = success;
+            if (success) {
+                batch.found = true;
+            }
+            batch.remaining--;
+            batch.notifyAll();
+        }
+    }
+
+    /**
+     * 划分块，按块中心到区域中心的距离从近到远排列
+     *
+     * @param frame 帧
+     * @param clip  解码区域
+     * @param batch 输出的解码批次，复用其中的块和结果
+     */
+    private void createTiles(Frame frame, Rect clip, Batch batch) {
+        int left = 0, top = 0, right = frame.getWidth(), bottom = frame.getHeight();
+        if (null != clip) {
+            left = Math.max(left, clip.left);
+            top = Math.max(top, clip.top);
+            right = Math.min(right, clip.right);
+            bottom = Math.min(bottom, clip.bottom);
+        }
+        int width = right - left;
+        int height = bottom - top;
+        // 区域太小时减少块的数量
+        int cols = Math.max(1, Math.min(columns, width / minTileSize));
+        int rs = Math.max(1, Math.min(rows, height / minTileSize));
+        Rect[] tiles = batch.ensure(cols * rs);
+        int tileWidth = width / cols;
+        int tileHeight = height / rs;
+        int extendX = (int) (tileWidth * overlap);
+        int extendY = (int) (tileHeight * overlap);
+        for (int y = 0; y < rs; y++) {
+            for (int x = 0; x < cols; x++) {
+                // 最后一列、一行包含除不尽的部分
+                int tl = left + x * tileWidth;
+                int tt = top + y * tileHeight;
+                int tr = x == cols - 1 ? right : tl + tileWidth;
+                int tb = y == rs - 1 ? bottom : tt + tileHeight;
+                tiles[y * cols + x].set(Math.max(left, tl - extendX), Math.max(top, tt - extendY),
+                        Math.min(right, tr + extendX), Math.min(bottom, tb + extendY));
+            }
+        }
+        // 靠近中心的块优先
+        int cx = left + right;
+        int cy = top + bottom;
+        for (int i = 1; i < batch.count; i++) {
+            Rect tile = tiles[i];
+            int distance = distance(tile, cx, cy);
+            int j = i - 1;
+            while (j >= 0 && distance(tiles[j], cx, cy) > distance) {
+                tiles[j + 1] = tiles[j];
+                j--;
+            }
+            tiles[j + 1] = tile;
+        }
+    }
+
+    private static int distance(Rect tile, int cx, int cy) {
+        // 坐标都乘以2，避免除法
+        return Math.abs(tile.left + tile.right - cx) + Math.abs(tile.top + tile.bottom - cy);
+    }
+
+    private FrameDecoder obtainDecoder() {
+        FrameDecoder decoder = decoders.get();
+        if (null == decoder) {
+            decoder = factory.createDecoder();
+            decoders.set(decoder);
+        }
+        return decoder;
+    }
+
+    private static synchronized ExecutorService getTilePool() {
+        if (null == tilePool) {
+            int count = Math.max(2, Runtime.getRuntime().availableProcessors());
+            tilePool = Executors.newFixedThreadPool(count, runnable -> {
+                Thread thread = new Thread(runnable, "TileDecoder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return tilePool;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * 获取分块解码的帧数量
+     *
+     * @return 帧数量
+     */
+    public synchronized long getTiledCount() {
+        return tiledCount;
+    }
+
+    /**
+     * 获取解码的块数量
+     *
+     * @return 块数量
+     */
+    public synchronized long getTileAttempts() {
+        return tileAttempts;
+    }
+
+    /**
+     * 获取已有结果或者预算用完而跳过的块数量
+     *
+     * @return 块数量
+     */
+    public synchronized long getSkippedTiles() {
+        return skippedTiles;
+    }
+
+    /**
+     * 一次分块解码，每个调用线程复用同一个对象；调用线程等待所有块结束后才会开始下一次解码
+     */
+    private static class Batch {
+
+        private Frame frame; // 帧
+        private Rect[] tiles = new Rect[0]; // 块，复用
+        private DecodeResult[] results = new DecodeResult[0]; // 每个块的结果，复用
+        private boolean[] success = new boolean[0]; // 每个块是否解码成功
+        private int count; // 块数量
+        private DecodeBudget budget; // 调用线程的解码预算，可以为null
+        private boolean firstOnly; // 是否解码成功后跳过未开始的块
+        private int remaining; // 未结束的块数量
+        private boolean found; // 是否已有块解码成功
+
+        void start(Frame frame, DecodeBudget budget, boolean firstOnly) {
+            this.frame = frame;
+            this.budget = budget;
+            this.firstOnly = firstOnly;
+            this.found = false;
+        }
+
+        /**
+         * 设置块数量，数组不够时扩大，并且重置每个块的结果
+         *
+         * @param count 块数量
+         * @return 块
+         */
+        Rect[] ensure(int count) {
+            if (tiles.length < count) {
+                Rect[] newTiles = new Rect[count];
+                DecodeResult[] newResults = new DecodeResult[count];
+                for (int i = 0; i < count; i++) {
+                    newTiles[i] = i < tiles.length ? tiles[i] : new Rect();
+                    newResults[i] = i < results.length ? results[i] : new DecodeResult();
+                }
+                tiles = newTiles;
+                results = newResults;
+                success = new boolean[count];
+            }
+            for (int i = 0; i < count; i++) {
+                results[i].reset();
+                success[i] = false;
+            }
+            this.count = count;
+            return tiles;
+        }
+    }
+}
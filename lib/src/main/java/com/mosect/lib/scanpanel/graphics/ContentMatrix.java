@@ -125,6 +125,32 @@ public class ContentMatrix {
         pointsToRect(dstPoints, dst);
     }
 
+    /**
+     * content上的点转换成viewport上的点，注意：此方法使用左上角为原点的坐标系
+     *
+     * @param src 点列表：x1,y1,x2,y2 ... xN,yN
+     * @param dst 输出，可以与src相同
+     */
+    public void contentToViewport2D(float[] src, float[] dst) {
+        int count = src.length / 2;
+        float[] points = new float[count * 4];
+        float ch = getRectPointsHeight(contentPoints);
+        for (int i = 0; i < count; i++) {
+            // 坐标系转换
+            points[i * 4] = src[i * 2];
+            points[i * 4 + 1] = ch - src[i * 2 + 1];
+            points[i * 4 + 3] = 1;
+        }
+        float[] dstPoints = new float[points.length];
+        matrix.mapVec4Points(points, dstPoints);
+        // 转换会原本坐标系
+        float vh = getRectPointsHeight(viewportPoints);
+        for (int i = 0; i < count; i++) {
+            dst[i * 2] = dstPoints[i * 4];
+            dst[i * 2 + 1] = vh - dstPoints[i * 4 + 1];
+        }
+    }
+
     public ScaleType getScaleType() {
         return scaleType;
     }
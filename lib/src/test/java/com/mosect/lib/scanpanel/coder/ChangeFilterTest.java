@@ -0,0 +1,73 @@
+package com.mosect.lib.scanpanel.coder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ChangeFilter}单元测试
+ */
+public class ChangeFilterTest {
+
+    private static final int SIZE = 64;
+
+    @Test
+    public void accept_skipsUnchangedFrameAfterFailure() {
+        ChangeFilter filter = new ChangeFilter(4, 4, 50, 400);
+        Frame frame = createFrame(100);
+        assertTrue(filter.accept(frame, null));
+        filter.onDecoded(frame, false);
+        assertFalse(filter.accept(createFrame(101), null));
+        assertTrue(filter.isStatic());
+        assertEquals(1, filter.getSkippedCount());
+        // 画面发生变化
+        assertTrue(filter.accept(createFrame(160), null));
+        assertFalse(filter.isStatic());
+    }
+
+    @Test
+    public void getFrameDelayMillis_backsOffWhileStatic() {
+        ChangeFilter filter = new ChangeFilter(4, 4, 50, 150);
+        Frame frame = createFrame(100);
+        assertTrue(filter.accept(frame, null));
+        filter.onDecoded(frame, false);
+        assertEquals(0, filter.getFrameDelayMillis());
+        assertFalse(filter.accept(frame, null));
+        assertEquals(50, filter.getFrameDelayMillis());
+        assertFalse(filter.accept(frame, null));
+        assertEquals(100, filter.getFrameDelayMillis());
+        assertFalse(filter.accept(frame, null));
+        assertEquals(150, filter.getFrameDelayMillis());
+        assertFalse(filter.accept(frame, null));
+        assertEquals(150, filter.getFrameDelayMillis());
+    }
+
+    @Test
+    public void onDecoded_successAllowsSameFrame() {
+        ChangeFilter filter = new ChangeFilter(4, 4, 50, 400);
+        Frame frame = createFrame(100);
+        assertTrue(filter.accept(frame, null));
+        filter.onDecoded(frame, true);
+        assertTrue(filter.accept(frame, null));
+    }
+
+    @Test
+    public void accept_doesNotFilterTinyFrames() {
+        ChangeFilter filter = new ChangeFilter(32, 4, 50, 400);
+        Frame frame = createFrame(100);
+        // 区域小于网格采样数量，不过滤
+        assertTrue(filter.accept(frame, null));
+        filter.onDecoded(frame, false);
+        assertTrue(filter.accept(frame, null));
+    }
+
+    private static Frame createFrame(int luma) {
+        byte[] data = new byte[SIZE * SIZE * 3 / 2];
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            data[i] = (byte) luma;
+        }
+        Frame frame = new Frame();
+        frame.set(17, data, SIZE, SIZE, 0);
+        return frame;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link CodeLocator}单元测试，在平坦的帧上绘制棋盘格作为码；只使用null裁剪区域，
+ * 本地单元测试中Rect的方法不生效，只校验候选区域数量和统计
+ */
+public class CodeLocatorTest {
+
+    private static final int NV21 = 17;
+    private static final int SIZE = 256;
+    private static final int CELL = 16;
+
+    @Test
+    public void locate_flatFrameHasNoCandidate() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 4, false);
+        Frame frame = createFrame();
+        assertEquals(0, locator.locate(frame, null, createRects(4)));
+        assertEquals(0, locator.getLocatedCount());
+        assertEquals(1, locator.getEmptyCount());
+    }
+
+    @Test
+    public void locate_findsEachSeparatedPatch() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 4, false);
+        Frame frame = createFrame();
+        drawChecker(frame, 32, 32, 64);
+        drawChecker(frame, 160, 160, 64);
+        assertEquals(2, locator.locate(frame, null, createRects(4)));
+        assertEquals(1, locator.getLocatedCount());
+        assertEquals(0, locator.getEmptyCount());
+    }
+
+    @Test
+    public void locate_mergesCellsAcrossOneCellGap() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 4, false);
+        Frame frame = createFrame();
+        // 两块之间间隔一个格子，视为同一个码
+        drawChecker(frame, 32, 32, 32);
+        drawChecker(frame, 32 + 3 * CELL, 32, 32);
+        assertEquals(1, locator.locate(frame, null, createRects(4)));
+    }
+
+    @Test
+    public void locate_keepsAtMostMaxCandidates() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 1, false);
+        Frame frame = createFrame();
+        drawChecker(frame, 32, 32, 64);
+        drawChecker(frame, 160, 160, 32);
+        assertEquals(1, locator.locate(frame, null, createRects(1)));
+    }
+
+    @Test
+    public void locate_ignoresSingleCell() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 4, false);
+        Frame frame = createFrame();
+        // 单个格子的噪点不是码
+        drawChecker(frame, 128, 128, CELL);
+        assertEquals(0, locator.locate(frame, null, createRects(4)));
+        assertEquals(1, locator.getEmptyCount());
+    }
+
+    @Test
+    public void locate_smallRegionReturnsWholeRegion() {
+        CodeLocator locator = new CodeLocator(CELL, 32, 4, false);
+        Frame frame = new Frame();
+        frame.set(NV21, new byte[24 * 24 * 3 / 2], 24, 24, 0);
+        // 不足2x2个格子，直接解码整个区域，不计入统计
+        assertEquals(1, locator.locate(frame, null, createRects(4)));
+        assertEquals(0, locator.getLocatedCount());
+        assertEquals(0, locator.getEmptyCount());
+    }
+
+    @Test
+    public void constructor_clampsArguments() {
+        CodeLocator locator = new CodeLocator(1, 0, 0, true);
+        assertEquals(8, locator.getCellSize());
+        assertEquals(1, locator.getMaxCandidates());
+        assertTrue(locator.isFallback());
+    }
+
+    private static Frame createFrame() {
+        byte[] data = new byte[SIZE * SIZE * 3 / 2];
+        for (int i = 0; i < SIZE * SIZE; i++) {
+            data[i] = (byte) 128;
+        }
+        Frame frame = new Frame();
+        frame.set(NV21, data, SIZE, SIZE, 0);
+        return frame;
+    }
+
+    /**
+     * 绘制2像素的黑白棋盘格
+     */
+    private static void drawChecker(Frame frame, int left, int top, int size) {
+        byte[] data = frame.getData();
+        for (int y = top; y < top + size; y++) {
+            for (int x = left; x < left + size; x++) {
+                data[y * SIZE + x] = (byte) (((x / 2 + y / 2) & 1) == 0 ? 20 : 230);
+            }
+        }
+    }
+
+    private static Rect[] createRects(int count) {
+        Rect[] rects = new Rect[count];
+        for (int i = 0; i < count; i++) {
+            rects[i] = new Rect();
+        }
+        return rects;
+    }
+}
@@ -0,0 +1,52 @@
+package com.mosect.lib.scanpanel.coder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link DuplicateFilter}单元测试
+ */
+public class DuplicateFilterTest {
+
+    private static final long MS = 1000000L;
+
+    @Test
+    public void accept_rejectsDuplicateWithinTtl() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 8);
+        assertTrue(filter.accept("a", 0));
+        assertFalse(filter.accept("a", 500 * MS));
+        assertTrue(filter.accept("b", 600 * MS));
+    }
+
+    @Test
+    public void accept_ttlRestartsFromLastSeen() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 8);
+        assertTrue(filter.accept("a", 0));
+        assertFalse(filter.accept("a", 900 * MS));
+        // 持续出现，有效期从最后一次出现开始计算
+        assertFalse(filter.accept("a", 1800 * MS));
+        assertTrue(filter.accept("a", 2800 * MS));
+    }
+
+    @Test
+    public void accept_evictsLeastRecentlySeen() {
+        DuplicateFilter filter = new DuplicateFilter(10000, 2);
+        assertTrue(filter.accept("a", 0));
+        assertTrue(filter.accept("b", MS));
+        // a再次出现，b成为最久未出现的内容
+        assertFalse(filter.accept("a", 2 * MS));
+        assertTrue(filter.accept("c", 3 * MS));
+        assertTrue(filter.accept("b", 4 * MS));
+        assertTrue(filter.accept("a", 5 * MS));
+    }
+
+    @Test
+    public void clear_forgetsAll() {
+        DuplicateFilter filter = new DuplicateFilter(1000, 8);
+        assertTrue(filter.accept("a", 0));
+        filter.clear();
+        assertTrue(filter.accept("a", MS));
+        assertTrue(filter.accept(null, MS));
+    }
+}
@@ -0,0 +1,85 @@
+package com.mosect.lib.scanpanel.coder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FormatHistory}单元测试
+ */
+public class FormatHistoryTest {
+
+    @Test
+    public void record_evictsOldestOutsideWindow() {
+        FormatHistory history = new FormatHistory(3, 1);
+        history.record("QR_CODE");
+        history.record("EAN_13");
+        history.record("EAN_13");
+        assertEquals(1, history.getCount("QR_CODE"));
+        // 第4次结果挤出最早的QR_CODE
+        history.record("CODE_128");
+        assertEquals(0, history.getCount("QR_CODE"));
+        assertEquals(2, history.getCount("EAN_13"));
+        assertEquals(1, history.getCount("CODE_128"));
+        history.record("CODE_128");
+        history.record("CODE_128");
+        assertEquals(0, history.getCount("EAN_13"));
+        assertEquals(3, history.getCount("CODE_128"));
+        assertEquals(Arrays.asList("CODE_128"), history.getRankedFormats(new ArrayList<>()));
+    }
+
+    @Test
+    public void getRankedFormats_ordersByCount() {
+        FormatHistory history = new FormatHistory(8, 1);
+        history.record("QR_CODE");
+        history.record("EAN_13");
+        history.record("EAN_13");
+        history.record("EAN_13");
+        history.record("CODE_128");
+        history.record("CODE_128");
+        List<String> out = new ArrayList<>(Arrays.asList("stale"));
+        assertSame(out, history.getRankedFormats(out));
+        assertEquals(Arrays.asList("EAN_13", "CODE_128", "QR_CODE"), out);
+    }
+
+    @Test
+    public void isConfident_afterMinHits() {
+        FormatHistory history = new FormatHistory(4, 2);
+        assertFalse(history.isConfident());
+        history.record(null);
+        assertFalse(history.isConfident());
+        history.record("QR_CODE");
+        assertFalse(history.isConfident());
+        history.record("QR_CODE");
+        assertTrue(history.isConfident());
+    }
+
+    @Test
+    public void constructor_clampsArguments() {
+        FormatHistory history = new FormatHistory(0, 5);
+        assertEquals(1, history.getWindowSize());
+        assertEquals(1, history.getMinHits());
+        history = new FormatHistory(4, 10);
+        assertEquals(4, history.getMinHits());
+    }
+
+    @Test
+    public void clear_resetsWindow() {
+        FormatHistory history = new FormatHistory(2, 2);
+        history.record("QR_CODE");
+        history.record("QR_CODE");
+        history.clear();
+        assertFalse(history.isConfident());
+        assertEquals(0, history.getCount("QR_CODE"));
+        assertTrue(history.getRankedFormats(new ArrayList<>()).isEmpty());
+        // 清空后从头写入，不会把新结果当作被挤出的旧结果
+        history.record("EAN_13");
+        history.record("EAN_13");
+        history.record("EAN_13");
+        assertEquals(2, history.getCount("EAN_13"));
+    }
+}
@@ -0,0 +1,403 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FrameHandler}单元测试，使用手动输出帧的帧源，帧的采集时间作为帧编号
+ */
+public class FrameHandlerTest {
+
+    private static final int NV21 = 17;
+
+    @Test
+    public void handleFrame_dropsOldestPendingFrame() throws Exception {
+        ManualSource source = new ManualSource();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<Long> decoded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) throws Exception {
+                decoded.add(frame.getTimestamp());
+                if (frame.getTimestamp() == 1) {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                done.countDown();
+                return false;
+            }
+        });
+        handler.setMaxInFlight(2);
+        handler.start(source);
+        handler.requestNextFrame();
+
+        Frame first = source.emit(1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        Frame second = source.emit(2);
+        // 帧1解码中、帧2等待中，帧3到达时丢弃最旧的等待帧
+        source.emit(3);
+        assertTrue(source.isReleased(second));
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        handler.destroy();
+        assertEquals(Long.valueOf(1), decoded.get(0));
+        assertEquals(Long.valueOf(3), decoded.get(1));
+        assertEquals(2, decoded.size());
+        assertTrue(source.isReleased(first));
+    }
+
+    @Test
+    public void handleDecodeResult_ignoresOlderFrame() throws Exception {
+        ManualSource source = new ManualSource();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(2);
+        List<Long> hits = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch hit = new CountDownLatch(1);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoderFactory(() -> new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) throws Exception {
+                if (frame.getTimestamp() == 1) {
+                    started.countDown();
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                result.set("frame" + frame.getTimestamp(), "QR_CODE", null);
+                finished.countDown();
+                return true;
+            }
+        });
+        handler.setWorkerCount(2);
+        handler.setCallback(result -> {
+            hits.add(result.getFrameTimestamp());
+            hit.countDown();
+        });
+        handler.start(source);
+        handler.requestNextFrame();
+
+        source.emit(1);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        source.emit(2);
+        // 帧2先解码成功，帧1之后的结果更旧，不回调
+        assertTrue(hit.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertTrue(finished.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        handler.destroy();
+        assertEquals(Collections.singletonList(2L), hits);
+    }
+
+    @Test
+    public void burstSelection_decodesSharpestFrame() throws Exception {
+        ManualSource source = new ManualSource();
+        List<Long> decoded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                decoded.add(frame.getTimestamp());
+                done.countDown();
+                return false;
+            }
+        });
+        handler.setBurstSelection(3, 5000, 2);
+        handler.start(source);
+        handler.requestNextFrame();
+
+        // 只有第2帧有细节，评分最高；等待时间从采集时间开始计算，帧编号使用当前时间
+        byte[] noise = new byte[16 * 16 * 3 / 2];
+        new Random(1).nextBytes(noise);
+        long base = System.nanoTime();
+        Frame first = source.emit(base);
+        source.emit(base + 1, noise);
+        Frame third = source.emit(base + 2);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        handler.destroy();
+        assertEquals(Collections.singletonList(base + 1), decoded);
+        assertTrue(source.isReleased(first));
+        assertTrue(source.isReleased(third));
+    }
+
+    @Test
+    public void skippedFrame_delaysNextRequest() throws Exception {
+        ManualSource source = new ManualSource();
+        List<Long> decoded = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(1);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                decoded.add(frame.getTimestamp());
+                done.countDown();
+                return false;
+            }
+        });
+        handler.addFrameFilter(new FrameFilter() {
+            @Override
+            public boolean accept(Frame frame, Rect clip) {
+                return frame.getTimestamp() != 1;
+            }
+
+            @Override
+            public long getFrameDelayMillis() {
+                return 200;
+            }
+        });
+        handler.start(source);
+        handler.requestNextFrame();
+        assertEquals(1, source.getRequestCount());
+
+        long start = System.nanoTime();
+        Frame first = source.emit(1);
+        assertTrue(source.awaitReleased(first, 5000));
+        // 等待期间到达的帧马上归还，等待结束后由解码线程请求下一帧
+        Frame second = source.emit(2);
+        assertTrue(source.isReleased(second));
+        assertTrue(source.awaitRequest(2, 5000));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        source.emit(3);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        handler.destroy();
+        assertEquals(Collections.singletonList(3L), decoded);
+    }
+
+    @Test
+    public void postProcess_runsBeforeCompactPointsAreMapped() throws Exception {
+        ManualSource source = new ManualSource();
+        float[] postPoint = new float[2];
+        List<DecodeResult> hits = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch hit = new CountDownLatch(1);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                result.set("code", "QR_CODE", null);
+                result.addPoint(1, 2);
+                return true;
+            }
+        });
+        handler.setFramePipeline(new FramePipeline(new FrameProcessor() {
+            @Override
+            public int getType() {
+                return TYPE_POST;
+            }
+
+            @Override
+            public boolean process(FrameContext context) {
+                postPoint[0] = context.getResult().getPointX(0);
+                postPoint[1] = context.getResult().getPointY(0);
+                return true;
+            }
+        }));
+        handler.setCompactClip(true, 90);
+        handler.setCallback(result -> {
+            hits.add(result);
+            hit.countDown();
+        });
+        handler.start(source);
+        handler.requestNextFrame();
+
+        source.emit(1);
+        assertTrue(hit.await(5, TimeUnit.SECONDS));
+        handler.destroy();
+        // 结果后处理看到的是紧凑帧的坐标，回调的是原始帧的坐标（顺时针旋转90度后的(1,2)对应原始帧的(2,15)）
+        assertEquals(1, postPoint[0], 0);
+        assertEquals(2, postPoint[1], 0);
+        assertEquals(2, hits.get(0).getPointX(0), 0);
+        assertEquals(15, hits.get(0).getPointY(0), 0);
+    }
+
+    @Test
+    public void continuous_deliversEveryCodeOfFrame() throws Exception {
+        ManualSource source = new ManualSource();
+        List<String> hits = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch hit = new CountDownLatch(2);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new MultiTestDecoder("a", "b"));
+        handler.setContinuous(true);
+        handler.setCallback(result -> {
+            hits.add(result.getText());
+            hit.countDown();
+        });
+        handler.start(source);
+        handler.requestNextFrame();
+
+        source.emit(1);
+        assertTrue(hit.await(5, TimeUnit.SECONDS));
+        handler.destroy();
+        assertEquals(Arrays.asList("a", "b"), hits);
+    }
+
+    @Test
+    public void continuous_filtersDuplicatesPerCode() throws Exception {
+        ManualSource source = new ManualSource();
+        List<String> hits = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch hit = new CountDownLatch(3);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new MultiTestDecoder("a", "b") {
+            @Override
+            public int decodeAll(Frame frame, Rect clip, List<DecodeResult> out) {
+                // 第二帧多出一个码，已回调过的码被过滤
+                if (frame.getTimestamp() == 2) {
+                    out.add(createResult("c"));
+                }
+                return super.decodeAll(frame, clip, out);
+            }
+        });
+        handler.setContinuous(true);
+        handler.setDuplicateFilter(new DuplicateFilter(5000, 16));
+        handler.setCallback(result -> {
+            hits.add(result.getText());
+            hit.countDown();
+        });
+        handler.start(source);
+        handler.requestNextFrame();
+
+        Frame first = source.emit(1);
+        assertTrue(source.awaitReleased(first, 5000));
+        source.emit(2);
+        assertTrue(hit.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        handler.destroy();
+        assertEquals(Arrays.asList("a", "b", "c"), hits);
+    }
+
+    /**
+     * 手动输出帧的帧源
+     */
+    private static class ManualSource implements FrameSource {
+
+        private final List<Frame> released = Collections.synchronizedList(new ArrayList<>());
+        private Callback callback;
+        private int requestCount = 0;
+
+        @Override
+        public void start(Callback callback) {
+            this.callback = callback;
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public synchronized void requestFrame() {
+            requestCount++;
+            notifyAll();
+        }
+
+        synchronized int getRequestCount() {
+            return requestCount;
+        }
+
+        synchronized boolean awaitRequest(int count, long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            long remaining;
+            while (requestCount < count && (remaining = end - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return requestCount >= count;
+        }
+
+        @Override
+        public synchronized void releaseFrame(Frame frame) {
+            released.add(frame);
+            notifyAll();
+        }
+
+        Frame emit(long id) {
+            return emit(id, new byte[16 * 16 * 3 / 2]);
+        }
+
+        Frame emit(long id, byte[] data) {
+            Frame frame = new Frame();
+            frame.set(NV21, data, 16, 16, id);
+            callback.onFrameAvailable(this, frame);
+            return frame;
+        }
+
+        boolean isReleased(Frame frame) {
+            return released.contains(frame);
+        }
+
+        synchronized boolean awaitReleased(Frame frame, long timeoutMillis) throws InterruptedException {
+            long end = System.currentTimeMillis() + timeoutMillis;
+            long remaining;
+            while (!released.contains(frame) && (remaining = end - System.currentTimeMillis()) > 0) {
+                wait(remaining);
+            }
+            return released.contains(frame);
+        }
+
+        @Override
+        public int getFormat() {
+            return NV21;
+        }
+
+        @Override
+        public int getWidth() {
+            return 16;
+        }
+
+        @Override
+        public int getHeight() {
+            return 16;
+        }
+    }
+
+    /**
+     * 每帧输出固定内容的多结果解码器
+     */
+    private static class MultiTestDecoder extends TestDecoder implements MultiCodeDecoder {
+
+        private final String[] texts;
+
+        MultiTestDecoder(String... texts) {
+            this.texts = texts;
+        }
+
+        @Override
+        public int decodeAll(Frame frame, Rect clip, List<DecodeResult> out) {
+            for (String text : texts) {
+                out.add(createResult(text));
+            }
+            return out.size();
+        }
+
+        @Override
+        public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+            result.set(texts[0], "QR_CODE", null);
+            return true;
+        }
+
+        static DecodeResult createResult(String text) {
+            DecodeResult result = new DecodeResult();
+            result.set(text, "QR_CODE", null);
+            return result;
+        }
+    }
+
+    private abstract static class TestDecoder implements FrameDecoder {
+
+        @Override
+        public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link FrameStats}单元测试；本地单元测试中Rect的方法不生效，裁剪区域直接设置字段
+ */
+public class FrameStatsTest {
+
+    private static final int NV21 = 17;
+    private static final int SIZE = 32;
+
+    @Test
+    public void compute_uniformFrame() {
+        Frame frame = createFrame((x, y) -> 100);
+        FrameStats stats = new FrameStats();
+        stats.compute(frame, null, 1);
+        // 只采样离边缘至少一个采样间隔的点
+        assertEquals((SIZE - 2) * (SIZE - 2), stats.getSampleCount());
+        assertEquals(stats.getSampleCount(), stats.getHistogram()[100]);
+        assertEquals(100, stats.getMean(), 1e-9);
+        assertEquals(0, stats.getContrast(), 1e-9);
+        assertEquals(0, stats.getSharpness(), 1e-9);
+        assertEquals(100, stats.getMinLuma());
+        assertEquals(100, stats.getMaxLuma());
+        assertEquals(100, stats.getPercentile(0));
+        assertEquals(100, stats.getPercentile(1));
+    }
+
+    @Test
+    public void compute_twoLevels() {
+        Frame frame = createFrame((x, y) -> x < SIZE / 2 ? 50 : 150);
+        FrameStats stats = new FrameStats();
+        stats.compute(frame, null, 4);
+        // 每行采样x=4、8、12（50）和16、20、24（150），共6行
+        assertEquals(36, stats.getSampleCount());
+        assertEquals(100, stats.getMean(), 1e-9);
+        assertEquals(50, stats.getContrast(), 1e-9);
+        assertEquals(50, stats.getMinLuma());
+        assertEquals(150, stats.getMaxLuma());
+        assertEquals(50, stats.getPercentile(0.5f));
+        assertEquals(150, stats.getPercentile(0.51f));
+    }
+
+    @Test
+    public void compute_sharpnessHigherForDetail() {
+        FrameStats flat = new FrameStats();
+        flat.compute(createFrame((x, y) -> 128), null, 2);
+        FrameStats gradient = new FrameStats();
+        gradient.compute(createFrame((x, y) -> x * 4), null, 2);
+        FrameStats checker = new FrameStats();
+        checker.compute(createFrame((x, y) -> ((x / 2 + y / 2) & 1) == 0 ? 20 : 230), null, 2);
+        // 线性渐变的拉普拉斯响应为0，与平坦区域一样不清晰
+        assertEquals(0, flat.getSharpness(), 1e-9);
+        assertEquals(0, gradient.getSharpness(), 1e-9);
+        assertTrue(checker.getSharpness() > 1000);
+    }
+
+    @Test
+    public void compute_tinyRegionIsSharp() {
+        Frame frame = createFrame((x, y) -> 100);
+        Rect clip = createClip(0, 0, 8, 8);
+        FrameStats stats = new FrameStats();
+        stats.compute(frame, clip, 2);
+        assertEquals(4, stats.getSampleCount());
+        assertEquals(Double.MAX_VALUE, stats.getSharpness(), 0);
+    }
+
+    @Test
+    public void isComputed_matchesClipAndStep() {
+        Frame frame = createFrame((x, y) -> 100);
+        Rect clip = createClip(-4, 4, 20, 40);
+        FrameStats stats = new FrameStats();
+        assertFalse(stats.isComputed(frame, clip, 2));
+        stats.compute(frame, clip, 2);
+        // 超出帧的区域按帧裁剪后比较
+        assertTrue(stats.isComputed(frame, createClip(0, 4, 20, SIZE), 2));
+        assertFalse(stats.isComputed(frame, clip, 4));
+        assertFalse(stats.isComputed(frame, null, 2));
+        stats.compute(frame, null, 0);
+        assertTrue(stats.isComputed(frame, null, 1));
+    }
+
+    @Test
+    public void frame_cachesStatsUntilDataChanges() {
+        Frame frame = createFrame((x, y) -> 100);
+        assertNull(frame.getStats());
+        FrameStats stats = frame.getStats(null, 2);
+        assertSame(stats, frame.getStats());
+        assertSame(stats, frame.getStats(null, 2));
+        assertEquals(100, stats.getMean(), 1e-9);
+        // 帧数据改变后重新计算
+        byte[] data = new byte[SIZE * SIZE * 3 / 2];
+        frame.set(NV21, data, SIZE, SIZE, 1);
+        assertNull(frame.getStats());
+        assertEquals(0, frame.getStats(null, 2).getMean(), 1e-9);
+    }
+
+    @Test
+    public void copyFrom_copiesAllValues() {
+        FrameStats stats = new FrameStats();
+        stats.compute(createFrame((x, y) -> x < SIZE / 2 ? 50 : 150), null, 4);
+        FrameStats copy = new FrameStats();
+        copy.copyFrom(stats);
+        assertTrue(copy.isComputed());
+        assertEquals(stats.getSampleCount(), copy.getSampleCount());
+        assertEquals(stats.getMean(), copy.getMean(), 0);
+        assertEquals(stats.getContrast(), copy.getContrast(), 0);
+        assertEquals(stats.getSharpness(), copy.getSharpness(), 0);
+        assertArrayEquals(stats.getHistogram(), copy.getHistogram());
+        stats.invalidate();
+        assertFalse(stats.isComputed());
+        assertTrue(copy.isComputed());
+    }
+
+    private interface Pixels {
+        int get(int x, int y);
+    }
+
+    private static Frame createFrame(Pixels pixels) {
+        byte[] data = new byte[SIZE * SIZE * 3 / 2];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                data[y * SIZE + x] = (byte) pixels.get(x, y);
+            }
+        }
+        Frame frame = new Frame();
+        frame.set(NV21, data, SIZE, SIZE, 0);
+        return frame;
+    }
+
+    private static Rect createClip(int left, int top, int right, int bottom) {
+        Rect clip = new Rect();
+        clip.left = left;
+        clip.top = top;
+        clip.right = right;
+        clip.bottom = bottom;
+        return clip;
+    }
+}
@@ -0,0 +1,85 @@
+package com.mosect.lib.scanpanel.coder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link LumaPlanes}单元测试，平面数据前面有一段偏移，从position开始读取；像素值为其坐标编码
+ */
+public class LumaPlanesTest {
+
+    private static final int YUV_420_888 = 35;
+    private static final int SIZE = 8;
+    private static final int PIXEL_STRIDE = 2;
+    private static final int OFFSET = 5;
+
+    @Test
+    public void copy_startsAtPosition() {
+        ByteBuffer plane = createPlane();
+        byte[] out = new byte[SIZE * SIZE];
+        LumaPlanes.copy(plane, SIZE * PIXEL_STRIDE, PIXEL_STRIDE, SIZE, SIZE, out);
+        for (int i = 0; i < out.length; i++) {
+            assertEquals(i, out[i]);
+        }
+        assertEquals(OFFSET, plane.position());
+    }
+
+    @Test
+    public void copyClip_allRotationsStartAtPosition() {
+        Frame frame = createFrame();
+        int left = 1, top = 2, width = 3, height = 4;
+        byte[] out = new byte[width * height];
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            LumaPlanes.copyClip(frame, left, top, width, height, rotation, out);
+            // 与同样变换的视图逐个比较
+            LumaView view = new LumaView().set(frame.getPlane(), SIZE * PIXEL_STRIDE, PIXEL_STRIDE,
+                    left, top, width, height).setTransform(rotation, false, false);
+            for (int y = 0; y < view.getHeight(); y++) {
+                for (int x = 0; x < view.getWidth(); x++) {
+                    assertEquals("rotation=" + rotation, view.get(x, y), out[y * view.getWidth() + x]);
+                }
+            }
+            assertEquals(OFFSET, frame.getPlane().position());
+        }
+        LumaPlanes.copyClip(frame, left, top, width, height, 0, out);
+        assertEquals(value(left, top), out[0]);
+    }
+
+    @Test
+    public void frameGetLuma_startsAtPosition() {
+        Frame frame = createFrame();
+        assertEquals(value(0, 0), frame.getLuma(0, 0));
+        assertEquals(value(3, 5), frame.getLuma(3, 5));
+    }
+
+    private static Frame createFrame() {
+        Frame frame = new Frame();
+        frame.setPlane(YUV_420_888, createPlane(), SIZE * PIXEL_STRIDE, PIXEL_STRIDE, SIZE, SIZE, 0);
+        return frame;
+    }
+
+    /**
+     * 创建前面有{@link #OFFSET}个无效字节的平面，position指向第一个像素
+     */
+    private static ByteBuffer createPlane() {
+        byte[] data = new byte[OFFSET + SIZE * SIZE * PIXEL_STRIDE];
+        for (int i = 0; i < OFFSET; i++) {
+            data[i] = (byte) 0xFF;
+        }
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                data[OFFSET + (y * SIZE + x) * PIXEL_STRIDE] = (byte) value(x, y);
+            }
+        }
+        ByteBuffer plane = ByteBuffer.wrap(data);
+        plane.position(OFFSET);
+        return plane;
+    }
+
+    private static int value(int x, int y) {
+        return y * SIZE + x;
+    }
+}
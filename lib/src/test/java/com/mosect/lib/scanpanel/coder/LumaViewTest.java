@@ -0,0 +1,163 @@
+package com.mosect.lib.scanpanel.coder;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link LumaView}单元测试，数据中每个像素的值为其坐标编码，可以直接校验读取的位置
+ */
+public class LumaViewTest {
+
+    private static final int STRIDE = 16;
+    private static final int LEFT = 2, TOP = 3, WIDTH = 5, HEIGHT = 3;
+
+    @Test
+    public void get_rotation0() {
+        LumaView view = arrayView().setTransform(0, false, false);
+        assertEquals(WIDTH, view.getWidth());
+        assertEquals(HEIGHT, view.getHeight());
+        assertEquals(value(LEFT, TOP), view.get(0, 0));
+        assertEquals(value(LEFT + 4, TOP + 2), view.get(4, 2));
+    }
+
+    @Test
+    public void get_rotation90() {
+        LumaView view = arrayView().setTransform(90, false, false);
+        assertEquals(HEIGHT, view.getWidth());
+        assertEquals(WIDTH, view.getHeight());
+        // 顺时针旋转90度，视图左上角是区域左下角
+        assertEquals(value(LEFT, TOP + HEIGHT - 1), view.get(0, 0));
+        assertEquals(value(LEFT, TOP), view.get(HEIGHT - 1, 0));
+        assertEquals(value(LEFT + WIDTH - 1, TOP + HEIGHT - 1), view.get(0, WIDTH - 1));
+    }
+
+    @Test
+    public void get_rotation180() {
+        LumaView view = arrayView().setTransform(180, false, false);
+        assertEquals(value(LEFT + WIDTH - 1, TOP + HEIGHT - 1), view.get(0, 0));
+        assertEquals(value(LEFT, TOP), view.get(WIDTH - 1, HEIGHT - 1));
+    }
+
+    @Test
+    public void get_rotation270() {
+        LumaView view = arrayView().setTransform(-90, false, false);
+        assertEquals(270, view.getRotation());
+        assertEquals(HEIGHT, view.getWidth());
+        // 顺时针旋转270度，视图左上角是区域右上角
+        assertEquals(value(LEFT + WIDTH - 1, TOP), view.get(0, 0));
+        assertEquals(value(LEFT, TOP), view.get(0, WIDTH - 1));
+    }
+
+    @Test
+    public void get_mirrorAfterRotation() {
+        LumaView view = arrayView().setTransform(90, true, false);
+        // 旋转后再水平镜像，视图左上角是区域左上角
+        assertEquals(value(LEFT, TOP), view.get(0, 0));
+        assertEquals(value(LEFT, TOP + HEIGHT - 1), view.get(HEIGHT - 1, 0));
+    }
+
+    @Test
+    public void get_invert() {
+        LumaView view = arrayView().setTransform(0, false, true);
+        assertEquals(255 - value(LEFT, TOP), view.get(0, 0));
+        byte[] row = view.getRow(1, null);
+        assertEquals(255 - value(LEFT + 2, TOP + 1), row[2] & 0xFF);
+    }
+
+    @Test
+    public void getRow_matchesGet() {
+        for (LumaView view : new LumaView[]{arrayView(), planeView()}) {
+            for (int rotation = 0; rotation < 360; rotation += 90) {
+                for (int mirror = 0; mirror < 2; mirror++) {
+                    view.setTransform(rotation, mirror == 1, false);
+                    for (int y = 0; y < view.getHeight(); y++) {
+                        byte[] row = view.getRow(y, null);
+                        for (int x = 0; x < view.getWidth(); x++) {
+                            assertEquals(view.get(x, y), row[x] & 0xFF);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void plane_usesPixelStrideAndKeepsPosition() {
+        ByteBuffer plane = ByteBuffer.wrap(createData(2));
+        LumaView view = new LumaView().set(plane, STRIDE * 2, 2, LEFT, TOP, WIDTH, HEIGHT);
+        assertEquals(value(LEFT + 1, TOP + 1), view.get(1, 1));
+        view.getRow(2, null);
+        assertEquals(0, plane.position());
+    }
+
+    @Test
+    public void mapPoint_pixelCenterMapsToSourcePixel() {
+        float[] out = new float[2];
+        for (int rotation = 0; rotation < 360; rotation += 90) {
+            for (int mirror = 0; mirror < 2; mirror++) {
+                LumaView view = arrayView().setTransform(rotation, mirror == 1, false);
+                for (int y = 0; y < view.getHeight(); y++) {
+                    for (int x = 0; x < view.getWidth(); x++) {
+                        view.mapPoint(x + 0.5f, y + 0.5f, out);
+                        int sx = (int) Math.floor(out[0]);
+                        int sy = (int) Math.floor(out[1]);
+                        String message = "rotation=" + rotation + " mirror=" + mirror + " x=" + x + " y=" + y;
+                        assertEquals(message, sx + 0.5f, out[0], 1e-4f);
+                        assertEquals(message, sy + 0.5f, out[1], 1e-4f);
+                        assertEquals(message, value(sx, sy), view.get(x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void mapPoint_corners() {
+        float[] out = new float[2];
+        LumaView view = arrayView().setTransform(90, false, false);
+        // 视图左上角对应区域左下角
+        view.mapPoint(0, 0, out);
+        assertEquals(LEFT, out[0], 0);
+        assertEquals(TOP + HEIGHT, out[1], 0);
+        view.setTransform(270, false, false);
+        view.mapPoint(0, 0, out);
+        assertEquals(LEFT + WIDTH, out[0], 0);
+        assertEquals(TOP, out[1], 0);
+        view.setTransform(180, true, false);
+        // 旋转180度再镜像，等同于垂直翻转
+        view.mapPoint(1, 0, out);
+        assertEquals(LEFT + 1, out[0], 0);
+        assertEquals(TOP + HEIGHT, out[1], 0);
+    }
+
+    private static LumaView arrayView() {
+        return new LumaView().set(createData(1), STRIDE, LEFT, TOP, WIDTH, HEIGHT);
+    }
+
+    private static LumaView planeView() {
+        return new LumaView().set(ByteBuffer.wrap(createData(2)), STRIDE * 2, 2, LEFT, TOP, WIDTH, HEIGHT);
+    }
+
+    /**
+     * 创建16x16的数据，像素值为坐标编码
+     *
+     * @param pixelStride 像素跨度
+     * @return 数据
+     */
+    private static byte[] createData(int pixelStride) {
+        byte[] data = new byte[STRIDE * STRIDE * pixelStride];
+        for (int y = 0; y < STRIDE; y++) {
+            for (int x = 0; x < STRIDE; x++) {
+                data[(y * STRIDE + x) * pixelStride] = (byte) value(x, y);
+            }
+        }
+        return data;
+    }
+
+    private static int value(int x, int y) {
+        return y * STRIDE + x;
+    }
+}
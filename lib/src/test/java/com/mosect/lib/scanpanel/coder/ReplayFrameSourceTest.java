@@ -0,0 +1,113 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link ReplayFrameSource}单元测试，在普通JVM中回放帧文件，检查{@link FrameHandler}的吞吐量下限
+ */
+public class ReplayFrameSourceTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAME_SIZE = WIDTH * HEIGHT * 3 / 2;
+    private static final double MIN_THROUGHPUT = 50; // 回放吞吐量下限，帧每秒
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void replay_drivesFrameHandler() throws Exception {
+        File file = writeFrames("frames.nv21", 4, FRAME_SIZE);
+        ReplayFrameSource source = new ReplayFrameSource(Collections.singletonList(file), WIDTH, HEIGHT, 0, 3);
+        int target = 200;
+        AtomicInteger decoded = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(target);
+        FrameHandler handler = new FrameHandler();
+        handler.setDecoder(new FrameDecoder() {
+            @Override
+            public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) {
+                return null;
+            }
+
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                // 读取部分像素，模拟解码
+                int sum = 0;
+                for (int y = 0; y < frame.getHeight(); y += 8) {
+                    for (int x = 0; x < frame.getWidth(); x += 8) {
+                        sum += frame.getLuma(x, y);
+                    }
+                }
+                decoded.addAndGet(sum >= 0 ? 1 : 0);
+                latch.countDown();
+                return false;
+            }
+        });
+        long startTime = System.nanoTime();
+        handler.start(source);
+        handler.requestNextFrame();
+        boolean finished = latch.await(10, TimeUnit.SECONDS);
+        long time = System.nanoTime() - startTime;
+        handler.destroy();
+        assertTrue("decoded " + decoded.get() + " frames", finished);
+        assertNull(source.getError());
+        // 宽松的下限，只用于发现回放或者帧处理被阻塞，不作为性能基准
+        double throughput = decoded.get() * 1e9 / time;
+        assertTrue("replay throughput " + throughput + " frames/s", throughput >= MIN_THROUGHPUT);
+    }
+
+    @Test
+    public void replay_reportsReadError() throws Exception {
+        // 文件不足一帧，读取失败
+        File file = writeFrames("short.nv21", 1, FRAME_SIZE / 2);
+        ReplayFrameSource source = new ReplayFrameSource(Collections.singletonList(file), WIDTH, HEIGHT, 0, 2);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        source.start(new FrameSource.Callback() {
+            @Override
+            public void onFrameAvailable(FrameSource source, Frame frame) {
+                source.releaseFrame(frame);
+            }
+
+            @Override
+            public void onSourceError(FrameSource source, Exception e) {
+                error.set(e);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertNotNull(error.get());
+        assertSame(error.get(), source.getError());
+        assertEquals(0, source.getFrameCount());
+        source.stop();
+    }
+
+    private File writeFrames(String name, int count, int frameSize) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            byte[] data = new byte[frameSize];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) (i * 32 + j % 7);
+                }
+                output.write(data);
+            }
+        }
+        return file;
+    }
+}
@@ -0,0 +1,74 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link RoiTracker}单元测试，只使用null裁剪区域，不依赖android.graphics.Rect的实现
+ */
+public class RoiTrackerTest {
+
+    @Test
+    public void computeClip_usesFullClipUntilHit() {
+        RoiTracker tracker = new RoiTracker(0.5f, 16, 3);
+        Rect out = new Rect();
+        assertNull(tracker.computeClip(null, 640, 480, out));
+        assertFalse(tracker.isTracking());
+
+        tracker.onHit(createResult(100, 100, 200, 200));
+        assertTrue(tracker.isTracking());
+        assertSame(out, tracker.computeClip(null, 640, 480, out));
+        assertEquals(1, tracker.getRoiFrames());
+        assertEquals(1, tracker.getFullFrames());
+    }
+
+    @Test
+    public void onMiss_stopsTrackingAfterMaxMisses() {
+        RoiTracker tracker = new RoiTracker(0.5f, 16, 3);
+        tracker.onHit(createResult(100, 100, 200, 200));
+        tracker.onMiss();
+        tracker.onMiss();
+        assertTrue(tracker.isTracking());
+        tracker.onMiss();
+        assertFalse(tracker.isTracking());
+    }
+
+    @Test
+    public void onHit_resetsMisses() {
+        RoiTracker tracker = new RoiTracker(0.5f, 16, 2);
+        tracker.onHit(createResult(100, 100, 200, 200));
+        tracker.onMiss();
+        tracker.onHit(createResult(100, 100, 200, 200));
+        tracker.onMiss();
+        assertTrue(tracker.isTracking());
+    }
+
+    @Test
+    public void onHit_withoutPointsStopsTracking() {
+        RoiTracker tracker = new RoiTracker(0.5f, 16, 3);
+        tracker.onHit(createResult(100, 100, 200, 200));
+        tracker.onHit(new DecodeResult());
+        assertFalse(tracker.isTracking());
+    }
+
+    @Test
+    public void computeClip_stopsTrackingOutsideFrame() {
+        RoiTracker tracker = new RoiTracker(0f, 16, 3);
+        // 跟踪区域完全在帧之外
+        tracker.onHit(createResult(1000, 1000, 1100, 1100));
+        assertNull(tracker.computeClip(null, 640, 480, new Rect()));
+        assertFalse(tracker.isTracking());
+    }
+
+    private static DecodeResult createResult(float left, float top, float right, float bottom) {
+        DecodeResult result = new DecodeResult();
+        result.set("text", "QR_CODE", null);
+        result.addPoint(left, top);
+        result.addPoint(right, top);
+        result.addPoint(left, bottom);
+        return result;
+    }
+}
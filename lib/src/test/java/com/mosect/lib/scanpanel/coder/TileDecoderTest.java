@@ -0,0 +1,84 @@
+package com.mosect.lib.scanpanel.coder;
+
+import android.graphics.Rect;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * {@link TileDecoder}单元测试；本地单元测试中Rect的方法不生效，块的位置不可用，解码器按调用次数输出内容
+ */
+public class TileDecoderTest {
+
+    private static final int NV21 = 17;
+    private static final int SIZE = 64;
+
+    @Test
+    public void decodeAll_decodesEveryTileAndMergesDuplicates() {
+        AtomicInteger calls = new AtomicInteger();
+        // 2x2个块，两个块输出相同的内容
+        TileDecoder decoder = new TileDecoder(() -> new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                result.set("code" + (calls.getAndIncrement() % 2), "QR_CODE", null);
+                return true;
+            }
+        }, 2, 2, 0.25f, 16);
+        List<DecodeResult> out = new ArrayList<>();
+        out.add(new DecodeResult());
+        assertEquals(2, decoder.decodeAll(createFrame(), null, out));
+        assertEquals(4, calls.get());
+        assertEquals(3, out.size());
+        assertNotEquals(out.get(1).getText(), out.get(2).getText());
+        assertEquals(4, decoder.getTileAttempts());
+    }
+
+    @Test
+    public void decodeAll_noResult() {
+        TileDecoder decoder = new TileDecoder(() -> new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                return false;
+            }
+        }, 2, 2, 0.25f, 16);
+        List<DecodeResult> out = new ArrayList<>();
+        assertEquals(0, decoder.decodeAll(createFrame(), null, out));
+        assertTrue(out.isEmpty());
+    }
+
+    @Test
+    public void decodeFrame_keepsCallerFrameInfo() throws Exception {
+        TileDecoder decoder = new TileDecoder(() -> new TestDecoder() {
+            @Override
+            public boolean decodeFrame(Frame frame, Rect clip, DecodeResult result) {
+                result.set("code", "QR_CODE", null);
+                return true;
+            }
+        }, 2, 2, 0.25f, 16);
+        DecodeResult result = new DecodeResult();
+        result.setFrame(640, 480, 7);
+        assertTrue(decoder.decodeFrame(createFrame(), null, result));
+        assertEquals("code", result.getText());
+        assertEquals(640, result.getFrameWidth());
+        assertEquals(7, result.getFrameTimestamp());
+    }
+
+    private static Frame createFrame() {
+        Frame frame = new Frame();
+        frame.set(NV21, new byte[SIZE * SIZE * 3 / 2], SIZE, SIZE, 1);
+        return frame;
+    }
+
+    private abstract static class TestDecoder implements FrameDecoder {
+
+        @Override
+        public String decodeFrame(int format, byte[] data, int width, int height, Rect clip) {
+            return null;
+        }
+    }
+}